@@ -0,0 +1,386 @@
+package cli;
+
+import model.audio.AudioSource;
+import model.audio.PacedSource;
+import model.audio.StreamSource;
+import model.concurrent.FileRecognition;
+import model.concurrent.IngestPipeline;
+import model.concurrent.LiveRecognition;
+import model.db.DBUtils;
+import model.engine.AudioUtils;
+import model.engine.datastructures.MatchResult;
+import model.engine.datastructures.Timeline;
+import server.RecognitionServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The command line of the app - it ingests and recognises songs without
+ * JavaFX, e.g. on a server or in a script:
+ * - ingest [options] dir - fingerprints the songs in dir which are not in the DB yet;
+ * - match [options] file... - matches each file (a recording of one song);
+ * - scan [options] file - finds all songs in a long recording and when each of them plays;
+ * - listen [--paced file] - listens to the microphone (or to a file paced in real time, as if it
+ * was played to the microphone) the same way as the GUI and reports how long it took to match;
+ * - serve [options] - runs the recognition service (see RecognitionServer) until it is stopped.
+ * Options:
+ * - --threads n - the threads of the DSP and hashing stages (ingest), the extracts
+ * decoded at the same time (match) or the workers (serve); the number of processors by default;
+ * - --middle-first - match the extracts from the middle of each file first;
+ * - --paced - listen to the file given instead of the microphone, no faster than real time;
+ * - --host h, --port p - where the service listens (localhost:8080 by default);
+ * - --queue n - the requests which can wait for a worker of the service (twice the workers by default).
+ *
+ * The results are written to stdout as JSON, one object per line (a line per song stored,
+ * file matched or file scanned and a summary at the end), each with the time it took, so
+ * they can be read by another program. The log goes to stderr. The exit code is 0 if it ran,
+ * 1 if the DB could not be prepared or an input could not be read and 2 if the arguments are wrong.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class Main {
+    // statics:
+    private static final Logger logger;
+    private static final int OK, FAILED, USAGE;
+    static {
+        logger = Logger.getLogger(Main.class.getName());
+        OK = 0;
+        FAILED = 1;
+        USAGE = 2;
+    }
+
+    // the options
+    private int threads, port, queue;
+    private boolean middleFirst, paced;
+    private String host;
+    // the arguments which are not options
+    private List<String> inputs;
+
+    /**
+     * Constructor
+     *
+     * @param args the arguments after the command
+     * @throws IllegalArgumentException if an option is wrong
+     */
+    private Main(List<String> args) {
+        threads = Runtime.getRuntime().availableProcessors();
+        port = 8080;
+        queue = -1;
+        host = "localhost";
+        inputs = new ArrayList<>();
+        for(int i = 0; i < args.size(); i ++) {
+            String arg = args.get(i);
+            if(arg.equals("--threads")) {
+                threads = getNumber(args, ++ i, 1);
+            } else if(arg.equals("--port")) {
+                port = getNumber(args, ++ i, 0);
+            } else if(arg.equals("--queue")) {
+                queue = getNumber(args, ++ i, 0);
+            } else if(arg.equals("--host")) {
+                if(i + 1 == args.size()) throw new IllegalArgumentException("--host needs an address");
+                host = args.get(++ i);
+            } else if(arg.equals("--middle-first")) {
+                middleFirst = true;
+            } else if(arg.equals("--paced")) {
+                paced = true;
+            } else if(arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            } else {
+                inputs.add(arg);
+            }
+        }
+        if(queue == -1) queue = 2 * threads;
+    }
+
+    /**
+     * A method to get the value of a number option.
+     *
+     * @param args the arguments
+     * @param index the index of the value
+     * @param min the smallest value allowed
+     * @return the value
+     * @throws IllegalArgumentException if it is missing or not a number of at least min
+     */
+    private static int getNumber(List<String> args, int index, int min) {
+        String option = args.get(index - 1);
+        try {
+            int value = Integer.parseInt(args.get(index));
+            if(value >= min) return value;
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            // below
+        }
+        throw new IllegalArgumentException(option + " needs a number of at least " + min);
+    }
+
+    /**
+     * Main method used to run a command
+     *
+     * @param args the command, its options and its inputs
+     */
+    public static void main(String[] args) {
+        if(args.length == 0) System.exit(usage(null));
+
+        List<String> rest = new ArrayList<>(List.of(args).subList(1, args.length));
+        int code;
+        try {
+            Main main = new Main(rest);
+            switch(args[0]) {
+                case "ingest":
+                    code = main.inputs.size() == 1 ? main.ingest(new File(main.inputs.get(0))) :
+                            usage("ingest needs one dir");
+                    break;
+                case "match":
+                    code = main.inputs.isEmpty() ? usage("match needs at least one file") : main.match();
+                    break;
+                case "scan":
+                    code = main.inputs.size() == 1 ? main.scan(new File(main.inputs.get(0))) :
+                            usage("scan needs one file");
+                    break;
+                case "listen":
+                    code = main.inputs.size() == (main.paced ? 1 : 0) ?
+                            main.listen(main.paced ? new File(main.inputs.get(0)) : null) :
+                            usage("listen needs --paced and one file, or nothing for the microphone");
+                    break;
+                case "serve":
+                    code = main.inputs.isEmpty() ? main.serve() : usage("serve has no inputs");
+                    break;
+                default:
+                    code = usage("Unknown command " + args[0]);
+            }
+        } catch (IllegalArgumentException e) {
+            code = usage(e.getMessage());
+        }
+
+        // the pools of the engine are not daemons
+        System.exit(code);
+    }
+
+    /**
+     * A method to fingerprint the songs in a dir which are not in the DB yet
+     * through the ingest pipeline, the same way as a batch of the GUI.
+     *
+     * @param dir the dir of the songs
+     * @return the exit code
+     */
+    private int ingest(File dir) {
+        long start = System.currentTimeMillis(); // used for timing the command
+
+        if(!dir.isDirectory()) {
+            print("{\"error\":" + MatchResult.jsonString("Not a dir: " + dir) + "}");
+            return FAILED;
+        }
+        AudioUtils.setMusicDir(dir);
+        if(!prepareDB()) return FAILED;
+
+        List<String> songs = IngestPipeline.getPendingSongs();
+        logger.log(Level.INFO, "Fingerprinting " + songs.size() + " songs from " + dir.getAbsolutePath() + "...");
+
+        // a line per song as soon as it is stored
+        long[] last = {System.currentTimeMillis()};
+        IngestPipeline pipeline = new IngestPipeline(2, threads, threads, 1, song -> {
+            long now = System.currentTimeMillis();
+            print("{\"stored\":" + MatchResult.jsonString(song) + ",\"ms\":" + (now - last[0]) + "}");
+            last[0] = now;
+        });
+        int stored;
+        try {
+            stored = pipeline.run(songs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return FAILED;
+        }
+
+        long end = System.currentTimeMillis();
+        print("{\"command\":\"ingest\",\"dir\":" + MatchResult.jsonString(dir.getAbsolutePath()) +
+                ",\"songs\":" + songs.size() + ",\"stored\":" + stored + ",\"failed\":" + (songs.size() - stored) +
+                ",\"threads\":" + threads + ",\"ms\":" + (end - start) + "}");
+        return OK;
+    }
+
+    /**
+     * A method to match each of the files, one after another.
+     *
+     * @return the exit code
+     */
+    private int match() {
+        long start = System.currentTimeMillis(); // used for timing the command
+
+        if(!prepareDB()) return FAILED;
+
+        int matched = 0, unreadable = 0;
+        for(String input : inputs) {
+            File file = new File(input);
+            long fileStart = System.currentTimeMillis();
+            try {
+                MatchResult result = FileRecognition.match(file, middleFirst, threads);
+                if(result.isMatch()) matched ++;
+                print("{\"file\":" + MatchResult.jsonString(input) + ",\"ms\":" +
+                        (System.currentTimeMillis() - fileStart) + ",\"result\":" + result.toJson() + "}");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return FAILED;
+            } catch (Exception e) {
+                unreadable ++;
+                print("{\"file\":" + MatchResult.jsonString(input) + ",\"ms\":" +
+                        (System.currentTimeMillis() - fileStart) + ",\"error\":" +
+                        MatchResult.jsonString(e.toString()) + "}");
+            }
+        }
+
+        long end = System.currentTimeMillis();
+        print("{\"command\":\"match\",\"files\":" + inputs.size() + ",\"matched\":" + matched +
+                ",\"unreadable\":" + unreadable + ",\"threads\":" + threads + ",\"ms\":" + (end - start) + "}");
+        return unreadable == 0 ? OK : FAILED;
+    }
+
+    /**
+     * A method to scan a long recording.
+     *
+     * @param file the recording
+     * @return the exit code
+     */
+    private int scan(File file) {
+        long start = System.currentTimeMillis(); // used for timing the command
+
+        if(!prepareDB()) return FAILED;
+
+        AtomicInteger windows = new AtomicInteger();
+        Timeline timeline;
+        try {
+            timeline = FileRecognition.scan(file, (found, done, total) -> {
+                windows.incrementAndGet();
+                return true;
+            });
+        } catch (Exception e) {
+            print("{\"file\":" + MatchResult.jsonString(file.getPath()) + ",\"error\":" +
+                    MatchResult.jsonString(e.toString()) + "}");
+            return FAILED;
+        }
+
+        long end = System.currentTimeMillis();
+        print("{\"command\":\"scan\",\"file\":" + MatchResult.jsonString(file.getPath()) + ",\"windows\":" +
+                windows.get() + ",\"ms\":" + (end - start) + ",\"segments\":" + timeline.toJson() + "}");
+        return OK;
+    }
+
+    /**
+     * A method to listen to the microphone, or to a file paced in real time, until
+     * there is a confident match (see LiveRecognition).
+     *
+     * @param file the file to listen to (null for the microphone)
+     * @return the exit code
+     */
+    private int listen(File file) {
+        long start = System.currentTimeMillis(); // used for timing the command
+
+        if(!prepareDB()) return FAILED;
+
+        String input = file == null ? "microphone" : file.getPath();
+        AudioSource source;
+        try {
+            if(file != null) FileRecognition.checkFormat(file);
+            source = file == null ? LiveRecognition.openMicrophone() : new PacedSource(StreamSource.fromFile(file));
+            if(source == null) throw new IOException("No microphone supports the format of the matching.");
+        } catch (Exception e) {
+            print("{\"input\":" + MatchResult.jsonString(input) + ",\"error\":" +
+                    MatchResult.jsonString(e.toString()) + "}");
+            return FAILED;
+        }
+
+        LiveRecognition recognition = new LiveRecognition(source);
+        MatchResult result;
+        try {
+            result = recognition.listen(() -> false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return FAILED;
+        }
+
+        long end = System.currentTimeMillis();
+        print("{\"command\":\"listen\",\"input\":" + MatchResult.jsonString(input) + ",\"paced\":" + paced +
+                ",\"ms\":" + (end - start) + ",\"listening\":" + recognition.toJson(result) + "}");
+        return OK;
+    }
+
+    /**
+     * A method to run the recognition service until the JVM is stopped (e.g. Ctrl+C).
+     *
+     * @return the exit code
+     */
+    private int serve() {
+        if(!prepareDB()) return FAILED;
+
+        RecognitionServer server;
+        try {
+            server = new RecognitionServer(host, port, threads, queue);
+        } catch (IOException e) {
+            print("{\"error\":" + MatchResult.jsonString("Cannot listen on " + host + ":" + port + " " + e) + "}");
+            return FAILED;
+        }
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            print(server.getStats());
+            stopped.countDown();
+        }));
+        server.start();
+        print("{\"command\":\"serve\",\"host\":" + MatchResult.jsonString(host) + ",\"port\":" +
+                server.getPort() + ",\"threads\":" + threads + ",\"queue\":" + queue + "}");
+
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return OK;
+    }
+
+    /**
+     * A method to connect to the DB and create or upgrade the tables.
+     *
+     * @return true if the DB can be used
+     */
+    private static boolean prepareDB() {
+        long start = System.currentTimeMillis(); // used for timing the DB
+        if(DBUtils.prepareDB()) {
+            logger.log(Level.INFO, "DB ready in " + (System.currentTimeMillis() - start) + "ms");
+            return true;
+        }
+        print("{\"error\":\"The DB could not be prepared - check that MySQL is running.\"}");
+        return false;
+    }
+
+    /**
+     * A method to print a line of the results - the lines of several threads are not mixed.
+     *
+     * @param json the line
+     */
+    private static synchronized void print(String json) {
+        System.out.println(json);
+    }
+
+    /**
+     * A method to print how to use the command line.
+     *
+     * @param error what is wrong with the arguments (null if there are none)
+     * @return the exit code
+     */
+    private static int usage(String error) {
+        if(error != null) System.err.println(error);
+        System.err.println("Usage: ingest [--threads n] <dir>\n" +
+                "       match [--threads n] [--middle-first] <file...>\n" +
+                "       scan <file>\n" +
+                "       listen [--paced <file>]\n" +
+                "       serve [--threads n] [--queue n] [--host h] [--port p]");
+        return USAGE;
+    }
+}
@@ -0,0 +1,49 @@
+package model.audio;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+
+/**
+ * An interface for anything that audio to be matched can be read from -
+ * the microphone, a file, audio in memory or generated audio. The matchers
+ * and the MicListener read from an AudioSource, so the live path can be run
+ * (and timed) without a microphone by giving it a file source which is paced
+ * in real time.
+ *
+ * The audio must be 44.1 kHz 16 bit signed little-endian PCM, mono or stereo.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public interface AudioSource {
+
+    /**
+     * @return the format of the audio
+     */
+    AudioFormat getFormat();
+
+    /**
+     * A method to begin producing audio (e.g. start the microphone line).
+     * It is called once, before the first read.
+     *
+     * @throws IOException if the source cannot be started
+     */
+    void start() throws IOException;
+
+    /**
+     * A method to read the next audio. It blocks until there is some audio
+     * (like a microphone line does) and reads whole frames only.
+     *
+     * @param buffer where to put the audio
+     * @param offset the index in the buffer to start from
+     * @param length the maximum number of bytes to read
+     * @return the number of bytes read or -1 if there is no more audio
+     * @throws IOException if the audio cannot be read
+     */
+    int read(byte[] buffer, int offset, int length) throws IOException;
+
+    /**
+     * A method to release the source. Reading after it is not allowed.
+     */
+    void close();
+}
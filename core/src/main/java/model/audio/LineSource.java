@@ -0,0 +1,59 @@
+package model.audio;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.TargetDataLine;
+
+/**
+ * An audio source which reads from the microphone (a TargetDataLine).
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class LineSource implements AudioSource {
+    // the line
+    private TargetDataLine line;
+
+    /**
+     * Constructor - opens the line
+     *
+     * @param format the format to record in
+     * @throws LineUnavailableException if the line cannot be opened
+     */
+    public LineSource(AudioFormat format) throws LineUnavailableException {
+        line = (TargetDataLine) AudioSystem.getLine(new DataLine.Info(TargetDataLine.class, format));
+        line.open(format);
+    }
+
+    /**
+     * @param format the format to record in
+     * @return true if there is a microphone line which supports the format
+     */
+    public static boolean isSupported(AudioFormat format) {
+        return AudioSystem.isLineSupported(new DataLine.Info(TargetDataLine.class, format));
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return line.getFormat();
+    }
+
+    @Override
+    public void start() {
+        line.start();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        // a line read always returns whole frames
+        return line.read(buffer, offset, length);
+    }
+
+    @Override
+    public void close() {
+        line.stop();
+        line.close();
+    }
+}
@@ -0,0 +1,71 @@
+package model.audio;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * An audio source which reads from another source no faster than real time -
+ * the audio of each second becomes available only when that second has passed
+ * since the start and a read blocks until all of the requested audio is available,
+ * like it does from a microphone line. Used to simulate live capture
+ * with a file (or any other source) on machines without sound hardware.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class PacedSource implements AudioSource {
+    // the source which is paced
+    private AudioSource source;
+    // the number of bytes per second of audio
+    private double bytesPerSecond;
+    // when start was called (ns) and the number of bytes read since
+    private long startTime, read;
+
+    /**
+     * Constructor
+     *
+     * @param source the source to pace
+     */
+    public PacedSource(AudioSource source) {
+        this.source = source;
+        AudioFormat format = source.getFormat();
+        this.bytesPerSecond = format.getFrameRate() * format.getFrameSize();
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return source.getFormat();
+    }
+
+    @Override
+    public void start() throws IOException {
+        source.start();
+        startTime = System.nanoTime();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        // like a microphone line - wait until all of the requested audio is due
+        int frameSize = source.getFormat().getFrameSize();
+        int toRead = length - length % frameSize;
+        long due;
+        while((due = (long) ((System.nanoTime() - startTime) / 1e9 * bytesPerSecond) - read) < toRead) {
+            try {
+                Thread.sleep(Math.max(1, (long) ((toRead - due) / bytesPerSecond * 1000)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for audio.");
+            }
+        }
+
+        int n = source.read(buffer, offset, toRead);
+        if(n > 0) read += n;
+        return n;
+    }
+
+    @Override
+    public void close() {
+        source.close();
+    }
+}
@@ -0,0 +1,57 @@
+package model.audio;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * An audio source which reads raw PCM audio from memory.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class PcmSource implements AudioSource {
+    // the audio
+    private byte[] audio;
+    // its format
+    private AudioFormat format;
+    // the index of the next byte to read
+    private int position;
+
+    /**
+     * Constructor
+     *
+     * @param audio the raw audio
+     * @param format its format
+     */
+    public PcmSource(byte[] audio, AudioFormat format) {
+        this.audio = audio;
+        this.format = format;
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public void start() {
+        // nothing to start
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        int frameSize = format.getFrameSize();
+        if(audio.length - position < frameSize) return -1;
+
+        int toRead = Math.min(length, audio.length - position);
+        toRead -= toRead % frameSize;
+
+        System.arraycopy(audio, position, buffer, offset, toRead);
+        position += toRead;
+        return toRead;
+    }
+
+    @Override
+    public void close() {
+        position = audio.length;
+    }
+}
@@ -0,0 +1,66 @@
+package model.audio;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * An audio source which reads from an audio input stream - a wav
+ * file or an extract of one.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class StreamSource implements AudioSource {
+    // the stream
+    private AudioInputStream stream;
+
+    /**
+     * Constructor
+     *
+     * @param stream the stream to read from
+     */
+    public StreamSource(AudioInputStream stream) {
+        this.stream = stream;
+    }
+
+    /**
+     * A method to create a source which reads a whole file.
+     *
+     * @param file the wav file
+     * @return the source
+     * @throws IOException if the file cannot be read
+     * @throws UnsupportedAudioFileException if the file is not audio
+     */
+    public static StreamSource fromFile(File file) throws IOException, UnsupportedAudioFileException {
+        return new StreamSource(AudioSystem.getAudioInputStream(file));
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return stream.getFormat();
+    }
+
+    @Override
+    public void start() {
+        // nothing to start
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        // a cancelled read (e.g. an extract whose file was matched already) stops here
+        if(Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Interrupted while reading audio.");
+
+        // the stream only reads whole frames
+        return stream.read(buffer, offset, length);
+    }
+
+    @Override
+    public void close() {
+        try { stream.close(); } catch (Exception e) { /* ignored */ }
+    }
+}
@@ -0,0 +1,102 @@
+package model.audio;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.Random;
+
+/**
+ * An audio source which generates audio - a few tones which change every
+ * NOTE_LENGTH seconds, with optional white noise on top. The same seed always
+ * gives the same audio, so it can be used to test the decoding and matching
+ * (e.g. fingerprint a generated 'song' and match a noisy version of it) without
+ * any audio files or sound hardware.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class SyntheticSource implements AudioSource {
+    // statics
+    private static final double NOTE_LENGTH, MIN_FREQUENCY, MAX_FREQUENCY;
+    private static final int TONES;
+    static {
+        NOTE_LENGTH = 0.5;      // how often the tones change (seconds)
+        MIN_FREQUENCY = 200;    // the range of the tones (Hz)
+        MAX_FREQUENCY = 3000;
+        TONES = 3;              // how many tones play at once
+    }
+
+    // the format (44.1 kHz 16 bit mono)
+    private AudioFormat format;
+    // generates the tones
+    private Random tones;
+    // generates the noise
+    private Random noise;
+    // the amplitude of the noise (0 - 1)
+    private double noiseLevel;
+    // the total number of frames and the number of frames generated so far
+    private long frames, generated;
+    // the current tones
+    private double[] frequencies, amplitudes, phases;
+
+    /**
+     * Constructor
+     *
+     * @param seed the seed - the same seed gives the same tones
+     * @param seconds how long the audio is
+     * @param noiseLevel the amplitude of the white noise relative to full scale (0 for none)
+     */
+    public SyntheticSource(long seed, double seconds, double noiseLevel) {
+        this.format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, 44100, 16, 1, 2, 44100, false);
+        this.tones = new Random(seed);
+        this.noise = new Random(seed + 1);
+        this.noiseLevel = noiseLevel;
+        this.frames = (long) (seconds * format.getFrameRate());
+        this.frequencies = new double[TONES];
+        this.amplitudes = new double[TONES];
+        this.phases = new double[TONES];
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public void start() {
+        // nothing to start
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        if(generated >= frames) return -1;
+
+        int noteFrames = (int) (NOTE_LENGTH * format.getFrameRate());
+        int count = (int) Math.min(length / 2, frames - generated);
+        for(int i = 0; i < count; i ++) {
+            // pick new tones at the start of each note
+            if(generated % noteFrames == 0) {
+                for(int t = 0; t < TONES; t ++) {
+                    frequencies[t] = MIN_FREQUENCY + tones.nextDouble() * (MAX_FREQUENCY - MIN_FREQUENCY);
+                    amplitudes[t] = 0.1 + tones.nextDouble() * 0.15;
+                }
+            }
+
+            double sample = noiseLevel * noise.nextGaussian();
+            for(int t = 0; t < TONES; t ++) {
+                phases[t] += 2 * Math.PI * frequencies[t] / format.getSampleRate();
+                sample += amplitudes[t] * Math.sin(phases[t]);
+            }
+
+            int value = (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample * Short.MAX_VALUE));
+            buffer[offset + 2*i] = (byte) (value & 0xff);
+            buffer[offset + 2*i + 1] = (byte) ((value >> 8) & 0xff);
+            generated ++;
+        }
+
+        return count * 2;
+    }
+
+    @Override
+    public void close() {
+        generated = frames;
+    }
+}
@@ -0,0 +1,173 @@
+package model.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class decides on which threads recognition requests run. By default
+ * each request (matching a file, listening to the mic etc.) runs on its own platform
+ * thread as before. When the app is started with -Dvirtual.threads=true on a JDK which
+ * has virtual threads (21+), each request runs on a virtual thread instead - a request
+ * spends most of its time waiting on the DB (or on the input), and a virtual thread
+ * costs almost nothing while it waits. The MySQL driver (mysql-connector-j 8.0.33+) guards
+ * its socket with locks rather than synchronized blocks, so a request waiting on a query
+ * does not pin its carrier thread - the lookups waiting on the DB at once are bounded only
+ * by DBFingerprint (-Ddb.lookups), not by the number of carrier threads.
+ *
+ * The CPU-heavy work of a request (decoding and hashing) should not run on as many
+ * threads as there are requests, so it goes through onDspPool - a pool of as many
+ * platform threads as there are processors. With platform threads it runs in place.
+ *
+ * The build targets Java 11, so virtual threads are only reached through reflection.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class ExecutionMode {
+    // statics:
+    private static final Logger logger;
+    private static final Method NEW_VIRTUAL_EXECUTOR, START_VIRTUAL_THREAD;
+    private static final boolean VIRTUAL;
+    private static final int DSP_THREADS;
+    private static final ExecutorService DSP_POOL;
+    private static final ThreadLocal<Boolean> WORKER;
+    static {
+        logger = Logger.getLogger(ExecutionMode.class.getName());
+        DSP_THREADS = Runtime.getRuntime().availableProcessors();
+        WORKER = ThreadLocal.withInitial(() -> false); // true on the threads made by newWorker
+
+        // look up the virtual thread methods - they are missing before JDK 21
+        Method newVirtualExecutor = null, startVirtualThread = null;
+        if(Boolean.getBoolean("virtual.threads")) {
+            try {
+                newVirtualExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                startVirtualThread = Thread.class.getMethod("startVirtualThread", Runnable.class);
+                logger.log(Level.INFO, "Recognition requests run on virtual threads.");
+            } catch (NoSuchMethodException e) {
+                logger.log(Level.WARNING, "Virtual threads are not supported by this JDK (" +
+                        System.getProperty("java.version") + ") - using platform threads.");
+            }
+        }
+        NEW_VIRTUAL_EXECUTOR = newVirtualExecutor;
+        START_VIRTUAL_THREAD = startVirtualThread;
+        VIRTUAL = NEW_VIRTUAL_EXECUTOR != null;
+
+        DSP_POOL = VIRTUAL ? Executors.newFixedThreadPool(DSP_THREADS, runnable -> {
+            Thread thread = newWorker(runnable, "dsp");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * A method to start a request (e.g. a matching task) in a new thread.
+     *
+     * @param request the request
+     * @param name the name of the thread (platform threads only)
+     */
+    public static void start(Runnable request, String name) {
+        if(VIRTUAL) {
+            try {
+                START_VIRTUAL_THREAD.invoke(null, request);
+                return;
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "Exception thrown while starting virtual thread " + e);
+            }
+        }
+        new Thread(request, name).start();
+    }
+
+    /**
+     * A method to create an executor for the parts of a request (e.g. the extracts of a file).
+     * The caller should shut it down when done.
+     *
+     * @param platformThreads the number of threads if virtual threads are not used
+     * @return a virtual thread per task executor, or a pool of platformThreads platform threads
+     */
+    public static ExecutorService newRequestExecutor(int platformThreads) {
+        if(VIRTUAL) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "Exception thrown while creating virtual thread executor " + e);
+            }
+        }
+        return Executors.newFixedThreadPool(platformThreads, runnable -> newWorker(runnable, "request"));
+    }
+
+    /**
+     * A method to create a thread of a bounded pool (the DSP pool, the stages of an ingest,
+     * the workers of the service etc.). Such a pool already runs as many threads as it should,
+     * so the work on its threads does not split itself over all the processors as well
+     * (see isWorker). The thread is not started.
+     *
+     * @param work what the thread runs
+     * @param name the name of the thread
+     * @return the thread
+     */
+    public static Thread newWorker(Runnable work, String name) {
+        return new Thread(() -> {
+            WORKER.set(true);
+            work.run();
+        }, name);
+    }
+
+    /**
+     * @return true if the current thread is a thread of a bounded pool (see newWorker)
+     */
+    public static boolean isWorker() {
+        return WORKER.get();
+    }
+
+    /**
+     * A method to run CPU-heavy work of a request. With virtual threads it runs on the
+     * DSP pool and the (virtual) thread of the request waits for it; with platform threads
+     * it runs in place.
+     *
+     * @param work the work
+     * @param <T> the type of its result
+     * @return the result of the work
+     * @throws CancellationException if the thread of the request was interrupted while waiting
+     */
+    public static <T> T onDspPool(Supplier<T> work) {
+        if(!VIRTUAL) return work.get();
+
+        Future<T> future = DSP_POOL.submit(work::get);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for the DSP pool");
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Same as onDspPool(work) for work without a result.
+     *
+     * @param work the work
+     */
+    public static void onDspPool(Runnable work) {
+        onDspPool(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * @return true if requests run on virtual threads
+     */
+    public static boolean isVirtual() {
+        return VIRTUAL;
+    }
+}
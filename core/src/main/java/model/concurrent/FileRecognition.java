@@ -0,0 +1,309 @@
+package model.concurrent;
+
+import model.audio.StreamSource;
+import model.db.DBFingerprint;
+import model.engine.AudioDecoder;
+import model.engine.datastructures.Fingerprint;
+import model.engine.datastructures.MatchResult;
+import model.engine.datastructures.Timeline;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class recognises the songs in audio files without any UI - it is
+ * used by the tasks of the GUI (see FileMatcher and FileScanner) and by the
+ * command line. It has two ways of looking at a file:
+ * - match - the file is a recording of one song. It is split in extracts of
+ * EXTRACT_LENGTH seconds (the last one takes the rest if less than 2 seconds would be
+ * left) which are decoded and matched in a thread pool, each one adaptively - the first
+ * 5 seconds first, then 10, then the whole extract. Each extract is read from the file only
+ * when its turn comes, so memory use does not depend on the length of the file. As soon as
+ * one extract is matched the rest are cancelled;
+ * - scan - the file is a long recording of many songs (a DJ set, a radio broadcast etc.).
+ * The whole file is decoded and hashed only once - then a window of SCAN_WINDOW seconds slides
+ * over the hashes SCAN_HOP seconds at a time and the hashes in it are matched against the DB.
+ * Consecutive windows matched to the same song are merged in a segment of the resulting timeline.
+ *
+ * It has only static methods so it is thread-safe.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class FileRecognition {
+    // statics:
+    private static final Logger logger;
+    private static final int EXTRACT_LENGTH, SCAN_WINDOW, SCAN_HOP;
+    private static final int[] ATTEMPTS;
+    static {
+        logger = Logger.getLogger(FileRecognition.class.getName());
+        EXTRACT_LENGTH = 20; // the length in seconds of the split streams
+        // seconds of an extract matched before going further - the last one reads to the end of the extract
+        // (the last extract of a file can be up to 2 seconds longer than EXTRACT_LENGTH)
+        ATTEMPTS = new int[] {5, 10, Integer.MAX_VALUE};
+        SCAN_WINDOW = 10;    // the length in seconds of the windows matched when scanning
+        SCAN_HOP = 5;        // the seconds between the start of two windows
+    }
+
+    /**
+     * An interface for following a scan.
+     */
+    public interface ScanListener {
+        /**
+         * Called (on the thread of the scan) after each window is matched.
+         *
+         * @param timeline the songs found so far
+         * @param done the FFT windows of the file scanned so far
+         * @param total the FFT windows of the file
+         * @return false to stop the scan
+         */
+        boolean onWindow(Timeline timeline, int done, int total);
+    }
+
+    /**
+     * A method to match a file which is a recording of one song.
+     *
+     * @param input the audio file
+     * @param middleFirst whether to begin with the extracts from the middle of the
+     *                    file (recordings often have silence or talking at the start)
+     * @param threads the most extracts decoded at the same time
+     * @return the result of the first extract which was matched, or the non-match with the
+     * best candidate if none of them was
+     * @throws IOException if the file or none of its extracts can be read, or its length is not known
+     * @throws UnsupportedAudioFileException if the file is not audio in the supported format
+     * @throws InterruptedException if it was interrupted (the extracts are cancelled)
+     */
+    public static MatchResult match(File input, boolean middleFirst, int threads) throws IOException,
+            UnsupportedAudioFileException, InterruptedException {
+        long start = System.currentTimeMillis(); // used for logging speed of matching
+
+        checkFormat(input);
+        AudioFileFormat fileFormat = AudioSystem.getAudioFileFormat(input);
+        AudioFormat format = fileFormat.getFormat();
+        long frameLength = fileFormat.getFrameLength();
+        checkLength(input, frameLength);
+
+        // get the length of the stream in seconds
+        double durationInSeconds = frameLength / format.getFrameRate();
+
+        // split the stream in extracts - {start second, 1 if until the end}
+        ArrayList<int[]> extracts = new ArrayList<>();
+        for(int i = 0; i < durationInSeconds; i += EXTRACT_LENGTH) {
+            // check if there will be less than two seconds remaining
+            // in the original stream
+            if((durationInSeconds - 2) < (i + EXTRACT_LENGTH)) {
+                // if there is, get the extract until the end;
+                extracts.add(new int[] {i, 1});
+                break;
+            } else {
+                // if there isn't - normal
+                extracts.add(new int[] {i, 0});
+            }
+        }
+
+        MatchResult best = new MatchResult();
+        if(extracts.isEmpty()) return best;
+
+        // order the extracts by their distance from the middle of the stream
+        if(middleFirst) {
+            int middle = extracts.size() / 2;
+            extracts.sort(Comparator.comparingInt(e -> Math.abs(e[0] / EXTRACT_LENGTH - middle)));
+        }
+
+        // the thread pool and a completion service to take the results in order of completion
+        // (a virtual thread per extract if they are enabled - the decoding itself is bounded by the DSP pool)
+        ExecutorService executor = ExecutionMode.newRequestExecutor(Math.max(1, Math.min(threads, extracts.size())));
+        CompletionService<MatchResult> completionService = new ExecutorCompletionService<>(executor);
+        ArrayList<Future<MatchResult>> futures = new ArrayList<>();
+
+        try {
+            // submit all extracts - each one is read from the file only when it begins decoding
+            for(int[] e : extracts) {
+                int second = e[0];
+                boolean untilEnd = e[1] == 1;
+                futures.add(completionService.submit(() -> {
+                    AudioInputStream extract = getExtract(input, format, frameLength, second, untilEnd);
+                    logger.log(Level.INFO, "Begin decoding & matching stream extract from " + second + "s...");
+                    MatchResult result = AudioDecoder.decodeStreamAndMatchAdaptive(new StreamSource(extract), false,
+                            ATTEMPTS);
+                    logger.log(Level.INFO, "Done decoding & matching stream extract from " + second + "s!");
+                    return result;
+                }));
+            }
+
+            int unreadable = 0;
+
+            // take the results as they come
+            for(int i = 0; i < futures.size(); i ++) {
+                try {
+                    MatchResult result = completionService.take().get();
+
+                    // if there was a match - it is done (the other extracts are cancelled below)
+                    if(result.isMatch()) {
+                        best = result;
+                        break;
+                    }
+                    if(best.getBest() == null || (result.getBest() != null &&
+                            result.getBest().getScore() > best.getBest().getScore())) {
+                        best = result;
+                    }
+                } catch (ExecutionException e) {
+                    logger.log(Level.SEVERE, "Exception thrown while decoding & matching extract " + e.getCause());
+                    unreadable ++;
+                }
+            }
+
+            // none of the extracts could be read
+            if(unreadable == futures.size()) throw new IOException("No extract of " + input.getName() +
+                    " could be read.");
+        } finally {
+            // cancel all extracts which are still running or waiting
+            for(Future<MatchResult> future : futures) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+
+        // log time taken
+        long end = System.currentTimeMillis();
+        logger.log(Level.INFO, "Time taken to match " + input.getName() + ": " + (end-start) + "ms (" +
+                best + ")");
+
+        return best;
+    }
+
+    /**
+     * A method to find all songs in a long recording and when each of them plays.
+     *
+     * @param input the audio file
+     * @param listener follows the scan (null if not needed)
+     * @return the songs found in the file (so far, if the listener stopped the scan)
+     * @throws IOException if the file cannot be read or its length is not known
+     * @throws UnsupportedAudioFileException if the file is not audio in the supported format
+     * @throws InterruptedException if it was interrupted while waiting for the DB
+     */
+    public static Timeline scan(File input, ScanListener listener) throws IOException,
+            UnsupportedAudioFileException, InterruptedException {
+        long start = System.currentTimeMillis(); // used for logging speed of algorithm
+
+        checkFormat(input);
+        AudioFileFormat fileFormat = AudioSystem.getAudioFileFormat(input);
+        checkLength(input, fileFormat.getFrameLength());
+        double durationInSeconds = fileFormat.getFrameLength() / fileFormat.getFormat().getFrameRate();
+        Timeline timeline = new Timeline(SCAN_HOP);
+
+        // Step 1: decode and hash the whole file once
+
+        Fingerprint fingerprint = AudioDecoder.decodeStreamFingerprint(StreamSource.fromFile(input));
+
+        // Step 2: slide the window over the hashes and match each position
+
+        int windowLength = (int) Math.round(SCAN_WINDOW / MatchResult.WINDOW_DURATION);
+        int hop = (int) Math.round(SCAN_HOP / MatchResult.WINDOW_DURATION);
+        int total = (int) (durationInSeconds / MatchResult.WINDOW_DURATION);
+
+        for(int from = 0; from < total; from += hop) {
+            int to = Math.min(from + windowLength, total);
+
+            MatchResult result = new MatchResult();
+            result.setDuration((to - from) * MatchResult.WINDOW_DURATION);
+            result.setStart(from * MatchResult.WINDOW_DURATION);
+            DBFingerprint.lookForMatches(fingerprint.range(from, to), false, result);
+            timeline.add(result, from * MatchResult.WINDOW_DURATION, to * MatchResult.WINDOW_DURATION);
+
+            if(listener != null && !listener.onWindow(timeline, to, total)) break;
+
+            // the last window reached the end
+            if(to == total) break;
+        }
+
+        // log time taken
+        long end = System.currentTimeMillis();
+        logger.log(Level.INFO, "Time taken to scan " + (int) durationInSeconds + "s of " + input.getName() +
+                ": " + (end-start) + "ms (" + timeline.getSegments().size() + " segments)");
+
+        return timeline;
+    }
+
+    /**
+     * A method to check that a file is in the format the decoding expects (see
+     * AudioDecoder.getSupportedFormat) - audio in any other format (e.g. 48 kHz or 24 bit)
+     * would be decoded wrongly and silently not match.
+     *
+     * @param input the file
+     * @throws UnsupportedAudioFileException if it is not in the supported format
+     */
+    public static void checkFormat(File input) throws UnsupportedAudioFileException {
+        if(!AudioDecoder.checkFormat(input)) {
+            throw new UnsupportedAudioFileException(input.getName() + " is not in the supported format (" +
+                    AudioDecoder.getSupportedFormat() + ").");
+        }
+    }
+
+    /**
+     * A method to check that the length of a file is known - the extracts and the
+     * windows are worked out from it, so a file without one would not be matched at all.
+     *
+     * @param input the file
+     * @param frameLength the length of the file in sample frames
+     * @throws IOException if the length is not known
+     */
+    private static void checkLength(File input, long frameLength) throws IOException {
+        if(frameLength == AudioSystem.NOT_SPECIFIED || frameLength < 0) {
+            throw new IOException("The length of " + input.getName() + " is not known.");
+        }
+    }
+
+    /**
+     * A method to generate an extract from the original
+     * file. It opens a new stream on the file and skips to the start of the
+     * extract (without reading what is before it), so it works with offsets
+     * of any size and only the extract itself is ever read.
+     *
+     * @param input the file
+     * @param format the format of the file
+     * @param frameLength the length of the file in sample frames
+     * @param start the start second of the extract
+     * @param untilEnd should the extract be until the end
+     * @return an extract from the starting second with length equal to EXTRACT_LENGTH
+     * @throws IOException if the file cannot be read
+     * @throws UnsupportedAudioFileException if the file is not audio
+     */
+    private static AudioInputStream getExtract(File input, AudioFormat format, long frameLength, long start,
+                                               boolean untilEnd) throws IOException, UnsupportedAudioFileException {
+        // calculate the start & end frames
+        long startFrame = (long) (start * format.getFrameRate());
+        long endFrame = (long) ((start + EXTRACT_LENGTH) * format.getFrameRate());
+        if (endFrame > frameLength || untilEnd) endFrame = frameLength;
+
+        AudioInputStream ais = AudioSystem.getAudioInputStream(input);
+
+        // skip to the start of the extract
+        long toSkip = startFrame * format.getFrameSize();
+        while(toSkip > 0) {
+            long skipped = ais.skip(toSkip);
+            if(skipped <= 0) {
+                ais.close();
+                throw new IOException("Unable to skip to second " + start + " of " + input.getName());
+            }
+            toSkip -= skipped;
+        }
+
+        // limit the stream to the length of the extract
+        return new AudioInputStream(ais, format, endFrame - startFrame);
+    }
+}
@@ -0,0 +1,357 @@
+package model.concurrent;
+
+import model.db.DBFingerprint;
+import model.db.DBIngest;
+import model.engine.AudioDecoder;
+import model.engine.LibraryScanner;
+import model.engine.datastructures.Fingerprint;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class fingerprints many songs and stores them in the DB as a pipeline
+ * of four stages - reader (reads and filters the file, mostly I/O), DSP (mono,
+ * down-sample and FFT), hasher (key points and hashes) and writer (inserts several
+ * songs at once in the DB, I/O). Each stage has its own threads and the stages are
+ * connected by bounded queues, so the CPU stages keep working on the next songs while
+ * the DB is busy with the previous ones, and a slow stage makes the stages before it
+ * wait instead of filling the memory with decoded songs.
+ *
+ * The ingest state of each song (see DBIngest) is IN_PROGRESS from when it is read until
+ * the writer commits it together with the song. A song which cannot be decoded is FAILED.
+ *
+ * A pipeline is used for one batch of songs.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class IngestPipeline {
+    // statics:
+    private static final Logger logger;
+    private static final int READERS, DSP_THREADS, HASHERS, WRITERS, QUEUE_SIZE, WRITE_BATCH;
+    private static final Job END;
+    static {
+        logger = Logger.getLogger(IngestPipeline.class.getName());
+        int cores = Runtime.getRuntime().availableProcessors();
+        READERS = 2;                            // threads reading files
+        DSP_THREADS = Math.max(1, cores / 2);   // threads applying FFT
+        HASHERS = Math.max(1, cores / 2);       // threads hashing
+        WRITERS = 1;                            // threads inserting in the DB
+        QUEUE_SIZE = 2;                         // songs waiting between two stages (a song can be ~50MB)
+        WRITE_BATCH = 4;                        // songs inserted at once
+        END = new Job(null);                    // marks the end of the songs in a queue
+    }
+
+    // the stages
+    private Stage reader, dsp, hasher, writer;
+    // called with the name of each song which is stored
+    private Consumer<String> onStored;
+    // the number of songs stored
+    private AtomicInteger stored;
+
+    /**
+     * Constructor - a pipeline with the default number of threads per stage
+     *
+     * @param onStored if not null, called (from the writer thread) with the name of each song which is stored
+     */
+    public IngestPipeline(Consumer<String> onStored) {
+        this(READERS, DSP_THREADS, HASHERS, WRITERS, onStored);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param readers the number of threads reading files
+     * @param dspThreads the number of threads applying FFT
+     * @param hashers the number of threads hashing
+     * @param writers the number of threads inserting in the DB
+     * @param onStored if not null, called (from a writer thread) with the name of each song which is stored
+     */
+    public IngestPipeline(int readers, int dspThreads, int hashers, int writers, Consumer<String> onStored) {
+        this.onStored = onStored;
+        this.stored = new AtomicInteger();
+
+        // built from the end - each stage puts its results in the queue of the next one
+        writer = new Stage("writer", writers, null);
+        hasher = new Stage("hasher", hashers, writer);
+        dsp = new Stage("dsp", dspThreads, hasher);
+        reader = new Stage("reader", readers, dsp);
+    }
+
+    /**
+     * A method to find the songs of the next batch - the songs in the music dir which
+     * are new or changed by content (see LibraryScanner). They are recorded as pending (the
+     * ones from an earlier batch keep their state) and the ones which were in progress when
+     * an earlier batch was interrupted are redone. The ones which failed before are left out.
+     *
+     * @return the songs to fingerprint
+     */
+    public static List<String> getPendingSongs() {
+        List<String> songs = LibraryScanner.scan();
+        DBIngest.enqueue(songs);
+        DBIngest.resume();
+        songs.retainAll(new HashSet<>(DBIngest.getFiles(DBIngest.PENDING)));
+        return songs;
+    }
+
+    /**
+     * The main method of the class. It runs all of the songs through the
+     * pipeline and waits for the last one to be stored. If the calling thread
+     * is interrupted all stages are stopped.
+     *
+     * @param songs the names of the songs (files in the music dir)
+     * @return the number of songs stored
+     * @throws InterruptedException if it was interrupted
+     */
+    public int run(List<String> songs) throws InterruptedException {
+        long start = System.currentTimeMillis(); // used for logging speed of the pipeline
+
+        writer.start(this::write);
+        hasher.start(job -> {
+            job.fingerprint = AudioDecoder.fingerprint(job.song, job.spectrum);
+            job.spectrum = null;
+            return true;
+        });
+        dsp.start(job -> {
+            job.spectrum = AudioDecoder.spectrum(job.audio);
+            job.audio = null;
+            return true;
+        });
+        reader.start(job -> {
+            DBIngest.setState(job.song, DBIngest.IN_PROGRESS);
+            job.audio = AudioDecoder.readFiltered(job.song);
+            return job.audio != null; // a song which could not be read is dropped
+        });
+
+        try {
+            // feed the songs - waits while the reader is behind
+            for(String song : songs) {
+                reader.queue.put(new Job(song));
+                reader.recordDepth();
+            }
+            reader.queue.put(END);
+
+            // wait for the last song
+            writer.join();
+        } catch (InterruptedException e) {
+            stop();
+            throw e;
+        }
+
+        // log time taken and the metrics of each stage
+        long end = System.currentTimeMillis();
+        logger.log(Level.INFO, "Time taken to ingest " + stored.get() + " of " + songs.size() + " songs: " +
+                (end-start) + "ms\n" + getMetrics());
+
+        return stored.get();
+    }
+
+    /**
+     * A method to stop all stages. The songs which are not stored yet are dropped.
+     */
+    public void stop() {
+        reader.stop();
+        dsp.stop();
+        hasher.stop();
+        writer.stop();
+    }
+
+    /**
+     * @return the threads, songs, busy time and queue depth of each stage
+     */
+    public String getMetrics() {
+        return reader + "\n" + dsp + "\n" + hasher + "\n" + writer;
+    }
+
+    /**
+     * The work of a writer thread - it takes up to WRITE_BATCH songs which are
+     * ready and inserts them in the DB at once.
+     *
+     * @param first the first song of the batch
+     * @return true if the songs were stored
+     */
+    private boolean write(Job first) {
+        List<Job> batch = new ArrayList<>();
+        batch.add(first);
+        writer.queue.drainTo(batch, WRITE_BATCH - 1);
+
+        // the end is not part of the batch - put it back for the other writers
+        if(batch.remove(END)) {
+            writer.queue.add(END);
+        }
+
+        String[] songs = new String[batch.size()];
+        Fingerprint[] fingerprints = new Fingerprint[batch.size()];
+        for(int i = 0; i < batch.size(); i ++) {
+            songs[i] = batch.get(i).song;
+            fingerprints[i] = batch.get(i).fingerprint;
+        }
+
+        boolean[] inserted = DBFingerprint.insertSongs(songs, fingerprints);
+
+        // the first one is counted by the stage
+        for(int i = 1; i < songs.length; i ++) {
+            if(inserted[i]) writer.processed.incrementAndGet();
+        }
+        for(int i = 0; i < songs.length; i ++) {
+            if(!inserted[i]) continue;
+            stored.incrementAndGet();
+            if(onStored != null) onStored.accept(songs[i]);
+        }
+        return inserted[0];
+    }
+
+    /**
+     * A song going through the pipeline. Each stage sets
+     * its result and drops what it does not need any more.
+     */
+    private static class Job {
+        // the name of the song
+        String song;
+        // the filtered raw audio
+        byte[] audio;
+        // the FFT results
+        double[][] spectrum;
+        // the hashes
+        Fingerprint fingerprint;
+
+        Job(String song) {
+            this.song = song;
+        }
+    }
+
+    /**
+     * A stage of the pipeline - a bounded queue of songs and the threads
+     * which take songs from it, do the work of the stage and put them in the queue
+     * of the next stage. The END job is passed on when all threads are done.
+     */
+    private static class Stage {
+        // the name of the stage
+        private String name;
+        // the threads of the stage
+        private Thread[] threads;
+        // the songs waiting for the stage
+        private BlockingQueue<Job> queue;
+        // the next stage
+        private Stage next;
+        // the threads which are still running
+        private AtomicInteger running;
+        // the songs done, the time spent on them (ms) and the deepest the queue has been
+        private AtomicInteger processed, maxDepth;
+        private AtomicLong busyTime;
+
+        /**
+         * Constructor
+         *
+         * @param name the name of the stage
+         * @param threads the number of threads
+         * @param next the next stage (null if it is the last one)
+         */
+        Stage(String name, int threads, Stage next) {
+            this.name = name;
+            this.threads = new Thread[threads];
+            this.queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+            this.next = next;
+            this.running = new AtomicInteger(threads);
+            this.processed = new AtomicInteger();
+            this.maxDepth = new AtomicInteger();
+            this.busyTime = new AtomicLong();
+        }
+
+        /**
+         * A method to start the threads of the stage.
+         *
+         * @param work the work done on each song - a song is dropped if it returns false or throws
+         */
+        void start(Predicate<Job> work) {
+            for(int i = 0; i < threads.length; i ++) {
+                threads[i] = ExecutionMode.newWorker(() -> {
+                    try {
+                        while(true) {
+                            Job job = queue.take();
+                            if(job == END) {
+                                queue.put(END); // for the other threads of the stage
+                                break;
+                            }
+
+                            long start = System.currentTimeMillis();
+                            boolean done = false;
+                            try {
+                                done = work.test(job);
+                            } catch (Exception e) {
+                                logger.log(Level.SEVERE, "Exception thrown in the " + name + " stage while processing " +
+                                        job.song + " " + e);
+                            } finally {
+                                busyTime.addAndGet(System.currentTimeMillis() - start);
+                            }
+                            if(!done) {
+                                // a song which could not be decoded is not tried again (a song which
+                                // could not be inserted has its state set by the insert)
+                                if(next != null) DBIngest.setState(job.song, DBIngest.FAILED);
+                                continue;
+                            }
+
+                            processed.incrementAndGet();
+                            if(next != null) {
+                                next.queue.put(job);
+                                next.recordDepth();
+                            }
+                        }
+
+                        // the last thread of the stage tells the next stage that there are no more songs
+                        if(running.decrementAndGet() == 0 && next != null) {
+                            next.queue.put(END);
+                        }
+                    } catch (InterruptedException e) {
+                        // stopped
+                    }
+                }, "ingest-" + name + "-" + i);
+                threads[i].setDaemon(true);
+                threads[i].start();
+            }
+        }
+
+        /**
+         * A method to record the depth of the queue after a song was added
+         */
+        void recordDepth() {
+            maxDepth.accumulateAndGet(queue.size(), Math::max);
+        }
+
+        /**
+         * A method to wait for all threads of the stage
+         *
+         * @throws InterruptedException if it was interrupted
+         */
+        void join() throws InterruptedException {
+            for(Thread thread : threads) {
+                thread.join();
+            }
+        }
+
+        /**
+         * A method to stop all threads of the stage
+         */
+        void stop() {
+            for(Thread thread : threads) {
+                if(thread != null) thread.interrupt();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + threads.length + " threads, " + processed.get() + " songs, busy " + busyTime.get() +
+                    "ms, queue " + (queue.size() - (queue.contains(END) ? 1 : 0)) + " (max " + maxDepth.get() + " of " + QUEUE_SIZE + ")";
+        }
+    }
+}
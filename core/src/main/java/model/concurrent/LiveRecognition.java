@@ -0,0 +1,251 @@
+package model.concurrent;
+
+import model.audio.AudioSource;
+import model.audio.LineSource;
+import model.concurrent.thread.MicCapture;
+import model.engine.MatchSession;
+import model.engine.StreamDecoder;
+import model.engine.datastructures.MatchResult;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class recognises the song in live input without any UI - it is used by
+ * the GUI (see MicListener) and by the command line (listen). The input is read
+ * continuously by a MicCapture thread into a ring buffer. Every HOP ms the new input
+ * is decoded (by a StreamDecoder) and its new hashes are looked up in a MatchSession,
+ * which adds up the evidence from all of the input so far - every hash is computed and
+ * looked up only once. Matching begins once there are MIN_LENGTH seconds of input and runs
+ * until there is a confident match or for LISTENING_DURATION ms (then a match which is not
+ * confident is accepted too). It can listen to any AudioSource instead of the microphone -
+ * e.g. a file paced in real time (PacedSource), to measure how long it takes to match
+ * without sound hardware.
+ *
+ * The hops are kept at a fixed rate (a slow hop makes the next wait shorter) and every hop
+ * updates the decoder, so a StreamDecoder.Listener (e.g. a live view of the input) gets the
+ * windows and key points within a hop of their input. A hop which takes longer than HOP is
+ * logged - the input is still all decoded (it waits in the ring buffer), but it is late.
+ *
+ * It keeps state, so an instance should listen only once.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class LiveRecognition {
+    // statics
+    private final static Logger logger;
+    private final static int LISTENING_DURATION, HOP, MIN_LENGTH, BUFFER_LENGTH;
+    static {
+        logger = Logger.getLogger(LiveRecognition.class.getName());
+        LISTENING_DURATION = 30000; // How long it will listen for (ms)
+        HOP = 300;                  // How often the input is matched (ms)
+        MIN_LENGTH = 2;             // The input needed before the first matching (seconds)
+        BUFFER_LENGTH = 10;         // The input the ring buffer can hold (seconds)
+    }
+
+    // what to listen to
+    private AudioSource source;
+    // gets the windows and key points of the input as they are decoded - null if there is none
+    private StreamDecoder.Listener decoderListener;
+    // how long it took to match (ms of listening) or -1 if there was no match
+    private long timeToMatch = -1;
+    // how long it listened (ms)
+    private long listeningTime;
+    // the number of hops, the number of them which took longer than HOP and the longest one (ms)
+    private int hops, lateHops;
+    private long longestHop;
+
+    /**
+     * Constructor
+     *
+     * @param source what to listen to (44.1 kHz 16 bit)
+     */
+    public LiveRecognition(AudioSource source) {
+        this.source = source;
+    }
+
+    /**
+     * A method to open the microphone in the format it is matched in.
+     *
+     * @return the microphone, or null if there is no microphone which supports the format
+     * @throws LineUnavailableException if the microphone cannot be opened
+     */
+    public static AudioSource openMicrophone() throws LineUnavailableException {
+        logger.log(Level.INFO, "Trying to connect to mic!");
+
+        // get the format (44.1 kHz 16 bit mono)
+        AudioFormat micFormat = getMicFormat();
+
+        // check if line is supported
+        if(!LineSource.isSupported(micFormat)) return null;
+
+        // init target data line
+        return new LineSource(micFormat);
+    }
+
+    /**
+     * The main method of the class. It starts capturing the source and
+     * matches the new input every HOP ms until there is a confident match,
+     * the source has no more audio or LISTENING_DURATION ms passed.
+     *
+     * @param stop checked before each hop - listening stops when it is true (e.g. it was cancelled)
+     * @return the match (accepted at the end even if it is not confident), or null if there was none
+     * @throws InterruptedException if the thread is interrupted while listening
+     */
+    public MatchResult listen(BooleanSupplier stop) throws InterruptedException {
+        MicCapture capture = null;
+        MatchResult result = null;
+        long start = System.currentTimeMillis();
+        try {
+            AudioFormat format = source.getFormat();
+
+            // start capturing
+            int bytesPerSecond = (int) (format.getFrameRate() * format.getFrameSize());
+            capture = new MicCapture(source, BUFFER_LENGTH * bytesPerSecond);
+            capture.start();
+
+            logger.log(Level.INFO, "Connected! Listening...");
+
+            // decodes the input as it comes and keeps the evidence for each song
+            StreamDecoder decoder = new StreamDecoder(format, true);
+            decoder.setListener(decoderListener);
+            MatchSession session = new MatchSession(true);
+
+            long nextHop = start + HOP;
+            while(!stop.getAsBoolean() && System.currentTimeMillis() - start < LISTENING_DURATION) {
+                // a hop which was late leaves less time before the next one
+                long wait = nextHop - System.currentTimeMillis();
+                if(wait > 0) Thread.sleep(wait);
+                long hopStart = System.currentTimeMillis();
+                nextHop = Math.max(nextHop + HOP, hopStart);
+
+                // Step 1: decode the input captured since the last hop
+
+                // (checked before draining so that no audio is left behind when it has ended)
+                boolean ended = capture.isEnded();
+                byte[] data = capture.drain();
+                ExecutionMode.onDspPool(() -> {
+                    decoder.feed(data, 0, data.length);
+                    decoder.update(); // the listener gets the new windows now, not when matching begins
+                });
+                if(ended) ExecutionMode.onDspPool(decoder::finish);
+                if(decoder.getDuration() < MIN_LENGTH && !ended) {
+                    checkHop(hopStart);
+                    continue;
+                }
+
+                // Step 2: look up the new hashes and add them to the evidence so far
+
+                session.submit(ExecutionMode.onDspPool(decoder::getNewHashes));
+                result = session.getResult(ExecutionMode.onDspPool(() -> decoder.getProvisionalHashes(0)),
+                        decoder.getDuration());
+
+                result.setSkippedWindows(decoder.getSkippedWindows());
+                checkHop(hopStart);
+
+                if(MatchSession.isConfident(result)) {
+                    timeToMatch = System.currentTimeMillis() - start;
+                    logger.log(Level.INFO, "Matched after " + timeToMatch + "ms of input.");
+                    break;
+                }
+
+                // the source has no more audio and all of it is matched
+                if(ended) break;
+            }
+
+            logger.log(Level.INFO, "Listening ended. " + decoder.getSkippedWindows() + " of " +
+                    decoder.getWindowCount() + " windows skipped as silence or noise, " + lateHops +
+                    " hops took longer than " + HOP + "ms.");
+        } finally {
+            // stop capturing - the thread closes the source
+            if(capture != null) capture.stopCapture();
+            listeningTime = System.currentTimeMillis() - start;
+        }
+
+        // the best guess is accepted at the end even if it is not confident
+        if(result != null && result.isMatch()) {
+            if(timeToMatch == -1) timeToMatch = listeningTime;
+            return result;
+        }
+        return null;
+    }
+
+    /**
+     * A method to count a hop and log it if it took longer than HOP.
+     *
+     * @param hopStart the time the hop started
+     */
+    private void checkHop(long hopStart) {
+        long took = System.currentTimeMillis() - hopStart;
+        hops ++;
+        longestHop = Math.max(longestHop, took);
+        if(took > HOP) {
+            lateHops ++;
+            logger.log(Level.WARNING, "Hop took " + took + "ms - longer than the " + HOP + "ms of input it had.");
+        }
+    }
+
+    /**
+     * A method to get the statistics of the listening as JSON (see MatchResult.toJson).
+     *
+     * @param result the match (null if there was none)
+     * @return the JSON object
+     */
+    public String toJson(MatchResult result) {
+        return "{\"listeningMs\":" + listeningTime + ",\"timeToMatchMs\":" + timeToMatch + ",\"hops\":" + hops +
+                ",\"lateHops\":" + lateHops + ",\"longestHopMs\":" + longestHop + ",\"hopMs\":" + HOP +
+                ",\"result\":" + (result == null ? "null" : result.toJson()) + "}";
+    }
+
+    /** Setters and Getters: */
+
+    public long getTimeToMatch() {
+        return timeToMatch;
+    }
+
+    public long getListeningTime() {
+        return listeningTime;
+    }
+
+    public int getHops() {
+        return hops;
+    }
+
+    public int getLateHops() {
+        return lateHops;
+    }
+
+    public long getLongestHop() {
+        return longestHop;
+    }
+
+    public static int getHop() {
+        return HOP;
+    }
+
+    public void setDecoderListener(StreamDecoder.Listener decoderListener) {
+        this.decoderListener = decoderListener;
+    }
+
+    /**
+     * A method to define the audio format that the mic recording
+     * will be in. It has a low sampling rate so we dont have to
+     * down sample it later.
+     *
+     * @return the format of the mic recording
+     */
+    private static AudioFormat getMicFormat() {
+        AudioFormat.Encoding encoding = AudioFormat.Encoding.PCM_SIGNED;
+        int sampleRate = 44100;
+        int sampleSizeInBits = 16;
+        int channels = 1;
+        int frameSize = 2;
+        int frameRate = 44100;
+        return new AudioFormat(encoding, sampleRate, sampleSizeInBits, channels, frameSize,
+                frameRate, false);
+    }
+}
@@ -0,0 +1,149 @@
+package model.concurrent;
+
+import model.audio.SyntheticSource;
+import model.engine.StreamDecoder;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class runs the steps of starting the app (e.g. checking the DB, reading
+ * the music folder) in the background, all at once, and measures them, so the window
+ * can be shown straight away and each control enabled as soon as what it needs is ready.
+ *
+ * The app is interactive when all of the dependencies given to the constructor are ready
+ * (see ready) - the time from the start of the JVM to then is logged with the time of each step.
+ * A step may run on after the app is interactive (e.g. the warm-up).
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class Startup {
+    // statics:
+    private static final Logger logger;
+    private static final int THREADS, WARM_UP_SEED;
+    private static final double WARM_UP_LENGTH;
+    static {
+        logger = Logger.getLogger(Startup.class.getName());
+        THREADS = 4;            // the steps are mostly waiting for the DB and the disk, so one per step
+        WARM_UP_SEED = 1;
+        WARM_UP_LENGTH = 3;     // the length of the clip decoded to warm up (seconds)
+    }
+
+    // runs the steps
+    private ExecutorService executor;
+    // the dependencies which are not ready yet
+    private LinkedHashSet<String> waiting;
+    // the time the JVM started and the time the app became interactive (-1 until then)
+    private long jvmStart, timeToInteractive = -1;
+    // the time of each step - for logging
+    private StringBuilder timings;
+
+    /**
+     * Constructor
+     *
+     * @param dependencies what has to be ready before the app is interactive
+     */
+    public Startup(String... dependencies) {
+        this.waiting = new LinkedHashSet<>(Arrays.asList(dependencies));
+        this.timings = new StringBuilder();
+        this.jvmStart = getJvmStart();
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "startup-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * A method to run a step in the background.
+     *
+     * @param name the name of the step (for logging)
+     * @param step the step
+     * @param <T> the result of the step
+     * @return the result of the step when it is done
+     */
+    public <T> CompletableFuture<T> run(String name, Supplier<T> step) {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.currentTimeMillis(); // used for logging speed of the step
+            T result = step.get();
+            long end = System.currentTimeMillis();
+            logger.log(Level.INFO, "Startup step '" + name + "' took " + (end - start) + "ms (done " +
+                    (end - jvmStart) + "ms after launch)");
+            synchronized (this) {
+                timings.append(", ").append(name).append(" ").append(end - start).append("ms");
+            }
+            return result;
+        }, executor);
+    }
+
+    /**
+     * A method to mark a dependency as ready. When the last one is, the
+     * time to interactive is logged.
+     *
+     * @param dependency the dependency
+     */
+    public synchronized void ready(String dependency) {
+        if(!waiting.remove(dependency) || !waiting.isEmpty()) return;
+
+        timeToInteractive = System.currentTimeMillis() - jvmStart;
+        logger.log(Level.INFO, "Interactive " + timeToInteractive + "ms after launch" +
+                (timings.length() == 0 ? "" : " (" + timings.substring(2) + ")"));
+
+        // the steps which are still running finish
+        executor.shutdown();
+    }
+
+    /**
+     * A method to log that the window is shown.
+     */
+    public void shown() {
+        logger.log(Level.INFO, "Window shown " + (System.currentTimeMillis() - jvmStart) + "ms after launch");
+    }
+
+    /**
+     * A method to decode and fingerprint a short generated clip, so the code which
+     * decodes input is compiled (JIT) before the first real input has to be matched.
+     *
+     * @return the number of hashes of the clip
+     */
+    public static Integer warmUp() {
+        SyntheticSource source = new SyntheticSource(WARM_UP_SEED, WARM_UP_LENGTH, 0.1);
+        StreamDecoder decoder = new StreamDecoder(source.getFormat(), true);
+        byte[] buffer = new byte[64 * 1024];
+        source.start();
+        int read;
+        while((read = source.read(buffer, 0, buffer.length)) > 0) {
+            int length = read;
+            ExecutionMode.onDspPool(() -> decoder.feed(buffer, 0, length));
+        }
+        source.close();
+        return ExecutionMode.onDspPool(() -> decoder.getFingerprint()).size();
+    }
+
+    /**
+     * @return the time the JVM started (ms), or now if it is not known
+     */
+    private static long getJvmStart() {
+        try {
+            return ManagementFactory.getRuntimeMXBean().getStartTime();
+        } catch (Throwable e) {
+            return System.currentTimeMillis();
+        }
+    }
+
+    /** Setters and Getters: */
+
+    public long getTimeToInteractive() {
+        return timeToInteractive;
+    }
+}
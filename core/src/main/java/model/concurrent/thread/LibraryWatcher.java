@@ -0,0 +1,98 @@
+package model.concurrent.thread;
+
+import model.engine.AudioUtils;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A thread class which watches the music dir and calls onChange when .wav files
+ * are added, changed or removed. Copying a song into the dir fires many events,
+ * so they are collected until the dir is quiet for DEBOUNCE ms and onChange is
+ * called once for all of them. onChange runs on this thread.
+ *
+ * @author Martin Todorov
+ * @version 1.0
+ */
+public class LibraryWatcher extends Thread {
+    // statics:
+    private static final Logger logger;
+    private static final long DEBOUNCE; // ms
+    static {
+        logger = Logger.getLogger(LibraryWatcher.class.getName());
+        DEBOUNCE = 2000;
+    }
+
+    // called when the dir changed
+    private Runnable onChange;
+    // the watch service (closed to stop the thread)
+    private WatchService watchService;
+
+    /**
+     * Constructor
+     *
+     * @param onChange called (on this thread) when the dir changed
+     */
+    public LibraryWatcher(Runnable onChange) {
+        super("library-watcher");
+        this.onChange = onChange;
+        setDaemon(true);
+    }
+
+    /**
+     * Watches the dir until stopWatching is called.
+     */
+    @Override
+    public void run() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            AudioUtils.getMusicDir().toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Exception thrown while watching the music dir " + e);
+            return;
+        }
+
+        try {
+            while(true) {
+                // wait for the first event, then until the dir is quiet
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                while(key != null) {
+                    for(WatchEvent<?> event : key.pollEvents()) {
+                        if(event.kind() == StandardWatchEventKinds.OVERFLOW ||
+                                event.context().toString().endsWith(".wav")) changed = true;
+                    }
+                    if(!key.reset()) {
+                        logger.log(Level.WARNING, "The music dir is not accessible any more - stopped watching it.");
+                        return;
+                    }
+                    key = watchService.poll(DEBOUNCE, TimeUnit.MILLISECONDS);
+                }
+
+                if(changed) {
+                    logger.log(Level.INFO, "The music dir changed.");
+                    onChange.run();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    /**
+     * Used to stop the thread.
+     */
+    public void stopWatching() {
+        try { watchService.close(); } catch (Exception e) { /* ignored */ }
+        interrupt();
+    }
+}
@@ -0,0 +1,119 @@
+package model.concurrent.thread;
+
+import model.audio.AudioSource;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A thread class which reads the microphone (or any other audio source)
+ * continuously into a ring buffer, so that no input is lost while the input
+ * already captured is being decoded and matched. The input is taken out with
+ * drain (by a single consumer) as often as it is needed. If the consumer falls
+ * behind by more than the size of the buffer the oldest input is overwritten.
+ *
+ * @author Martin Todorov
+ * @version 1.0
+ */
+public class MicCapture extends Thread {
+    // logger
+    private final static Logger logger = Logger.getLogger(MicCapture.class.getName());
+
+    // the audio source (the microphone)
+    private AudioSource source;
+    // the ring buffer
+    private byte[] ring;
+    // the total number of bytes captured and the total number of bytes drained
+    private long written, drained;
+    // used to stop capturing
+    private volatile boolean capturing;
+    // whether the source has no more audio
+    private volatile boolean ended;
+
+    /**
+     * Constructor
+     *
+     * @param source the audio source
+     * @param bufferSize the size of the ring buffer in bytes (should be a multiple of the frame size)
+     */
+    public MicCapture(AudioSource source, int bufferSize) {
+        this.source = source;
+        this.ring = new byte[bufferSize];
+        this.capturing = true;
+        setDaemon(true);
+    }
+
+    /**
+     * Reads from the source into the ring buffer until stopCapture is called
+     * or the source has no more audio. The source is closed at the end.
+     */
+    @Override
+    public void run() {
+        // read ~50ms at a time
+        AudioFormat format = source.getFormat();
+        byte[] data = new byte[(int) (format.getFrameRate() / 20) * format.getFrameSize()];
+
+        try {
+            source.start();
+            while(capturing) {
+                int numBytesRead = source.read(data, 0, data.length);
+                if(numBytesRead == -1) break;
+                if(numBytesRead == 0) continue;
+
+                synchronized (this) {
+                    // copy to the ring buffer - it may wrap around
+                    int position = (int) (written % ring.length);
+                    int first = Math.min(numBytesRead, ring.length - position);
+                    System.arraycopy(data, 0, ring, position, first);
+                    System.arraycopy(data, first, ring, 0, numBytesRead - first);
+                    written += numBytesRead;
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Exception thrown while capturing audio " + e);
+        } finally {
+            ended = true;
+            source.close();
+        }
+    }
+
+    /**
+     * A method to take all input captured since the last time it was called.
+     *
+     * @return the new input (it may be empty)
+     */
+    public synchronized byte[] drain() {
+        // the input which was overwritten before it was drained is lost
+        if(written - drained > ring.length) {
+            logger.log(Level.WARNING, "Microphone input was not processed in time - " +
+                    (written - drained - ring.length) + " bytes lost.");
+            drained = written - ring.length;
+        }
+
+        byte[] result = new byte[(int) (written - drained)];
+        int position = (int) (drained % ring.length);
+        int first = Math.min(result.length, ring.length - position);
+        System.arraycopy(ring, position, result, 0, first);
+        System.arraycopy(ring, 0, result, first, result.length - first);
+        drained = written;
+
+        return result;
+    }
+
+    /**
+     * A method to stop capturing. The source gets closed by the thread.
+     */
+    public void stopCapture() {
+        capturing = false;
+    }
+
+    /**
+     * @return true if the source has no more audio (or could not be read) - what is left
+     * in the buffer can still be drained
+     */
+    public boolean isEnded() {
+        return ended;
+    }
+}
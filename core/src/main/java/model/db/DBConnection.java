@@ -9,8 +9,9 @@ package model.db;
  */
 class DBConnection {
     // package - private database connection data - change for personal database
+    // (the URL can also be set with -Ddb.url, e.g. for the tests)
     static final String DRIVER = "com.mysql.cj.jdbc.Driver";
-    static final String URL = "jdbc:mysql://localhost:3306/shazampoc";
+    static final String URL = System.getProperty("db.url", "jdbc:mysql://localhost:3306/shazampoc");
     static final String USER = "root";
     static final String PASS = "TestDBS123#@!";
 }
@@ -0,0 +1,565 @@
+package model.db;
+
+import model.engine.datastructures.Fingerprint;
+import model.engine.datastructures.MatchResult;
+import model.engine.datastructures.MyTargetZone;
+import model.engine.datastructures.OffsetHistogram;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A class which takes care of all fingerprint-related DB statements
+ * All of the methods are static and it is thread-safe.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+@SuppressWarnings("ConstantConditions")
+public class DBFingerprint {
+    // logger
+    private static final Logger logger = Logger.getLogger(DBFingerprint.class.getName());
+    // matching parameters
+    private static final int STAGE_ONE_FLOOR, STAGE_ONE_CEIL, STAGE_ONE_MIN_HASHES, CANDIDATES,
+                             WINDOW_MARGIN, BATCH_SIZE, RESULTS, INSERT_BATCH_SIZE, LOOKUP_CONNECTIONS;
+    // the lookups which are using the DB - it bounds how many connections are used at once
+    // (-Ddb.lookups, LOOKUP_CONNECTIONS by default). On virtual threads this is the only bound:
+    // mysql-connector-j 8.0.33+ guards its socket I/O with locks instead of synchronized blocks,
+    // so a request waiting on a query does not pin its carrier thread
+    private static final Semaphore LOOKUPS;
+    static {
+        STAGE_ONE_FLOOR = 40;       // the frequency bins whose hashes are used for the shortlist
+        STAGE_ONE_CEIL = 160;       // (~430 Hz to ~1.7 kHz)
+        STAGE_ONE_MIN_HASHES = 50;  // use all hashes for the shortlist if there are less than this
+        CANDIDATES = 20;            // the size of the shortlist
+        WINDOW_MARGIN = 5;          // how many FFT windows around the input are checked in a candidate
+        BATCH_SIZE = 500;           // how many hashes are looked up with a single query
+        RESULTS = 5;                // how many candidates are kept in the match result
+        INSERT_BATCH_SIZE = 1000;   // how many hashes are inserted with a single statement
+        LOOKUP_CONNECTIONS = Math.max(1, Integer.getInteger("db.lookups", 8)); // lookups on the DB at once
+        LOOKUPS = new Semaphore(LOOKUP_CONNECTIONS);
+    }
+
+    /**
+     * A method to insert songs and all of their fingerprints in the DB. Each song
+     * is inserted in a transaction together with its hashes and its COMMITTED ingest state
+     * (see DBIngest), so a song is either in the DB with all of its hashes or not at all,
+     * even if the app crashes in the middle. It uses a single connection for all of the songs
+     * and the hashes are inserted INSERT_BATCH_SIZE rows per statement, so it spends much less
+     * time waiting on the DB per song than one statement per hash.
+     *
+     * A song which the DB refuses (e.g. its title is too long) is rolled back and its ingest
+     * state is set to FAILED; the others are still inserted.
+     *
+     * @param songNames the names of the songs (files)
+     * @param fingerprints the fingerprints of the songs
+     * @return whether each of the songs was inserted
+     */
+    public static boolean[] insertSongs(String[] songNames, Fingerprint[] fingerprints) {
+        boolean[] inserted = new boolean[songNames.length];
+
+        Connection connection = null;
+        Statement st = null;
+        ResultSet set = null;
+        try {
+            // connect to database
+            Class.forName(DBConnection.DRIVER);
+            connection = DriverManager.getConnection(DBConnection.URL, DBConnection.USER, DBConnection.PASS);
+            connection.setAutoCommit(false);
+
+            // create a statement
+            st = connection.createStatement();
+
+            for(int s = 0; s < songNames.length; s ++) {
+                String song = songNames[s].substring(0, songNames[s].length() - 4);
+                try {
+                    // insert the song and get its ID
+                    st.executeUpdate("INSERT INTO SONGS (TITLE) VALUES (" + DBUtils.quote(song) + ");");
+                    set = st.executeQuery("SELECT LAST_INSERT_ID();");
+                    int id = 0;
+                    while(set.next()) {
+                        id = set.getInt(1);
+                    }
+                    set.close();
+
+                    // insert the hashes - many rows per statement
+                    long[] hashes = fingerprints[s].getHashes();
+                    int[] times = fingerprints[s].getTimes();
+                    for(int from = 0; from < hashes.length; from += INSERT_BATCH_SIZE) {
+                        int to = Math.min(from + INSERT_BATCH_SIZE, hashes.length);
+                        StringBuilder query = new StringBuilder("INSERT INTO HASHES (HASH_, SONG_ID, TIME_) VALUES ");
+                        for(int i = from; i < to; i ++) {
+                            if(i > from) query.append(',');
+                            query.append('(').append(hashes[i]).append(',').append(id).append(',')
+                                    .append(times[i]).append(')');
+                        }
+                        st.executeUpdate(query.append(';').toString());
+                    }
+
+                    // link it to its file (and all files with the same content) and
+                    // the checkpoint of the ingest - in the same transaction
+                    DBManifest.linkSong(st, songNames[s], id);
+                    st.executeUpdate("UPDATE INGEST_STATE SET STATE = '" + DBIngest.COMMITTED +
+                            "' WHERE FILE_NAME = " + DBUtils.quote(songNames[s]) + ";");
+
+                    connection.commit();
+                    inserted[s] = true;
+                    logger.log(Level.INFO, "Inserted song " + song + " (id: " + id + ") and " + hashes.length +
+                            " hashes in DB");
+                } catch (Exception e) {
+                    logger.log(Level.SEVERE, "Exception thrown while inserting song " + song + ": \n" + e);
+                    connection.rollback();
+                    st.executeUpdate("UPDATE INGEST_STATE SET STATE = '" + DBIngest.FAILED +
+                            "' WHERE FILE_NAME = " + DBUtils.quote(songNames[s]) + ";");
+                    connection.commit();
+                }
+            }
+        } catch (Exception e) {
+            // e.g. the connection was lost - the songs which are not committed are rolled back by the DB
+            logger.log(Level.SEVERE, "Exception thrown while inserting songs " + e);
+        } finally {
+            try { set.close(); } catch (Exception e) { /* ignored */ }
+            try { st.close(); } catch (Exception e) { /* ignored */ }
+            try { connection.close(); } catch (Exception e) { /* ignored */ }
+        }
+        return inserted;
+    }
+
+    /**
+     * A method to replace all hashes of a song (e.g. after it was hashed again from its
+     * constellation). The old hashes are deleted and the new ones inserted in one transaction,
+     * so a song is never left without hashes.
+     *
+     * @param songId the ID of the song
+     * @param fingerprint the new fingerprint of the song
+     * @return true if the hashes were replaced
+     */
+    public static boolean replaceHashes(int songId, Fingerprint fingerprint) {
+        boolean replaced = false;
+
+        Connection connection = null;
+        Statement st = null;
+        try {
+            // connect to database
+            Class.forName(DBConnection.DRIVER);
+            connection = DriverManager.getConnection(DBConnection.URL, DBConnection.USER, DBConnection.PASS);
+            connection.setAutoCommit(false);
+
+            // create a statement
+            st = connection.createStatement();
+
+            st.executeUpdate("DELETE FROM HASHES WHERE SONG_ID = " + songId + ";");
+
+            // insert the hashes - many rows per statement
+            long[] hashes = fingerprint.getHashes();
+            int[] times = fingerprint.getTimes();
+            for(int from = 0; from < hashes.length; from += INSERT_BATCH_SIZE) {
+                int to = Math.min(from + INSERT_BATCH_SIZE, hashes.length);
+                StringBuilder query = new StringBuilder("INSERT INTO HASHES (HASH_, SONG_ID, TIME_) VALUES ");
+                for(int i = from; i < to; i ++) {
+                    if(i > from) query.append(',');
+                    query.append('(').append(hashes[i]).append(',').append(songId).append(',')
+                            .append(times[i]).append(')');
+                }
+                st.executeUpdate(query.append(';').toString());
+            }
+
+            connection.commit();
+            replaced = true;
+            logger.log(Level.INFO, "Replaced the hashes of song " + songId + " (" + hashes.length + " hashes)");
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Exception thrown while replacing the hashes of song " + songId + " " + e);
+            try { connection.rollback(); } catch (Exception ex) { /* ignored */ }
+        } finally {
+            try { st.close(); } catch (Exception e) { /* ignored */ }
+            try { connection.close(); } catch (Exception e) { /* ignored */ }
+        }
+        return replaced;
+    }
+
+    /**
+     * A method to delete a song and all of its hashes from the DB.
+     *
+     * @param songId the ID of the song
+     */
+    public static void deleteSong(int songId) {
+        Connection connection = null;
+        Statement st = null;
+        try {
+            // connect to database
+            Class.forName(DBConnection.DRIVER);
+            connection = DriverManager.getConnection(DBConnection.URL, DBConnection.USER, DBConnection.PASS);
+
+            // create a statement
+            st = connection.createStatement();
+
+            // the hashes are deleted by the foreign key
+            st.executeUpdate("DELETE FROM SONGS WHERE ID_SONG = " + songId + ";");
+            logger.log(Level.INFO, "Deleted song " + songId + " from DB");
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Exception thrown while deleting song " + songId + " " + e);
+        } finally {
+            try { st.close(); } catch (Exception e) { /* ignored */ }
+            try { connection.close(); } catch (Exception e) { /* ignored */ }
+        }
+    }
+
+    /**
+     * This method matches the hashes generated from mic or stream input to
+     * the ones in the DB. It calculates minimum matches required based ot
+     * the hash size and whether or not it is mic input (more tolerable when mic).
+     *
+     * The matching is done in two stages. First, only the hashes anchored in the
+     * middle frequencies (the most robust ones, and a fraction of all hashes) are
+     * looked up to get a shortlist of candidate songs and roughly where in each of
+     * them the input is. Then all of the hashes are looked up, but only against the
+     * candidates and only around that position, and the hits are aligned by time.
+     * This way the expensive part does not grow with the size of the catalogue.
+     *
+     * The result holds the best RESULTS candidates, each with a confidence, its hit counts
+     * and where in the song the input is. The titles come with the stage 2 hits, so no
+     * extra queries are needed for them.
+     *
+     * @param fingerprint the hashes to be matched and their anchor times
+     * @param isMic whether the input is from mic or not
+     * @return the match result - a match if the best candidate has enough aligned hashes
+     * @throws InterruptedException if the thread is interrupted while waiting for a free lookup
+     */
+    public static MatchResult lookForMatches(Fingerprint fingerprint, boolean isMic) throws InterruptedException {
+        return lookForMatches(fingerprint, isMic, new MatchResult());
+    }
+
+    /**
+     * Same as lookForMatches(fingerprint, isMic), but fills in a given result.
+     * Used when the result already holds the timings of the decoding steps.
+     *
+     * @param fingerprint the hashes to be matched and their anchor times
+     * @param isMic whether the input is from mic or not
+     * @param result the result to add the candidates and the lookup timings to
+     * @return the result
+     * @throws InterruptedException if the thread is interrupted while waiting for a free lookup
+     */
+    public static MatchResult lookForMatches(Fingerprint fingerprint, boolean isMic, MatchResult result)
+            throws InterruptedException {
+
+        // calculate the minimum matches required based on hash size, and whether its mic or not
+        int minimumMatches = getMinimumMatches(fingerprint.size(), isMic);
+        logger.log(Level.FINE, "Minimum matches required: " + minimumMatches);
+
+        Connection connection = null;
+        Statement st = null;
+
+        // wait for a free lookup (bounds the connections in use - see LOOKUPS)
+        LOOKUPS.acquire();
+        try {
+            // connect to database
+            Class.forName(DBConnection.DRIVER);
+            connection = DriverManager.getConnection(DBConnection.URL, DBConnection.USER, DBConnection.PASS);
+
+            // create a statement
+            st = connection.createStatement();
+
+            // Stage 1: shortlist candidates using the hashes from the middle frequencies only
+            Fingerprint coarse = getStageOneHashes(fingerprint, 0);
+
+            long start = System.currentTimeMillis();
+            OffsetHistogram coarseHistogram = new OffsetHistogram();
+            fetchHits(st, coarse, "", coarseHistogram, null);
+            int[] candidates = getShortlist(coarseHistogram);
+            result.addTiming("stage 1", System.currentTimeMillis() - start);
+
+            logger.log(Level.INFO, "Stage 1: looked up " + coarse.size() + " of " + fingerprint.size() +
+                    " hashes, " + candidates.length + " candidate(s)");
+
+            if(candidates.length > 0) {
+                // Stage 2: look up all hashes, but only against the candidates
+                // and only around where the input is in each of them
+                start = System.currentTimeMillis();
+                OffsetHistogram histogram = new OffsetHistogram();
+                HashMap<Integer, String> titles = new HashMap<>();
+                fetchHits(st, fingerprint, getCandidatesCondition(fingerprint, candidates, coarseHistogram),
+                        histogram, titles);
+
+                // rank the candidates
+                rankCandidates(histogram, titles, minimumMatches, result);
+                result.addTiming("stage 2", System.currentTimeMillis() - start);
+
+                MatchResult.Candidate best = result.getBest();
+                if(best != null) {
+                    logger.log(Level.INFO, "Stage 2: best candidate " + best.getTitle() + " with " +
+                            best.getScore() + " aligned hashes (" + best.getHits() + " hits)");
+                }
+            }
+
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Exception thrown while trying to find matches " + e );
+        } finally {
+            try { st.close(); } catch (Exception e) { /* ignored */ }
+            try { connection.close(); } catch (Exception e) { /* ignored */ }
+            LOOKUPS.release();
+        }
+        return result;
+    }
+
+    /**
+     * A method to get the hashes of an input which are used for the shortlist of
+     * candidates (stage 1 of lookForMatches) - the ones anchored in the middle frequencies,
+     * or all of them while there are too few of those (e.g. a very short input).
+     *
+     * @param fingerprint the hashes of the input
+     * @param before the hashes of the same input which were used for the shortlist before
+     *               (when they come a few at a time, see MatchSession), 0 if none
+     * @return the hashes for the shortlist
+     */
+    public static Fingerprint getStageOneHashes(Fingerprint fingerprint, int before) {
+        Fingerprint coarse = fingerprint.subset(STAGE_ONE_FLOOR, STAGE_ONE_CEIL);
+        return before + coarse.size() < STAGE_ONE_MIN_HASHES ? fingerprint : coarse;
+    }
+
+    /**
+     * @param coarse the hits of the hashes for the shortlist (see getStageOneHashes)
+     * @return the shortlist - the ids of the best CANDIDATES songs, best first
+     */
+    public static int[] getShortlist(OffsetHistogram coarse) {
+        return coarse.getTopSongs(CANDIDATES);
+    }
+
+    /**
+     * A method to look up hashes in the DB and keep the hits of each hash - the song and
+     * the time of the hash in the song. It is used when the hashes of an input come a few
+     * at a time (see MatchSession): the hits are kept by hash, so a hash does not have to be
+     * looked up again when its time in the input changes or when it is counted again.
+     *
+     * @param hashes the hashes to look up (each one once)
+     * @param songs the ids of the songs to look in, or null for the whole DB
+     * @param hits the hits of each hash which was looked up are put in it as {song id, time}
+     *             (an empty list if it had none; nothing if its query failed)
+     * @param titles if not null, the titles of the songs which had hits are put in it
+     * @throws InterruptedException if the thread is interrupted while waiting for a free lookup
+     */
+    public static void lookUpHits(Collection<Long> hashes, int[] songs, HashMap<Long, ArrayList<int[]>> hits,
+                                  HashMap<Integer, String> titles) throws InterruptedException {
+        if(hashes.isEmpty()) return;
+
+        // no songs to look in - no hits
+        if(songs != null && songs.length == 0) {
+            for(long hash : hashes) {
+                hits.put(hash, new ArrayList<>());
+            }
+            return;
+        }
+
+        // the songs to look in
+        StringBuilder condition = new StringBuilder();
+        if(songs != null) {
+            condition.append(" AND SONG_ID IN (");
+            for(int i = 0; i < songs.length; i ++) {
+                if(i > 0) condition.append(',');
+                condition.append(songs[i]);
+            }
+            condition.append(")");
+        }
+
+        Connection connection = null;
+        Statement st = null;
+
+        // wait for a free lookup (bounds the connections in use - see LOOKUPS)
+        LOOKUPS.acquire();
+        try {
+            // connect to database
+            Class.forName(DBConnection.DRIVER);
+            connection = DriverManager.getConnection(DBConnection.URL, DBConnection.USER, DBConnection.PASS);
+
+            // create a statement
+            st = connection.createStatement();
+
+            Long[] unique = hashes.toArray(new Long[0]);
+            for(int i = 0; i < unique.length; i += BATCH_SIZE) {
+                // the hits of the batch (kept only if its query succeeds)
+                HashMap<Long, ArrayList<int[]>> batch = new HashMap<>();
+                StringBuilder in = new StringBuilder();
+                for(int j = i; j < unique.length && j < i + BATCH_SIZE; j ++) {
+                    if(j > i) in.append(',');
+                    in.append(unique[j]);
+                    batch.put(unique[j], new ArrayList<>());
+                }
+
+                ResultSet set = null;
+                try {
+                    if(titles == null) {
+                        set = st.executeQuery("SELECT HASH_, SONG_ID, TIME_ FROM HASHES WHERE HASH_ IN (" + in +
+                                ")" + condition + ";");
+                    } else {
+                        set = st.executeQuery("SELECT HASH_, SONG_ID, TIME_, TITLE FROM HASHES JOIN SONGS " +
+                                "ON ID_SONG = SONG_ID WHERE HASH_ IN (" + in + ")" + condition + ";");
+                    }
+                    while (set.next()) {
+                        int songId = set.getInt(2);
+                        if(titles != null) titles.putIfAbsent(songId, set.getString(4));
+                        batch.get(set.getLong(1)).add(new int[] {songId, set.getInt(3)});
+                    }
+                } finally {
+                    try { set.close(); } catch (Exception e) { /* ignored */ }
+                }
+                hits.putAll(batch);
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Exception thrown while trying to look up hashes " + e);
+        } finally {
+            try { st.close(); } catch (Exception e) { /* ignored */ }
+            try { connection.close(); } catch (Exception e) { /* ignored */ }
+            LOOKUPS.release();
+        }
+    }
+
+    /**
+     * A method to calculate the minimum number of aligned hashes needed for a match,
+     * based on the number of hashes of the input and whether it is from the mic or not
+     * (more tolerable when mic).
+     *
+     * @param hashCount the number of hashes of the input
+     * @param isMic whether the input is from mic or not
+     * @return the minimum number of aligned hashes
+     */
+    public static int getMinimumMatches(int hashCount, boolean isMic) {
+        int toleranceFactor = 18;
+        if(isMic) toleranceFactor = 30;
+        int hashesPerZone = MyTargetZone.ZONE_SIZE/MyTargetZone.NUM_POINTS;
+        int numKeyPoints = hashCount / hashesPerZone;
+        int minimumMatches = numKeyPoints/(MyTargetZone.NUM_POINTS * toleranceFactor);
+        if(!isMic && minimumMatches < 5) minimumMatches = 5;
+        if(isMic && minimumMatches < 3) minimumMatches = 3;
+        if(minimumMatches > 20) minimumMatches = 20;
+        if(isMic && minimumMatches > 10) minimumMatches = 10;
+        return minimumMatches;
+    }
+
+    /**
+     * A method to add the best RESULTS songs of a histogram to a match result, each
+     * with a confidence - how much better its score is than the score of the others.
+     * The result is a match if the best one has at least minimumMatches aligned hashes.
+     *
+     * @param histogram the hits of the input
+     * @param titles the titles of the songs in the histogram
+     * @param minimumMatches the minimum number of aligned hashes for a match
+     * @param result the result to add the candidates to
+     */
+    public static void rankCandidates(OffsetHistogram histogram, HashMap<Integer, String> titles, int minimumMatches,
+                                      MatchResult result) {
+        int[] ranked = histogram.getTopSongs(RESULTS);
+        for(int i = 0; i < ranked.length; i ++) {
+            int id = ranked[i];
+            int score = histogram.getScore(id);
+            // the best score among the other candidates
+            int runnerUp = 0;
+            if(ranked.length > 1) runnerUp = histogram.getScore(ranked[i == 0 ? 1 : 0]);
+            double confidence = Math.max(0.0, (double) (score - runnerUp) / (score + minimumMatches));
+            result.addCandidate(new MatchResult.Candidate(id, titles.get(id), score,
+                    histogram.getHits(id), confidence,
+                    histogram.getOffset(id) * MatchResult.WINDOW_DURATION));
+        }
+
+        MatchResult.Candidate best = result.getBest();
+        if(best != null) result.setMatch(best.getScore() >= minimumMatches);
+    }
+
+    /**
+     * A method to look up hashes in the DB and record every hit in a histogram
+     * of time offsets. The hashes are looked up in batches of BATCH_SIZE.
+     *
+     * @param st the statement to use
+     * @param fingerprint the hashes to look up
+     * @param condition an extra condition for the query (starting with AND) or an empty string
+     * @param histogram the histogram to record the hits in
+     * @param titles if not null, the titles of the songs which had hits are put in it
+     * @throws SQLException if a query fails
+     */
+    private static void fetchHits(Statement st, Fingerprint fingerprint, String condition,
+                                  OffsetHistogram histogram, HashMap<Integer, String> titles) throws SQLException {
+        long[] hashes = fingerprint.getHashes();
+        int[] times = fingerprint.getTimes();
+
+        // the same hash can occur more than once in the input - keep all of its times
+        HashMap<Long, ArrayList<Integer>> hashTimes = new HashMap<>();
+        for(int i = 0; i < hashes.length; i ++) {
+            hashTimes.computeIfAbsent(hashes[i], k -> new ArrayList<>()).add(times[i]);
+        }
+
+        Long[] unique = hashTimes.keySet().toArray(new Long[0]);
+        for(int i = 0; i < unique.length; i += BATCH_SIZE) {
+            StringBuilder in = new StringBuilder();
+            for(int j = i; j < unique.length && j < i + BATCH_SIZE; j ++) {
+                if(j > i) in.append(',');
+                in.append(unique[j]);
+            }
+
+            ResultSet set = null;
+            try {
+                if(titles == null) {
+                    set = st.executeQuery("SELECT HASH_, SONG_ID, TIME_ FROM HASHES WHERE HASH_ IN (" + in + ")" +
+                            condition + ";");
+                } else {
+                    set = st.executeQuery("SELECT HASH_, SONG_ID, TIME_, TITLE FROM HASHES JOIN SONGS " +
+                            "ON ID_SONG = SONG_ID WHERE HASH_ IN (" + in + ")" + condition + ";");
+                }
+                while (set.next()) {
+                    int songId = set.getInt(2);
+                    int time = set.getInt(3);
+                    if(titles != null) titles.putIfAbsent(songId, set.getString(4));
+                    for(int queryTime : hashTimes.get(set.getLong(1))) {
+                        histogram.add(songId, time - queryTime);
+                    }
+                }
+            } finally {
+                try { set.close(); } catch (Exception e) { /* ignored */ }
+            }
+        }
+    }
+
+    /**
+     * A method to build the query condition for the second stage of matching.
+     * It restricts the query to the candidate songs and, for the candidates which
+     * had their stage 1 hits aligned, to the part of the song where the input is.
+     *
+     * @param fingerprint the hashes of the input
+     * @param candidates the ids of the candidate songs
+     * @param coarse the histogram from stage 1
+     * @return the condition (starting with AND)
+     */
+    private static String getCandidatesCondition(Fingerprint fingerprint, int[] candidates, OffsetHistogram coarse) {
+        // the time span of the input
+        int minTime = Integer.MAX_VALUE;
+        int maxTime = Integer.MIN_VALUE;
+        for(int time : fingerprint.getTimes()) {
+            if(time < minTime) minTime = time;
+            if(time > maxTime) maxTime = time;
+        }
+
+        StringBuilder condition = new StringBuilder(" AND (");
+        for(int i = 0; i < candidates.length; i ++) {
+            if(i > 0) condition.append(" OR ");
+            int id = candidates[i];
+            if(coarse.getScore(id) > 1) {
+                int offset = coarse.getOffset(id);
+                condition.append("(SONG_ID = ").append(id)
+                         .append(" AND TIME_ BETWEEN ").append(offset + minTime - WINDOW_MARGIN)
+                         .append(" AND ").append(offset + maxTime + WINDOW_MARGIN).append(")");
+            } else {
+                // a single hit says nothing about the position - take the whole song
+                condition.append("SONG_ID = ").append(id);
+            }
+        }
+        condition.append(")");
+
+        return condition.toString();
+    }
+}
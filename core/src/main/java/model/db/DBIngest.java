@@ -0,0 +1,166 @@
+package model.db;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A class which takes care of the state of bulk ingestion in the DB - every
+ * file of a bulk ingest has a row in the INGEST_STATE table which is PENDING until
+ * its turn comes, IN_PROGRESS while it is being decoded and COMMITTED once it is in the
+ * DB. A song and its hashes are inserted in the same transaction as its COMMITTED state
+ * (see DBFingerprint.insertSongs), so after a crash the state says exactly which songs are
+ * in the DB - the ones which were IN_PROGRESS are simply done again. Files which cannot be
+ * decoded are FAILED and are not tried again.
+ *
+ * All of the methods are static and it is thread-safe.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+@SuppressWarnings("ConstantConditions")
+public class DBIngest {
+    // logger
+    private static final Logger logger = Logger.getLogger(DBIngest.class.getName());
+    // the states of a file
+    public static final String PENDING = "PENDING", IN_PROGRESS = "IN_PROGRESS", COMMITTED = "COMMITTED",
+                               FAILED = "FAILED";
+    // how many files are added with a single statement
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * A method to add files to the ingest as PENDING. Files which
+     * already have a state keep it.
+     *
+     * @param files the names of the files
+     */
+    public static void enqueue(List<String> files) {
+        if(files.isEmpty()) return;
+
+        Connection connection = null;
+        Statement st = null;
+        try {
+            // connect to database
+            Class.forName(DBConnection.DRIVER);
+            connection = DriverManager.getConnection(DBConnection.URL, DBConnection.USER, DBConnection.PASS);
+
+            // create a statement
+            st = connection.createStatement();
+
+            // many rows per statement
+            for(int from = 0; from < files.size(); from += BATCH_SIZE) {
+                StringBuilder query = new StringBuilder("INSERT IGNORE INTO INGEST_STATE (FILE_NAME, STATE) VALUES ");
+                for(int i = from; i < Math.min(from + BATCH_SIZE, files.size()); i ++) {
+                    if(i > from) query.append(',');
+                    query.append('(').append(DBUtils.quote(files.get(i))).append(",'").append(PENDING).append("')");
+                }
+                st.executeUpdate(query.append(';').toString());
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Exception thrown while adding files to the ingest " + e);
+        } finally {
+            try { st.close(); } catch (Exception e) { /* ignored */ }
+            try { connection.close(); } catch (Exception e) { /* ignored */ }
+        }
+    }
+
+    /**
+     * A method to get ready to resume an ingest which was interrupted (e.g. the app crashed).
+     * The files which were IN_PROGRESS are not in the DB, so they become PENDING again.
+     *
+     * @return the number of files which were IN_PROGRESS
+     */
+    public static int resume() {
+        int resumed = 0;
+
+        Connection connection = null;
+        Statement st = null;
+        try {
+            // connect to database
+            Class.forName(DBConnection.DRIVER);
+            connection = DriverManager.getConnection(DBConnection.URL, DBConnection.USER, DBConnection.PASS);
+
+            // create a statement
+            st = connection.createStatement();
+
+            resumed = st.executeUpdate("UPDATE INGEST_STATE SET STATE = '" + PENDING + "' WHERE STATE = '" +
+                    IN_PROGRESS + "';");
+            if(resumed > 0) logger.log(Level.INFO, "Resuming ingest - " + resumed + " interrupted file(s) to redo.");
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Exception thrown while resuming the ingest " + e);
+        } finally {
+            try { st.close(); } catch (Exception e) { /* ignored */ }
+            try { connection.close(); } catch (Exception e) { /* ignored */ }
+        }
+
+        return resumed;
+    }
+
+    /**
+     * A method to get all files in a given state.
+     *
+     * @param state the state
+     * @return the names of the files
+     */
+    public static List<String> getFiles(String state) {
+        List<String> result = new ArrayList<>();
+
+        Connection connection = null;
+        Statement st = null;
+        ResultSet rs = null;
+        try {
+            // connect to database
+            Class.forName(DBConnection.DRIVER);
+            connection = DriverManager.getConnection(DBConnection.URL, DBConnection.USER, DBConnection.PASS);
+
+            // create a statement
+            st = connection.createStatement();
+
+            rs = st.executeQuery("SELECT FILE_NAME FROM INGEST_STATE WHERE STATE = '" + state + "';");
+            while(rs.next()) {
+                result.add(rs.getString(1));
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Exception thrown while getting " + state + " files " + e);
+        } finally {
+            try { rs.close(); } catch (Exception e) { /* ignored */ }
+            try { st.close(); } catch (Exception e) { /* ignored */ }
+            try { connection.close(); } catch (Exception e) { /* ignored */ }
+        }
+
+        return result;
+    }
+
+    /**
+     * A method to set the state of a file. COMMITTED should only be set together
+     * with the insertion of the song (see DBFingerprint.insertSongs).
+     *
+     * @param file the name of the file
+     * @param state the new state
+     */
+    public static void setState(String file, String state) {
+        Connection connection = null;
+        Statement st = null;
+        try {
+            // connect to database
+            Class.forName(DBConnection.DRIVER);
+            connection = DriverManager.getConnection(DBConnection.URL, DBConnection.USER, DBConnection.PASS);
+
+            // create a statement
+            st = connection.createStatement();
+
+            st.executeUpdate("UPDATE INGEST_STATE SET STATE = " + DBUtils.quote(state) + " WHERE FILE_NAME = " +
+                    DBUtils.quote(file) + ";");
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Exception thrown while setting the state of " + file + " " + e);
+        } finally {
+            try { st.close(); } catch (Exception e) { /* ignored */ }
+            try { connection.close(); } catch (Exception e) { /* ignored */ }
+        }
+    }
+}
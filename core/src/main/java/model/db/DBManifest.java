@@ -0,0 +1,259 @@
+package model.db;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A class which takes care of the manifest of the music dir in the DB - the
+ * MANIFEST table has a row for every file with its size, modification time and the
+ * checksum of its content, and the ID of the song it was fingerprinted as (null if it
+ * is not in the DB yet). Files with the same content share the same song.
+ *
+ * All of the methods are static and it is thread-safe.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+@SuppressWarnings("ConstantConditions")
+public class DBManifest {
+    // logger
+    private static final Logger logger = Logger.getLogger(DBManifest.class.getName());
+    // how many rows are written with a single statement
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * A method to get the whole manifest.
+     *
+     * @return the entries by path
+     */
+    public static HashMap<String, Entry> getAll() {
+        HashMap<String, Entry> result = new HashMap<>();
+
+        Connection connection = null;
+        Statement st = null;
+        ResultSet rs = null;
+        try {
+            // connect to database
+            Class.forName(DBConnection.DRIVER);
+            connection = DriverManager.getConnection(DBConnection.URL, DBConnection.USER, DBConnection.PASS);
+
+            // create a statement
+            st = connection.createStatement();
+
+            rs = st.executeQuery("SELECT PATH, SIZE_, MTIME, CHECKSUM, SONG_ID FROM MANIFEST;");
+            while(rs.next()) {
+                int songId = rs.getInt(5);
+                Entry entry = new Entry(rs.getString(1), rs.getLong(2), rs.getLong(3), rs.getString(4),
+                        rs.wasNull() ? null : songId);
+                result.put(entry.getPath(), entry);
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Exception thrown while getting the manifest " + e);
+        } finally {
+            try { rs.close(); } catch (Exception e) { /* ignored */ }
+            try { st.close(); } catch (Exception e) { /* ignored */ }
+            try { connection.close(); } catch (Exception e) { /* ignored */ }
+        }
+
+        return result;
+    }
+
+    /**
+     * A method to get the entry of a single file.
+     *
+     * @param path the name of the file in the music dir
+     * @return the entry, or null if the file is not in the manifest
+     */
+    public static Entry get(String path) {
+        Entry result = null;
+
+        Connection connection = null;
+        Statement st = null;
+        ResultSet rs = null;
+        try {
+            // connect to database
+            Class.forName(DBConnection.DRIVER);
+            connection = DriverManager.getConnection(DBConnection.URL, DBConnection.USER, DBConnection.PASS);
+
+            // create a statement
+            st = connection.createStatement();
+
+            rs = st.executeQuery("SELECT PATH, SIZE_, MTIME, CHECKSUM, SONG_ID FROM MANIFEST WHERE PATH = " +
+                    DBUtils.quote(path) + ";");
+            while(rs.next()) {
+                int songId = rs.getInt(5);
+                result = new Entry(rs.getString(1), rs.getLong(2), rs.getLong(3), rs.getString(4),
+                        rs.wasNull() ? null : songId);
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Exception thrown while getting " + path + " from the manifest " + e);
+        } finally {
+            try { rs.close(); } catch (Exception e) { /* ignored */ }
+            try { st.close(); } catch (Exception e) { /* ignored */ }
+            try { connection.close(); } catch (Exception e) { /* ignored */ }
+        }
+
+        return result;
+    }
+
+    /**
+     * A method to add entries to the manifest or replace the ones with the same path.
+     *
+     * @param entries the entries
+     */
+    public static void saveAll(List<Entry> entries) {
+        if(entries.isEmpty()) return;
+
+        Connection connection = null;
+        Statement st = null;
+        try {
+            // connect to database
+            Class.forName(DBConnection.DRIVER);
+            connection = DriverManager.getConnection(DBConnection.URL, DBConnection.USER, DBConnection.PASS);
+
+            // create a statement
+            st = connection.createStatement();
+
+            // many rows per statement
+            for(int from = 0; from < entries.size(); from += BATCH_SIZE) {
+                StringBuilder query = new StringBuilder("REPLACE INTO MANIFEST (PATH, SIZE_, MTIME, CHECKSUM, SONG_ID) " +
+                        "VALUES ");
+                for(int i = from; i < Math.min(from + BATCH_SIZE, entries.size()); i ++) {
+                    Entry entry = entries.get(i);
+                    if(i > from) query.append(',');
+                    query.append('(').append(DBUtils.quote(entry.getPath())).append(',').append(entry.getSize())
+                            .append(',').append(entry.getModified()).append(',')
+                            .append(DBUtils.quote(entry.getChecksum())).append(',').append(entry.getSongId())
+                            .append(')');
+                }
+                st.executeUpdate(query.append(';').toString());
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Exception thrown while saving the manifest " + e);
+        } finally {
+            try { st.close(); } catch (Exception e) { /* ignored */ }
+            try { connection.close(); } catch (Exception e) { /* ignored */ }
+        }
+    }
+
+    /**
+     * A method to remove the entries of files which are not in the music dir any more.
+     * Their songs stay in the DB.
+     *
+     * @param paths the paths of the files
+     */
+    public static void removeAll(List<String> paths) {
+        if(paths.isEmpty()) return;
+
+        Connection connection = null;
+        Statement st = null;
+        try {
+            // connect to database
+            Class.forName(DBConnection.DRIVER);
+            connection = DriverManager.getConnection(DBConnection.URL, DBConnection.USER, DBConnection.PASS);
+
+            // create a statement
+            st = connection.createStatement();
+
+            for(int from = 0; from < paths.size(); from += BATCH_SIZE) {
+                StringBuilder query = new StringBuilder("DELETE FROM MANIFEST WHERE PATH IN (");
+                for(int i = from; i < Math.min(from + BATCH_SIZE, paths.size()); i ++) {
+                    if(i > from) query.append(',');
+                    query.append(DBUtils.quote(paths.get(i)));
+                }
+                st.executeUpdate(query.append(");").toString());
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Exception thrown while removing from the manifest " + e);
+        } finally {
+            try { st.close(); } catch (Exception e) { /* ignored */ }
+            try { connection.close(); } catch (Exception e) { /* ignored */ }
+        }
+    }
+
+    /**
+     * A method to link a song which was just inserted to its file and all other files
+     * with the same content. It should be called in the transaction which inserts the song.
+     *
+     * @param st a statement of the transaction
+     * @param path the file of the song
+     * @param songId the ID of the song
+     * @throws Exception if a query fails
+     */
+    static void linkSong(Statement st, String path, int songId) throws Exception {
+        ResultSet rs = st.executeQuery("SELECT CHECKSUM FROM MANIFEST WHERE PATH = " + DBUtils.quote(path) + ";");
+        String checksum = null;
+        while(rs.next()) {
+            checksum = rs.getString(1);
+        }
+        rs.close();
+
+        // not in the manifest (e.g. it was never scanned)
+        if(checksum == null) return;
+
+        st.executeUpdate("UPDATE MANIFEST SET SONG_ID = " + songId + " WHERE CHECKSUM = " + DBUtils.quote(checksum) + ";");
+    }
+
+    /**
+     * An entry of the manifest - a file in the music dir.
+     */
+    public static class Entry {
+        // the name of the file in the music dir
+        private String path;
+        // its size in bytes and its modification time (ms)
+        private long size, modified;
+        // the SHA-256 of its content (hex)
+        private String checksum;
+        // the ID of its song in the DB (null if it is not fingerprinted yet)
+        private Integer songId;
+
+        /**
+         * Constructor
+         *
+         * @param path the name of the file in the music dir
+         * @param size its size in bytes
+         * @param modified its modification time (ms)
+         * @param checksum the SHA-256 of its content (hex)
+         * @param songId the ID of its song in the DB (null if it is not fingerprinted yet)
+         */
+        public Entry(String path, long size, long modified, String checksum, Integer songId) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.checksum = checksum;
+            this.songId = songId;
+        }
+
+        /** Setters and Getters: */
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getModified() {
+            return modified;
+        }
+
+        public String getChecksum() {
+            return checksum;
+        }
+
+        public Integer getSongId() {
+            return songId;
+        }
+
+        public void setSongId(Integer songId) {
+            this.songId = songId;
+        }
+    }
+}
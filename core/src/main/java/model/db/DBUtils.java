@@ -0,0 +1,459 @@
+package model.db;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An utility class which contains utility-related methods for DB communication.
+ * It has only static methods and is therefore
+ * thread safe. More can be found in the comments of the methods.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+@SuppressWarnings("ConstantConditions")
+public class DBUtils {
+    // logger
+    private static final Logger logger = Logger.getLogger(DBUtils.class.getName());
+
+    /**
+     * A simple method to check if the parameters for authentication work.
+     * Tries to connect to the database using the static fields above.
+     *
+     * @return true if the connection was successful and false if it wasn't
+     */
+    public static boolean checkConnection() {
+        Connection connection = null;
+        try {
+            logger.log(Level.INFO, "Checking connection to database...");
+            Class.forName(DBConnection.DRIVER);
+            //noinspection unused
+            connection = DriverManager.getConnection(DBConnection.URL, DBConnection.USER, DBConnection.PASS);
+        } catch (Exception e) {
+            // throwing an exception would mean unsuccessful connection
+            logger.log(Level.SEVERE, "Unable to connect to database! Exiting...");
+            System.exit(-1);
+            return false;
+        } finally {
+            try { connection.close(); } catch (Exception e) { /* ignored */ }
+        }
+        logger.log(Level.INFO, "Connection OK!");
+        return true;
+    }
+
+    /**
+     * A method to create the database schema. This method will get executed
+     * if it is the first time running the app or if it has been dropped for some reason.
+     */
+    public static void initDB() {
+        logger.log(Level.INFO, "No schema found in database. Creating schema...");
+
+        Connection connection = null;
+        Statement st = null;
+
+        try {
+            // connect to the database
+            Class.forName(DBConnection.DRIVER);
+            connection = DriverManager.getConnection(DBConnection.URL, DBConnection.USER, DBConnection.PASS);
+
+            // create statement
+            st = connection.createStatement();
+
+            createSchema(st);
+
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Exception thrown while creating schema: \n" + e.toString());
+        } finally {
+            try { st.close(); } catch (Exception e) { /* ignored */ }
+            try { connection.close(); } catch (Exception e) { /* ignored */ }
+        }
+
+        logger.log(Level.INFO, "Successfully created schema!");
+    }
+
+    /**
+     * A method to bring a schema created by an older version of the app up to date.
+     * Older schemas have no TIME_ column in the HASHES table (the anchor time of each hash),
+     * which is needed to align the hashes when matching. Does nothing if the column exists.
+     *
+     * Note: the songs hashed before the upgrade all get time 0 and will not be matched
+     * reliably - they should be dropped and fingerprinted again.
+     *
+     * Older schemas have no INGEST_STATE and MANIFEST tables either - they are created if they are missing,
+     * and no index on the titles of the songs (used to look up the songs of a page of the catalogue).
+     */
+    public static void upgradeDB() {
+        Connection connection = null;
+        Statement st = null;
+
+        try {
+            // connect to the database
+            Class.forName(DBConnection.DRIVER);
+            connection = DriverManager.getConnection(DBConnection.URL, DBConnection.USER, DBConnection.PASS);
+
+            // create statement
+            st = connection.createStatement();
+
+            upgradeSchema(st);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Exception thrown while upgrading schema: \n" + e.toString());
+        } finally {
+            try { st.close(); } catch (Exception e) { /* ignored */ }
+            try { connection.close(); } catch (Exception e) { /* ignored */ }
+        }
+    }
+
+    /**
+     * A method to connect to the database and create the schema if it does not
+     * exist or bring it up to date if it does (see initDB and upgradeDB) - all over a
+     * single connection, so it is quicker to start the app with than checkConnection,
+     * existsDB and initDB/upgradeDB one after the other.
+     *
+     * @return true if the connection was successful and the schema is ready, false if the
+     * connection failed or the schema could not be created or upgraded
+     */
+    public static boolean prepareDB() {
+        Connection connection = null;
+        Statement st = null;
+
+        try {
+            logger.log(Level.INFO, "Checking connection to database...");
+            Class.forName(DBConnection.DRIVER);
+            connection = DriverManager.getConnection(DBConnection.URL, DBConnection.USER, DBConnection.PASS);
+        } catch (Exception e) {
+            // throwing an exception would mean unsuccessful connection
+            logger.log(Level.SEVERE, "Unable to connect to database!");
+            return false;
+        }
+        logger.log(Level.INFO, "Connection OK!");
+
+        try {
+            // create statement
+            st = connection.createStatement();
+
+            if(schemaExists(st)) {
+                upgradeSchema(st);
+            } else {
+                logger.log(Level.INFO, "No schema found in database. Creating schema...");
+                createSchema(st);
+                logger.log(Level.INFO, "Successfully created schema!");
+            }
+        } catch (Exception e) {
+            // the schema is missing or half-created - nothing can be matched or stored
+            logger.log(Level.SEVERE, "Exception thrown while preparing schema: \n" + e.toString());
+            return false;
+        } finally {
+            try { st.close(); } catch (Exception e) { /* ignored */ }
+            try { connection.close(); } catch (Exception e) { /* ignored */ }
+        }
+        return true;
+    }
+
+    /**
+     * A method to check if the database schema has been created.
+     *
+     * @param st a statement
+     * @return true if the schema has been created and false if it hasn't
+     */
+    private static boolean schemaExists(Statement st) {
+        // dummy query which throws an exception if the table is missing
+        try {
+            st.execute("SELECT 1 FROM SONGS LIMIT 1;");
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * A method to create the database schema (see initDB).
+     *
+     * @param st a statement
+     * @throws SQLException if the schema cannot be created
+     */
+    private static void createSchema(Statement st) throws SQLException {
+        st.executeUpdate("CREATE TABLE SONGS (ID_SONG INT(11) NOT NULL " +
+                "AUTO_INCREMENT,TITLE VARCHAR(60) NOT NULL, PRIMARY KEY (ID_SONG), INDEX `Title` (`TITLE`));");
+        st.executeUpdate("CREATE TABLE HASHES (HASH_ BIGINT NOT NULL, " +
+                "SONG_ID INT(11) NOT NULL, TIME_ INT(11) NOT NULL DEFAULT 0);");
+        st.executeUpdate("ALTER TABLE HASHES ADD CONSTRAINT VALID FOREIGN KEY (SONG_ID) " +
+                "REFERENCES SONGS (ID_SONG) ON DELETE CASCADE ON UPDATE CASCADE; ");
+        // the index covers the song and time as well so matching never has to read the table itself
+        st.executeUpdate("ALTER TABLE HASHES ADD INDEX `Hash` USING BTREE (`HASH_`, `SONG_ID`, `TIME_`) VISIBLE;");
+        createIngestTables(st);
+    }
+
+    /**
+     * A method to bring the database schema up to date (see upgradeDB).
+     *
+     * @param st a statement
+     * @throws SQLException if the schema cannot be upgraded
+     */
+    private static void upgradeSchema(Statement st) throws SQLException {
+        createIngestTables(st);
+        createTitleIndex(st);
+
+        // dummy query to check if the column exists
+        try {
+            st.execute("SELECT TIME_ FROM HASHES LIMIT 1;");
+            return;
+        } catch (SQLException e) {
+            // throwing an exception means the column is missing
+            logger.log(Level.INFO, "Outdated schema found in database. Upgrading schema...");
+        }
+
+        st.executeUpdate("ALTER TABLE HASHES ADD COLUMN TIME_ INT(11) NOT NULL DEFAULT 0;");
+        st.executeUpdate("ALTER TABLE HASHES DROP INDEX `Hash`, " +
+                "ADD INDEX `Hash` USING BTREE (`HASH_`, `SONG_ID`, `TIME_`) VISIBLE;");
+
+        logger.log(Level.WARNING, "Upgraded schema! Songs fingerprinted before the upgrade have to " +
+                "be fingerprinted again to be recognized.");
+    }
+
+    /**
+     * A method to create the tables which hold the state of each file of a bulk ingest
+     * (see DBIngest) and the manifest of the music dir (see DBManifest) if they do not exist.
+     *
+     * @param st a statement
+     * @throws SQLException if the tables cannot be created
+     */
+    private static void createIngestTables(Statement st) throws SQLException {
+        st.executeUpdate("CREATE TABLE IF NOT EXISTS INGEST_STATE (FILE_NAME VARCHAR(255) NOT NULL, " +
+                "STATE VARCHAR(12) NOT NULL, UPDATED TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP " +
+                "ON UPDATE CURRENT_TIMESTAMP, PRIMARY KEY (FILE_NAME), INDEX `State` (`STATE`));");
+        st.executeUpdate("CREATE TABLE IF NOT EXISTS MANIFEST (PATH VARCHAR(255) NOT NULL, SIZE_ BIGINT NOT NULL, " +
+                "MTIME BIGINT NOT NULL, CHECKSUM CHAR(64) NOT NULL, SONG_ID INT(11) NULL, PRIMARY KEY (PATH), " +
+                "INDEX `Checksum` (`CHECKSUM`));");
+    }
+
+    /**
+     * A method to add the index on the titles of the songs if it does not exist.
+     *
+     * @param st a statement
+     * @throws SQLException if the index cannot be added
+     */
+    private static void createTitleIndex(Statement st) throws SQLException {
+        boolean exists;
+        try (ResultSet set = st.executeQuery("SHOW INDEX FROM SONGS WHERE Key_name = 'Title';")) {
+            exists = set.next();
+        }
+        if(!exists) st.executeUpdate("ALTER TABLE SONGS ADD INDEX `Title` (`TITLE`);");
+    }
+
+    /**
+     * A method that returns the IDs of all songs in the DB by
+     * their file name (title + .wav).
+     *
+     * @return the IDs of the songs
+     */
+    public static HashMap<String, Integer> getSongIds() {
+        HashMap<String, Integer> result = new HashMap<>();
+
+        Connection connection = null;
+        Statement st = null;
+        ResultSet rs = null;
+
+        try {
+            // connect to database
+            Class.forName(DBConnection.DRIVER);
+            connection = DriverManager.getConnection(DBConnection.URL, DBConnection.USER, DBConnection.PASS);
+
+            //init statement
+            st = connection.createStatement();
+
+            rs = st.executeQuery("SELECT ID_SONG, TITLE FROM SONGS;");
+            while (rs.next()) {
+                result.put(rs.getString(2) + ".wav", rs.getInt(1));
+            }
+
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Exception thrown while getting the IDs of the songs " + e.toString());
+        } finally {
+            try { rs.close(); } catch (Exception e) { /* ignored */ }
+            try { st.close(); } catch (Exception e) { /* ignored */ }
+            try { connection.close(); } catch (Exception e) { /* ignored */ }
+        }
+
+        return result;
+    }
+
+    /**
+     * A method which checks if the database schema has been
+     * created. Uses a dummy query which would throw an exception if it hasn't
+     *
+     * @return true if the schema has been created and false if it hasn't
+     */
+    public static boolean existsDB() {
+
+        Connection connection = null;
+        Statement st = null;
+        ResultSet set = null;
+
+        try {
+            // connect to database
+            Class.forName(DBConnection.DRIVER);
+            connection = DriverManager.getConnection(DBConnection.URL, DBConnection.USER, DBConnection.PASS);
+
+            // dummy query to check if schema is created
+            st = connection.createStatement();
+            //noinspection unused
+            set = st.executeQuery("SELECT * FROM SONGS;");
+
+        } catch (Exception e) {
+            // throwing an exception means that the query cant find that table
+            // i.e the schema hasn't been created
+            return false;
+        } finally {
+            try { set.close(); } catch (Exception e) { /* ignored */ }
+            try { st.close(); } catch (Exception e) { /* ignored */ }
+            try { connection.close(); } catch (Exception e) { /* ignored */ }
+        }
+        return true;
+    }
+
+    /**
+     * A method that returns which of the given songs are in the DB. Only
+     * the given songs are looked up (e.g. the songs of one page of the catalogue).
+     *
+     * @param songs the songs (title + .wav)
+     * @return the songs which are in the DB
+     */
+    public static HashSet<String> getSongsInDB(Collection<String> songs) {
+        HashSet<String> result = new HashSet<>();
+        if(songs.isEmpty()) return result;
+
+        Connection connection = null;
+        Statement st = null;
+        ResultSet rs = null;
+
+        try {
+            // connect to database
+            Class.forName(DBConnection.DRIVER);
+            connection = DriverManager.getConnection(DBConnection.URL, DBConnection.USER, DBConnection.PASS);
+
+            //init statement
+            st = connection.createStatement();
+
+            // the titles of the songs
+            StringBuilder titles = new StringBuilder();
+            for(String song : songs) {
+                if(titles.length() > 0) titles.append(", ");
+                titles.append(quote(song.substring(0, song.length() - 4)));
+            }
+
+            rs = st.executeQuery("SELECT TITLE FROM SONGS WHERE TITLE IN (" + titles + ");");
+            while (rs.next()) {
+                // the comparison of the DB ignores case
+                String song = rs.getString(1) + ".wav";
+                if(songs.contains(song)) result.add(song);
+            }
+
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Exception thrown while looking up songs in DB " + e.toString());
+        } finally {
+            try { rs.close(); } catch (Exception e) { /* ignored */ }
+            try { st.close(); } catch (Exception e) { /* ignored */ }
+            try { connection.close(); } catch (Exception e) { /* ignored */ }
+        }
+
+        return result;
+    }
+
+    /**
+     * A method that returns the songs in the DB after a given song, in the order
+     * they were added (keyset pagination - it only reads the rows it returns, however
+     * far into the songs it is).
+     *
+     * @param afterId the ID of the song to start after (0 for the first songs)
+     * @param limit the maximum number of songs
+     * @return the songs (title + .wav) by ID, in order
+     */
+    public static LinkedHashMap<Integer, String> getSongsAfter(int afterId, int limit) {
+        LinkedHashMap<Integer, String> result = new LinkedHashMap<>();
+
+        Connection connection = null;
+        Statement st = null;
+        ResultSet rs = null;
+
+        try {
+            // connect to database
+            Class.forName(DBConnection.DRIVER);
+            connection = DriverManager.getConnection(DBConnection.URL, DBConnection.USER, DBConnection.PASS);
+
+            //init statement
+            st = connection.createStatement();
+
+            rs = st.executeQuery("SELECT ID_SONG, TITLE FROM SONGS WHERE ID_SONG > " + afterId +
+                    " ORDER BY ID_SONG LIMIT " + limit + ";");
+            while (rs.next()) {
+                result.put(rs.getInt(1), rs.getString(2) + ".wav");
+            }
+
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Exception thrown while getting songs from DB " + e.toString());
+        } finally {
+            try { rs.close(); } catch (Exception e) { /* ignored */ }
+            try { st.close(); } catch (Exception e) { /* ignored */ }
+            try { connection.close(); } catch (Exception e) { /* ignored */ }
+        }
+
+        return result;
+    }
+
+    /**
+     * A method to check if a given song is already hashed in the database.
+     *
+     * @param song the song to be checked
+     * @return true if the song is in the database and false if it isn't
+     */
+    @SuppressWarnings("unused")
+    public static boolean isSongInDB(String song) {
+        boolean result = true;
+
+        Connection connection = null;
+        Statement st = null;
+        ResultSet count = null;
+
+        try {
+            // connect to database
+            Class.forName(DBConnection.DRIVER);
+            connection = DriverManager.getConnection(DBConnection.URL, DBConnection.USER, DBConnection.PASS);
+
+            //init statement
+            st = connection.createStatement();
+
+            // check if there is a song with the same name in the DB
+            count = st.executeQuery("SELECT COUNT(*) FROM SONGS WHERE TITLE = " + quote(song) + ";");
+
+            while (count.next()) {
+                result = (count.getInt(1) == 1);
+            }
+
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Exception thrown while checking if " + song + " is in DB. \n" + e.toString());
+        } finally {
+            try { count.close(); } catch (Exception e) { /* ignored */ }
+            try { st.close(); } catch (Exception e) { /* ignored */ }
+            try { connection.close(); } catch (Exception e) { /* ignored */ }
+        }
+
+        return result;
+    }
+
+    /**
+     * @param value a string
+     * @return the string as a SQL literal (quotes and backslashes escaped)
+     */
+    static String quote(String value) {
+        return "'" + value.replace("\\", "\\\\").replace("'", "''") + "'";
+    }
+}
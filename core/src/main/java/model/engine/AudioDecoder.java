@@ -0,0 +1,515 @@
+package model.engine;
+
+import model.audio.AudioSource;
+import model.concurrent.ExecutionMode;
+import model.db.DBFingerprint;
+import model.engine.datastructures.Fingerprint;
+import model.engine.datastructures.KeyPoint;
+import model.engine.datastructures.MatchResult;
+import model.engine.datastructures.SpectrogramData;
+
+import javax.sound.sampled.*;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.function.DoubleConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class is responsible for decoding audio and extracting
+ * fingerprints and decoding audio and matching fingerprints.
+ * It is the main controller class which manages order of execution
+ * of the algorithms provided by the AudioUtils class. It has only static
+ * methods so it is a thread-safe class
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class AudioDecoder {
+    // logger
+    private final static Logger logger = Logger.getLogger(AudioDecoder.class.getName());
+
+    /**
+     * Takes a file (wav) and undergoes a series of conversions:
+     * low-pass filter for frequencies > 5000 hZ; down-sample to 11025 hZ;
+     * convert to mono; hamming window function with size 1024; fft. Finally
+     * it extracts a fingerprint and  populates a database if the file is not
+     * in the database already.
+     *
+     * @param songName the file to decode
+     * @param isInDB whether it is in the DB already or not
+     * @return FFT result for drawing spectrogram
+     */
+    public static double[][] decodeWav(String songName, boolean isInDB) {
+        return decodeWav(songName, isInDB, progress -> { });
+    }
+
+    /**
+     * Same as decodeWav(songName, isInDB), but reports its progress after each step.
+     * If the thread is interrupted before the hashes are inserted in the DB, nothing
+     * is inserted (the song is not half-fingerprinted).
+     *
+     * @param songName the file to decode
+     * @param isInDB whether it is in the DB already or not
+     * @param progress called with the progress (0 to 1) after each step
+     * @return FFT result for drawing spectrogram
+     */
+    public static double[][] decodeWav(String songName, boolean isInDB, DoubleConsumer progress) {
+        long start = System.currentTimeMillis(); // used for logging speed of algorithm
+
+        // Step 1: apply low pass filter to wav and convert to byte array
+
+        byte[] audioFiltered = readFiltered(songName);
+
+        progress.accept(0.3);
+
+        // Step 2: convert to mono, down-sample and apply FFT
+
+        double[][] FFTResults = spectrum(audioFiltered);
+
+        progress.accept(isInDB ? 1 : 0.6);
+
+        // The next part of the algorithm is executed only if the song is not already
+        // hashed in the database. That is when this algorithm is called for drawing the spectrogram only
+
+        if(!isInDB) { // The algorithm for populating DB with hashes
+
+            // Step 1: get the fingerprints from the FFT results
+
+            Fingerprint fingerprint = fingerprint(songName, FFTResults);
+
+            progress.accept(0.7);
+
+            // the decoding was cancelled - do not insert anything
+            if(Thread.currentThread().isInterrupted()) {
+                logger.log(Level.INFO, "Decoding " + songName + " cancelled.");
+                return FFTResults;
+            }
+
+            // Step 2: insert the song and its hashes in the DB (in one transaction)
+
+            DBFingerprint.insertSongs(new String[] {songName}, new Fingerprint[] {fingerprint});
+
+            progress.accept(1);
+        }
+
+        // log time taken
+        long end = System.currentTimeMillis();
+        logger.log(Level.INFO, "Time taken to decodeWav song (with hashing: " + !isInDB + "): " + songName + ": " + (end-start) + "ms");
+
+        // return double[][] for spectrogram visualization
+        return FFTResults;
+    }
+
+    /**
+     * The first step of decodeWav - it reads a song from the music dir
+     * and applies the low-pass filter to it. It is mostly I/O. The checksum of
+     * the file is taken while it is read and kept by the SpectrogramCache, so the
+     * cache never has to read the song again to find its spectrogram.
+     *
+     * @param songName the file to read
+     * @return the filtered raw audio (null if the song could not be read)
+     */
+    public static byte[] readFiltered(String songName) {
+        // get the song
+        File song = new File(AudioUtils.getMusicDir(), songName);
+        long size = song.length(), modified = song.lastModified();
+        MessageDigest digest = LibraryScanner.newDigest();
+
+        byte[] audioFiltered = null;
+        try (DigestInputStream file = new DigestInputStream(new FileInputStream(song), digest)) {
+            // Audio input stream automatically filters the header bytes
+            AudioInputStream ais = AudioUtils.lowPassFilterAIS(
+                    AudioSystem.getAudioInputStream(new BufferedInputStream(file)));
+
+            audioFiltered = ais.readAllBytes();
+
+            // the rest of the file (e.g. chunks after the audio) is part of the checksum too
+            file.transferTo(OutputStream.nullOutputStream());
+            SpectrogramCache.setChecksum(songName, size, modified, LibraryScanner.toHex(digest.digest()));
+
+            ais.close();
+        }
+        catch(Exception e) {
+            logger.log(Level.SEVERE, "Error streaming song " + song.getName() + " to byte array.");
+            logger.log(Level.SEVERE, e.getMessage());
+        }
+
+        return audioFiltered;
+    }
+
+    /**
+     * The second step of decodeWav - it converts the filtered audio
+     * to mono, down-samples it and applies FFT to it.
+     *
+     * @param audioFiltered the filtered raw audio of a song
+     * @return the FFT results
+     */
+    public static double[][] spectrum(byte[] audioFiltered) {
+        // Step 1 convert raw stereo to raw mono audio
+
+        byte[] audioMonoFiltered = AudioUtils.convertToMono(audioFiltered);
+
+        // Step 2: down sample audio file to 44.1/4 = 11 025 Hz
+
+        byte[] audioDownSampled = AudioUtils.downSample(audioMonoFiltered);
+
+        // Step 3: convert the byte[] raw audio to double[] raw audio
+
+        double[] finalAudio = AudioUtils.byteToDoubleArr(audioDownSampled);
+
+        // Step 4: apply FFT to the double[] to get the point data needed for a spectrogram
+
+        return AudioUtils.applyFFT(finalAudio);
+    }
+
+    /**
+     * The last step of decodeWav before the DB - it extracts the key points
+     * from the FFT results of a song and hashes them. If constellations are
+     * enabled the key points are written to the constellation file of the song,
+     * so it can be hashed again without being decoded (see Constellation). If it is
+     * enabled for ingests, the spectrogram is put in the SpectrogramCache, so it can be
+     * drawn without being decoded.
+     *
+     * @param songName the song (file in the music dir)
+     * @param FFTResults the FFT results of a song
+     * @return the fingerprint of the song
+     */
+    public static Fingerprint fingerprint(String songName, double[][] FFTResults) {
+        // Step 1: Extract only the key points from the FFT results
+
+        KeyPoint[][] keyPoints = AudioFingerprint.extractKeyPoints(FFTResults);
+
+        // Step 2: keep them for re-hashing and the spectrogram for drawing
+
+        if(Constellation.isEnabled()) Constellation.write(songName, keyPoints);
+        if(SpectrogramCache.isEnabledOnIngest()) SpectrogramCache.put(songName, FFTResults, keyPoints, false);
+
+        // Step 3: get the fingerprints from the song
+
+        return AudioFingerprint.hash(keyPoints, false);
+    }
+
+    /**
+     * A method to get the spectrogram of a song for drawing. It is taken from
+     * the SpectrogramCache if the song was decoded before (the spectrogram was drawn, or
+     * the song was fingerprinted with the cache enabled for ingests), otherwise the song is
+     * decoded (without hashing) and its spectrogram is put in the cache.
+     *
+     * @param songName the song (file in the music dir)
+     * @return the spectrogram and key points of the song (null if the song could not be read)
+     */
+    public static SpectrogramData decodeSpectrogram(String songName) {
+        long start = System.currentTimeMillis(); // used for logging speed of algorithm
+
+        // Step 1: look in the cache
+
+        SpectrogramData data = SpectrogramCache.get(songName);
+        if(data != null) return data;
+
+        // Step 2: decode the song - once it is read its checksum is known, so
+        // its spectrogram may be found on disk after all (without the FFT)
+
+        byte[] audioFiltered = readFiltered(songName);
+        if(audioFiltered == null) return null;
+        data = SpectrogramCache.get(songName);
+        if(data != null) return data;
+        double[][] FFTResults = spectrum(audioFiltered);
+        KeyPoint[][] keyPoints = AudioFingerprint.extractKeyPoints(FFTResults);
+
+        // Step 3: keep it for the next time
+
+        data = SpectrogramCache.put(songName, FFTResults, keyPoints, true);
+
+        // log time taken
+        long end = System.currentTimeMillis();
+        logger.log(Level.INFO, "Time taken to decode spectrogram of " + songName + ": " + (end-start) + "ms");
+
+        return data;
+    }
+
+    /**
+     * This method is the main matching method. It takes an input stream,
+     * which comes from a microphone or from a .wav file and undergoes a series of
+     * computations before finally querying the database for matches.
+     *
+     * @param in the input stream which is trying to be matched
+     * @param isMic whether the stream is coming from a mic or not
+     * @return the match result - the best candidates, whether there was a match and how
+     * long each step took
+     * @throws InterruptedException if the thread is interrupted while waiting for the DB
+     */
+    public static MatchResult decodeStreamAndMatch(AudioInputStream in, boolean isMic) throws InterruptedException {
+        long start = System.currentTimeMillis(); // used for logging speed of algorithm
+        long stepStart = start; // used for timing each step
+
+        // the result - it keeps the time taken by each step
+        MatchResult result = new MatchResult();
+
+        // an array to store the raw audio file
+        byte[] audio = null;
+
+        // Step 1 : apply low-pass filter to the stream and convert to byte array
+
+        try {
+            // Audio input stream automatically filters the header bytes
+            AudioInputStream ais = AudioUtils.lowPassFilterAIS(in);
+
+            audio = ais.readAllBytes();
+
+            ais.close();
+        }
+        catch(Exception e) {
+            logger.log(Level.SEVERE, "Error streaming input to byte array.");
+            logger.log(Level.SEVERE, e.getMessage());
+        }
+
+        result.addTiming("filter", System.currentTimeMillis() - stepStart);
+        stepStart = System.currentTimeMillis();
+
+        // Step 2 : convert to mono if its not from mic
+
+        byte[] audioMono = audio;
+
+        if(!isMic) {
+            // Convert stereo to mono
+            audioMono = AudioUtils.convertToMono(audio);
+        }
+
+        // Step 3 : down sample to 11025 Hz
+
+        byte[] decodedAudio = AudioUtils.downSample(audioMono);
+
+        // Step 4: convert the byte[] raw audio to double[] raw audio
+
+        double[] finalAudio = AudioUtils.byteToDoubleArr(decodedAudio);
+
+        result.addTiming("down-sample", System.currentTimeMillis() - stepStart);
+        stepStart = System.currentTimeMillis();
+
+        // Step 5: apply FFT to the double[] to get the point data needed for extracting key points
+        // (skipping the windows which are silence or noise)
+
+        boolean[] gated = new boolean[finalAudio.length / AudioUtils.WINDOW_SIZE];
+        double[][] FFTResults = AudioUtils.applyFFT(finalAudio, gated);
+        int skipped = 0;
+        for(int i = 0; i < FFTResults.length; i ++) {
+            if(gated[i]) skipped ++;
+        }
+        result.setSkippedWindows(skipped);
+
+        result.addTiming("fft", System.currentTimeMillis() - stepStart);
+        stepStart = System.currentTimeMillis();
+
+        // Step 6: extract key points from FFT result
+
+        KeyPoint[][] keyPoints = AudioFingerprint.extractKeyPoints(FFTResults);
+
+        // Step 7: Extract ALL possible hashes from the keypoints
+
+        Fingerprint fingerprint = AudioFingerprint.hash(keyPoints, true);
+
+        result.addTiming("hash", System.currentTimeMillis() - stepStart);
+        result.setDuration(FFTResults.length * MatchResult.WINDOW_DURATION);
+
+        // Step 8: look for matching fingerprints in DB.
+
+        DBFingerprint.lookForMatches(fingerprint, isMic, result);
+
+        // log time taken
+        long end = System.currentTimeMillis();
+        logger.log(Level.INFO, "Time taken to decode input stream: " + (end-start) + "ms " + result.getTimings() +
+                ", " + skipped + " of " + FFTResults.length + " windows skipped");
+
+        return result;
+    }
+
+    /**
+     * This method matches a stream in attempts of growing length - it decodes the
+     * first few seconds and looks for matches and only if there is no confident match
+     * it decodes more of the stream and looks again. The audio which is already decoded
+     * is not decoded again - the StreamDecoder keeps the FFT windows and hashes between
+     * attempts - and the hashes which are already looked up are not looked up again - the
+     * MatchSession keeps their hits (and a shortlist of candidates, like lookForMatches).
+     * An attempt before the last one is accepted only if the match is confident enough
+     * (MatchSession.CONFIDENCE), the last one is accepted if it is a match at all.
+     *
+     * @param in the source of the audio which is trying to be matched
+     * @param isMic whether the audio is coming from a mic or not
+     * @param attemptLengths the length of each attempt in seconds (in increasing order - Integer.MAX_VALUE
+     *                       reads to the end of the stream)
+     * @return the match result of the last attempt
+     * @throws InterruptedException if the thread is interrupted (e.g. the match is cancelled) - it is checked
+     *                              before each read, each lookup and each attempt
+     */
+    public static MatchResult decodeStreamAndMatchAdaptive(AudioSource in, boolean isMic, int[] attemptLengths)
+            throws InterruptedException {
+        long start = System.currentTimeMillis(); // used for logging speed of algorithm
+
+        AudioFormat format = in.getFormat();
+        StreamDecoder decoder = new StreamDecoder(format, true);
+        MatchSession session = new MatchSession(isMic);
+        int bytesPerSecond = (int) (format.getFrameRate() * format.getFrameSize());
+        byte[] buffer = new byte[bytesPerSecond];
+        long read = 0;
+        boolean ended = false;
+
+        MatchResult result = new MatchResult();
+
+        try {
+            in.start();
+            for(int attempt = 0; attempt < attemptLengths.length && !ended; attempt ++) {
+                checkInterrupted();
+                boolean last = attempt == attemptLengths.length - 1;
+                long before = read;
+
+                // Step 1: decode the stream up to the length of the attempt
+
+                long target = (long) attemptLengths[attempt] * bytesPerSecond;
+                while(read < target) {
+                    checkInterrupted();
+                    int n = in.read(buffer, 0, (int) Math.min(buffer.length, target - read));
+                    if(n == -1) {
+                        ended = true;
+                        break;
+                    }
+                    int length = n;
+                    ExecutionMode.onDspPool(() -> decoder.feed(buffer, 0, length));
+                    read += n;
+                }
+                if(ended || last) ExecutionMode.onDspPool(decoder::finish);
+
+                // the stream ended exactly where the last attempt did - nothing new to match
+                if(attempt > 0 && read == before) break;
+
+                // Step 2: look up the hashes which are new since the last attempt
+                // (the ones from the end of the audio so far may still change - the session keeps their hits by hash)
+
+                checkInterrupted();
+                session.submit(ExecutionMode.onDspPool(decoder::getNewHashes));
+                result = session.getResult(ExecutionMode.onDspPool(() -> decoder.getProvisionalHashes(0)),
+                        decoder.getWindowCount() * MatchResult.WINDOW_DURATION);
+
+                logger.log(Level.INFO, "Attempt with " + result.getDuration() + "s of the stream: " + result);
+
+                if(result.isMatch() && (last || ended || MatchSession.isConfident(result))) break;
+            }
+        }
+        catch(InterruptedIOException e) {
+            throw new InterruptedException(e.getMessage());
+        }
+        catch(IOException e) {
+            logger.log(Level.SEVERE, "Error reading input stream.");
+            logger.log(Level.SEVERE, e.getMessage());
+        }
+        finally {
+            in.close();
+        }
+
+        result.addTiming("decode", decoder.getDecodeTime());
+        result.addTiming("hash", decoder.getHashTime());
+        result.setSkippedWindows(decoder.getSkippedWindows());
+
+        // log time taken
+        long end = System.currentTimeMillis();
+        logger.log(Level.INFO, "Time taken to decode input stream adaptively: " + (end-start) + "ms " +
+                result.getTimings() + ", " + result.getSkippedWindows() + " windows skipped");
+
+        return result;
+    }
+
+    /**
+     * A method to stop decoding when the thread was interrupted - e.g. an extract whose
+     * file was already matched by another one (see FileRecognition.match) is cancelled.
+     *
+     * @throws InterruptedException if the thread is interrupted
+     */
+    private static void checkInterrupted() throws InterruptedException {
+        if(Thread.currentThread().isInterrupted()) throw new InterruptedException("Decoding was interrupted.");
+    }
+
+    /**
+     * This method decodes a whole stream (of any length) and returns its
+     * fingerprint without looking for matches. The stream is decoded a few seconds
+     * at a time so only the hashes are kept in memory. It is used for scanning
+     * long recordings - the fingerprint is computed once and any part of it can
+     * then be matched (see Fingerprint.range).
+     *
+     * @param in the source of the audio
+     * @return the fingerprint of the audio, sorted by time
+     */
+    public static Fingerprint decodeStreamFingerprint(AudioSource in) {
+        long start = System.currentTimeMillis(); // used for logging speed of algorithm
+
+        AudioFormat format = in.getFormat();
+        StreamDecoder decoder = new StreamDecoder(format, true);
+        byte[] buffer = new byte[(int) (format.getFrameRate() * format.getFrameSize()) * 10];
+
+        try {
+            in.start();
+            int n;
+            while((n = in.read(buffer, 0, buffer.length)) != -1) {
+                decoder.feed(buffer, 0, n);
+                decoder.update();
+            }
+        }
+        catch(IOException e) {
+            logger.log(Level.SEVERE, "Error reading input stream.");
+            logger.log(Level.SEVERE, e.getMessage());
+        }
+        finally {
+            in.close();
+        }
+
+        Fingerprint fingerprint = decoder.getFingerprint().sortByTime();
+
+        // log time taken
+        long end = System.currentTimeMillis();
+        logger.log(Level.INFO, "Time taken to fingerprint " + (int) decoder.getDuration() + "s of input: " +
+                (end-start) + "ms (decode: " + decoder.getDecodeTime() + "ms, hash: " + decoder.getHashTime() +
+                "ms, " + fingerprint.size() + " hashes, " + decoder.getSkippedWindows() + " of " +
+                decoder.getWindowCount() + " windows skipped)");
+
+        return fingerprint;
+    }
+
+    /**
+     * A method used to check the format of a file. It is used when
+     * the user wants to match using a file input stream
+     *
+     * @param input the file to check the format for
+     * @return true of format is OK and false uif not
+     */
+    public static boolean checkFormat(File input) {
+        logger.log(Level.INFO, "Checking format of file...");
+        try (AudioInputStream ais = AudioSystem.getAudioInputStream(input)) {
+            return ais.getFormat().toString().equals(getSupportedFormat().toString());
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Exception thrown while checking format " + e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * Defines the supported format of file input streams matching
+     *
+     * @return the format that is supported for matching
+     */
+    public static AudioFormat getSupportedFormat() {
+        AudioFormat.Encoding encoding = AudioFormat.Encoding.PCM_SIGNED;
+        int sampleRate = 44100;
+        int sampleSizeInBits = 16;
+        int channels = 2;
+        int frameSize = 4;
+        int frameRate = 44100;
+        return new AudioFormat(encoding, sampleRate, sampleSizeInBits, channels, frameSize,
+                frameRate, false);
+    }
+}
+
@@ -0,0 +1,236 @@
+package model.engine;
+
+import model.engine.datastructures.Fingerprint;
+import model.engine.datastructures.KeyPoint;
+import model.engine.datastructures.MyTargetZone;
+import model.engine.datastructures.TargetZone;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class implements the shazam-specific algorithms for extracting
+ * fingerprints from audio files. It contains static methods and it is
+ * thus thread-safe
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class AudioFingerprint {
+    // logger
+    private final static Logger logger = Logger.getLogger(AudioFingerprint.class.getName());
+    // the parameters of the 7 logarithmic frequency bands which key points are extracted from:
+    // the frequency bins; the size of the blocks of windows; the deviation and the constant factor
+    static final int BANDS = 7;
+    static final int[] BAND_FLOORS = {0, 10, 20, 40, 80, 160, 320};
+    static final int[] BAND_CEILS = {10, 20, 40, 80, 160, 320, 512};
+    static final int[] BAND_SIZES = {10, 12, 14, 16, 18, 18, 20};
+    private static final double[] DEVIATION_FACTORS = {1.25, 1.23, 1.25, 1.3, 1.3, 1.4, 1.49};
+    private static final double[] CONSTANT_FACTORS = {0.8, 0.75, 0.7, 0.7, 0.74, 0.7, 0.68};
+    // the number of windows searched for peaks by one thread at a time - a multiple of all
+    // band sizes (their lcm is 5040, ~8 minutes), so every chunk starts at the start of a block
+    private static final int PEAK_CHUNK = 5040;
+    // the number of target zones hashed by one thread at a time
+    private static final int HASH_CHUNK = 2048;
+
+    /**
+     * A method to extract the keypoints from a double[][].
+     * The input double[][] should be the result of a FFT.
+     * It looks for keypoints through logarithmic frequency bins. In a general sense,
+     * It is designed to pick out points which are strong in their vicinity. This is
+     * how shazam handles robust noise cancellation. The higher the bin the higher the
+     * vicinity it looks through.
+     *
+     * Each band is searched in chunks of PEAK_CHUNK windows in parallel (see AudioUtils.forEachChunk).
+     * The chunks start at the start of a block of every band and the blocks do not depend on each
+     * other, so the key points are exactly the same as when the whole result is searched at once.
+     *
+     * @param in the result of a FFT in the form of a double[][]
+     * @return a KeyPoint 2D array where the first  dimension is the frequency bin (0 - 7) and the second are the
+     * keypoints from the bin
+     */
+    public static KeyPoint[][] extractKeyPoints(double[][] in) {
+        logger.log(Level.INFO, "Begin extracting key points from FFT result...");
+
+        // extract keypoints from each chunk of each of the 7 logarithmic bins
+        int chunks = Math.max(1, (in.length + PEAK_CHUNK - 1) / PEAK_CHUNK);
+        List<List<KeyPoint>> parts = new ArrayList<>();
+        for(int i = 0; i < BANDS * chunks; i ++) parts.add(new ArrayList<>());
+        AudioUtils.forEachChunk(BANDS * chunks, i -> {
+            int band = i / chunks;
+            int from = (i % chunks) * PEAK_CHUNK;
+            findPeaks(in, from, Math.min(from + PEAK_CHUNK, in.length), band, 0, parts.get(i));
+        });
+
+        // join the chunks of each band in order
+        KeyPoint[][] out = new KeyPoint[BANDS][];
+        int total = 0;
+        for(int band = 0; band < BANDS; band ++) {
+            ArrayList<KeyPoint> result = new ArrayList<>();
+            for(int chunk = 0; chunk < chunks; chunk ++) {
+                result.addAll(parts.get(band * chunks + chunk));
+            }
+            out[band] = result.toArray(new KeyPoint[0]);
+            total += out[band].length;
+
+            logger.log(Level.INFO, "Found peaks in bin " + BAND_FLOORS[band] + " to " + BAND_CEILS[band] +
+                    " (" + result.size() + " total)");
+        }
+
+        logger.log(Level.INFO, "Done extracting keypoints from FFT result! (" + total + " total)");
+        return out;
+    }
+
+    /**
+     * This is the algorithm which decides which points will be kept as 'peak'
+     * and which should be discarded. It goes through the FFT result in blocks of
+     * BAND_SIZES[band] windows (the last block can be shorter) and keeps the points
+     * which are well above the average of their block.
+     *
+     * @param in the FFT result
+     * @param from the first window to look at - it should be the start of a block
+     * @param to the window to stop at (exclusive) - the last block ends there
+     * @param band the index of the logarithmic frequency band
+     * @param timeOffset added to the time of every key point (in is part of a longer FFT result)
+     * @param result the list to add the key points from the band to
+     */
+    static void findPeaks(double[][] in, int from, int to, int band, int timeOffset, List<KeyPoint> result) {
+        int binFloor = BAND_FLOORS[band];
+        int binCeil = BAND_CEILS[band];
+        int size = BAND_SIZES[band];
+        double DEVIATION_FACTOR = DEVIATION_FACTORS[band];
+        double CONSTANT_FACTOR = CONSTANT_FACTORS[band];
+        double sum = 0;
+        int count = 0;
+        double average;
+
+        if(to - from < size) size = to - from;
+
+        for(int i = from; i < to; i += size) {
+            if(i + size > to) {
+                size = to - i;
+            }
+
+            for(int j = binFloor; j < binCeil; j ++) {
+                for(int k = i; k < i + size; k ++) {
+                    if(in[k][j] > 0) {
+                        sum += in[k][j];
+                        count ++;
+                    }
+                }
+            }
+
+            average = sum / count * DEVIATION_FACTOR;
+            sum = 0;
+            count = 0;
+
+            for(int j = i; j < i + size; j ++) {
+                for(int k = binFloor; k < binCeil; k ++) {
+                    if(in[j][k] > average && in[j][k] > CONSTANT_FACTOR) {
+                        result.add(new KeyPoint(j + timeOffset, k));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * This method extracts fingerprints from a KeyPoint 2D array.
+     * the first dimension represents a frequency bin and the second
+     * the key points from it. It extracts them bin by bin so the recognition
+     * can be more robust. For example the microphone can't detect low frequencies
+     * and if there are hashes linked with them none will match the input.
+     *
+     * @param points the keypoints from the FFT result
+     * @param hashAll whether or not to generate hashes regardless of time. This is false when its
+     *                decoding a song and true when its decoding input for matching
+     * @return the fingerprints along with the anchor time of each of them
+     */
+    static Fingerprint hash(KeyPoint[][] points, boolean hashAll) {
+        // hash code parameters
+        int zoneSize = MyTargetZone.ZONE_SIZE;
+        int keyPtsLen = 0;
+
+        for(KeyPoint[] bin : points) {
+            keyPtsLen += bin.length;
+        }
+
+        logger.log(Level.INFO, "Begin hashing key points (" + keyPtsLen + " total)...");
+
+        int increment = 1;
+        if(!hashAll) increment += zoneSize;
+
+        // split the zones of each bin in chunks of HASH_CHUNK zones - the zones do not
+        // depend on each other, so the chunks are hashed in parallel and joined in order
+        ArrayList<int[]> chunks = new ArrayList<>(); // {bin, first zone, last zone (exclusive)}
+        for(int bin = 0; bin < points.length; bin ++) {
+            int zones = 0;
+            for(int i = 0; i < points[bin].length - (zoneSize + 1); i += increment) zones ++;
+            for(int from = 0; from < zones; from += HASH_CHUNK) {
+                chunks.add(new int[] {bin, from, Math.min(from + HASH_CHUNK, zones)});
+            }
+        }
+
+        int step = increment;
+        Fingerprint[] parts = new Fingerprint[chunks.size()];
+        AudioUtils.forEachChunk(chunks.size(), c -> {
+            int[] chunk = chunks.get(c);
+            parts[c] = hashZones(points[chunk[0]], chunk[1] * step, chunk[2] * step, step, hashAll);
+        });
+
+        // join the chunks
+        int size = 0;
+        for(Fingerprint part : parts) size += part.size();
+        long[] hashes = new long[size];
+        int[] times = new int[size];
+        int position = 0;
+        for(Fingerprint part : parts) {
+            System.arraycopy(part.getHashes(), 0, hashes, position, part.size());
+            System.arraycopy(part.getTimes(), 0, times, position, part.size());
+            position += part.size();
+        }
+
+        logger.log(Level.INFO, "Done hashing points into " + size + " hashes!");
+
+        return new Fingerprint(hashes, times);
+    }
+
+    /**
+     * A method to hash some of the target zones of a bin.
+     *
+     * @param bin the key points of the bin
+     * @param from the index of the anchor point of the first zone
+     * @param to the index to stop at (exclusive)
+     * @param increment the step between the anchor points of two zones
+     * @param hashAll see hash
+     * @return the hashes of the zones along with the anchor time of each of them
+     */
+    private static Fingerprint hashZones(KeyPoint[] bin, int from, int to, int increment, boolean hashAll) {
+        int zoneSize = MyTargetZone.ZONE_SIZE;
+        ArrayList<Long> resultList = new ArrayList<>();
+        ArrayList<Integer> timesList = new ArrayList<>();
+
+        for (int i = from; i < to; i += increment) {
+            KeyPoint[] zone;
+            if(!hashAll && bin.length - (zoneSize + 1) < i) {
+                i = bin.length - (zoneSize + 1);
+                zone = Arrays.copyOfRange(bin, i, bin.length);
+            } else {
+                zone = Arrays.copyOfRange(bin, i, zoneSize + 1 + i);
+            }
+            TargetZone tz = new MyTargetZone(zone);
+            ArrayList<Long> hashes = tz.getHashes();
+            resultList.addAll(hashes);
+            // all hashes of a zone share the time of its anchor point
+            for(int j = 0; j < hashes.size(); j ++) {
+                timesList.add(zone[0].getTime());
+            }
+        }
+
+        return new Fingerprint(resultList.stream().mapToLong(Long::longValue).toArray(),
+                timesList.stream().mapToInt(Integer::intValue).toArray());
+    }
+}
@@ -0,0 +1,501 @@
+package model.engine;
+
+import model.concurrent.ExecutionMode;
+import model.engine.fft.FFT;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+// libs for low-pass filter
+import biz.source_code.dsp.filter.FilterCharacteristicsType;
+import biz.source_code.dsp.filter.FilterPassType;
+import biz.source_code.dsp.filter.IirFilterCoefficients;
+import biz.source_code.dsp.filter.IirFilterDesignFisher;
+import biz.source_code.dsp.sound.IirFilterAudioInputStreamFisher;
+
+/**
+ * This class is the main engine class. It provides all algorithms required
+ * for audio manipulation. It is a thread-safe class because all of its methods are
+ * static.
+ *
+ * CAUTION: All of the methods are not very dynamic; that is, the order of which
+ * they are executed is important. The WavController class executes them in a proper order
+ * and thus produces best results. Please check for reference as some methods expect
+ * a very specific format for their input.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class AudioUtils {
+    // logger
+    private final static Logger logger = Logger.getLogger(AudioUtils.class.getName());
+    // FFT parameters
+    static final int WINDOW_SIZE = 1024;   // the FFT window size
+    static final double SAMPLE_RATE = 11025; // the sample rate after down-sampling
+    public static final double WINDOW_DURATION = WINDOW_SIZE / SAMPLE_RATE; // the duration of a window (s)
+    // low-pass filter parameters
+    private static final int FILTER_ORDER = 4;
+    private static final double FILTER_CUTOFF = 4000;
+    // gate parameters - windows quieter than SILENCE_RMS (16 bit amplitude, ~ -50 dBFS)
+    // or flatter (more noise-like) than MAX_FLATNESS are skipped when gating
+    private static final double SILENCE_RMS = 100;
+    private static final double MAX_FLATNESS = 0.5;
+    // the number of FFT windows transformed by one thread at a time (~48s)
+    private static final int FFT_CHUNK = 512;
+    // the dir of the songs - "music" in the working dir unless the music.dir property is set
+    private static volatile File musicDir = new File(System.getProperty("music.dir", "music"));
+
+    /**
+     * A method to apply a low-pass filter to a stream. The filter aims to remove all frequencies
+     * > 5 kHz. It uses the dps-collections library.
+     *
+     * TODO: there is some clipping from the filter
+     *
+     * @param ais the input audio stream
+     * @return An audio input stream which contains the song with a filter applied to it
+     */
+    static AudioInputStream lowPassFilterAIS(AudioInputStream ais) {
+        FilterPassType filterPassType = FilterPassType.lowpass;
+        FilterCharacteristicsType filterCharacteristicsType = FilterCharacteristicsType.butterworth;
+        int filterOrder = FILTER_ORDER;
+        double ripple = 0;
+        double fcf1 = FILTER_CUTOFF;
+        double fcf2 = 0;
+        logger.log(Level.INFO, "Applying low-pass filter to stream");
+        AudioInputStream result = IirFilterAudioInputStreamFisher.getAudioInputStream(ais, filterPassType,
+                filterCharacteristicsType, filterOrder, ripple, fcf1, fcf2);
+        logger.log(Level.INFO, "Successfully applied low-pass filter to stream!");
+        return result;
+    }
+
+    /**
+     * A method to get the coefficients of the same low-pass filter which
+     * lowPassFilterAIS applies. Used to filter audio which comes in chunks
+     * rather than as a stream.
+     *
+     * @param sampleRate the sample rate of the audio to be filtered
+     * @return the filter coefficients
+     */
+    static IirFilterCoefficients getLowPassCoefficients(double sampleRate) {
+        return IirFilterDesignFisher.design(FilterPassType.lowpass, FilterCharacteristicsType.butterworth,
+                FILTER_ORDER, 0, FILTER_CUTOFF / sampleRate, 0);
+    }
+
+    /**
+     * A method to convert a stereo byte[] to mono byte[]
+     * It uses the doubleBitWiseCompressionAlgorithm
+     *
+     * @param in the raw stereo audio
+     * @return the raw mono audio
+     */
+    static byte[] convertToMono(byte[] in) {
+        logger.log(Level.INFO, "Converting stereo to mono...");
+
+        byte[] result = doubleBitWiseCompression(in);
+
+        logger.log(Level.INFO, "Successfully converted to mono!");
+        return result;
+    }
+
+    /**
+     * A method to down-sample a 44.1 kHz byte[] to 11.025 kHz
+     * takes average of groups by 4. Loses some clarity but is good enough
+     * for task.
+     *
+     * @param original 44.1 kHz byte[]
+     * @return 11.025 kHz byte[]
+     */
+    static byte[] downSample(byte[] original) {
+        logger.log(Level.INFO, "Down-sampling...");
+
+        // compress once to down-sample to 22050 and again to down-sample to 11025
+        byte[] result = doubleBitWiseCompression(doubleBitWiseCompression(original));
+
+        logger.log(Level.INFO, "Down-sampled to 11025 kHz.");
+        return result;
+    }
+
+    /**
+     * This method implements an algorithm to compress a byte[]
+     * exactly by 2. It can used both for mono conversion or down-sampling
+     * Compression is done by taking the average of two bytes.
+     *
+     * @param in byte[] array to be compressed
+     * @return compressed byte[] (2x less size)
+     */
+    static byte[] doubleBitWiseCompression(byte[] in) {
+        byte[] out = new byte[(int) Math.ceil(in.length/2)];
+        for (int i = 0 ; i < out.length/2; ++i){
+            int left  = (in[i * 4 + 1]     << 8) | (in[i * 4]     & 0xff);
+            int right = (in[i * 4 + 2 + 1] << 8) | (in[i * 4 + 2] & 0xff);
+            int avg = (left + right) / 2;
+            out[i * 2 + 1] = (byte) ((avg >> 8) & 0xff);
+            out[i * 2]     = (byte)  (avg       & 0xff);
+        }
+        return out;
+    }
+
+    /**
+     * This method converts a byte[] input to a double[]
+     *
+     * @param in the byte[] to be processed
+     * @return a double[] representation of the input
+     */
+    static double[] byteToDoubleArr(byte[] in) {
+        logger.log(Level.INFO, "Converting byte[] to double[]...");
+
+        int new_length = in.length/2;
+        double[] out = new double[new_length];
+
+        for (int i = 0; 2*i+1 < in.length; i++){
+            out[i] = (short)((in[2*i+1] & 0xff) << 8) | (in[2*i] & 0xff);
+        }
+
+        logger.log(Level.INFO, "Successfully converted byte[] to double[]!");
+        return out;
+    }
+
+    /**
+     * A method to apply FFT to a double[] and return a double[][]
+     * containing point data required for drawing a spectrogram
+     *
+     * @param audio the input array
+     * @return the output point data
+     */
+    static double[][] applyFFT(double[] audio) {
+        return applyFFT(audio, null);
+    }
+
+    /**
+     * A method to apply FFT to a double[] and return a double[][]
+     * containing point data required for drawing a spectrogram. If gated is
+     * not null, windows which cannot produce useful key points (silence, noise)
+     * are skipped - see isSilent and isFlat. They are all 0 in the result (so no key
+     * points come from them) and are marked in gated. Silent windows are not FFT-ed at all.
+     *
+     * The windows are independent of each other, so they are split in chunks of FFT_CHUNK
+     * windows which are transformed in parallel (see forEachChunk - a long recording takes as many
+     * times less as there are processors). The minimum and maximum amplitudes of the chunks are merged in
+     * order (see FFTChunk), so the result is exactly the same as transforming them one by one.
+     *
+     * @param audio the input array
+     * @param gated null for no gating or an array for marking the skipped windows - it should
+     *              have a length of at least the number of windows
+     * @return the output point data
+     */
+    static double[][] applyFFT(double[] audio, boolean[] gated) {
+        int length = audio.length;
+
+        //initialize parameters for FFT
+        int WS = WINDOW_SIZE; //WS = window size
+        int OF = 1;    //OF = overlap factor
+        int windowStep = WS / OF;
+
+        //calculate FFT parameters
+        double SR = SAMPLE_RATE;
+        double time_resolution = WS / SR;
+        double frequency_bin = SR / WS;
+        double highest_detectable_frequency = SR / 2.0;
+        double lowest_detectable_frequency = 5.0 * SR / WS;
+
+        logger.log(Level.INFO, "time_resolution: " + time_resolution * 1000 + " ms \n frequency_bin: " +
+                   frequency_bin + " Hz \n highest_detectable_frequency: " + highest_detectable_frequency +
+                   " Hz \n lowest_detectable_frequency + " + lowest_detectable_frequency + " Hz");
+
+        //initialize results array
+        int nX = (length - WS) / windowStep;
+        int nY = WS / 2;
+        double[][] results = new double[nX][nY];
+
+        // split the windows in chunks
+        int chunks = (nX + FFT_CHUNK - 1) / FFT_CHUNK;
+        FFTChunk[] parts = new FFTChunk[chunks];
+
+        logger.log(Level.INFO, "Begin applying FFT (" + chunks + " chunks)...");
+        forEachChunk(chunks, c -> {
+            FFTChunk part = new FFTChunk();
+
+            // the imaginary part of the input is always 0
+            double[] inputImag = new double[WS];
+
+            for (int i = c * FFT_CHUNK; i < Math.min((c + 1) * FFT_CHUNK, nX); i++) {
+                if (gated != null && isSilent(audio, i * windowStep)) {
+                    gated[i] = true;
+                    continue;
+                }
+                results[i] = fftWindow(audio, i * windowStep, inputImag);
+                if (gated != null) gated[i] = isFlat(results[i]);
+                part.add(results[i]);
+            }
+            parts[c] = part;
+        });
+
+        //find MAX and MIN amplitude
+        double[] amps = {Double.MIN_VALUE, Double.MAX_VALUE};
+        for (FFTChunk part : parts) {
+            part.merge(amps);
+        }
+        double maxAmp = amps[0];
+        double minAmp = amps[1];
+
+        logger.log(Level.INFO, "FFT applied successfully! \n Maximum amplitude: " +
+                   maxAmp +" \n Minimum amplitude: " + minAmp + "\n x: " + results.length + "\n y: " +
+                   results[0].length);
+
+        //Normalization and the gated windows are all 0
+        forEachChunk(chunks, c -> {
+            int from = c * FFT_CHUNK;
+            int to = Math.min(from + FFT_CHUNK, nX);
+            normalize(results, from, to, minAmp, maxAmp);
+            if (gated != null) {
+                for (int i = from; i < to; i++) {
+                    if (gated[i]) results[i] = new double[nY];
+                }
+            }
+        });
+
+        return results;
+    }
+
+    /**
+     * A method to do the chunks of some work which do not depend on each other. They run in
+     * parallel (on the common pool), unless the current thread is one of a bounded pool (see
+     * ExecutionMode.isWorker) - then the pool already keeps the processors busy and the chunks
+     * run one by one, so the threads of the pool do not each spread over all the processors.
+     *
+     * @param chunks the number of chunks
+     * @param work the work on a chunk - it gets the index of the chunk
+     */
+    static void forEachChunk(int chunks, IntConsumer work) {
+        IntStream range = IntStream.range(0, chunks);
+        if(!ExecutionMode.isWorker()) range = range.parallel();
+        range.forEach(work);
+    }
+
+    /**
+     * The minimum and maximum amplitudes of a chunk of FFT windows. The amplitudes were
+     * always found with "if above the maximum, else if below the minimum", so an amplitude
+     * which is a new maximum is not checked against the minimum. To get exactly the same
+     * minimum when the chunks are merged in order, the amplitudes which were a new maximum
+     * within the chunk are kept - each of them is only a new maximum overall if it is above
+     * the maximum of the chunks before it, otherwise it is checked against the minimum.
+     */
+    private static class FFTChunk {
+        // the amplitudes which were a new maximum within the chunk (in order)
+        private ArrayList<Double> records = new ArrayList<>();
+        // the maximum and the minimum of the others
+        private double maxAmp = Double.MIN_VALUE;
+        private double minAmp = Double.MAX_VALUE;
+
+        /**
+         * @param window the amplitudes of the next window of the chunk
+         */
+        void add(double[] window) {
+            for (double amp : window) {
+                if (amp > maxAmp) {
+                    maxAmp = amp;
+                    records.add(amp);
+                } else if (amp < minAmp) {
+                    minAmp = amp;
+                }
+            }
+        }
+
+        /**
+         * @param amps the maximum and minimum of the chunks before this one - they are updated
+         */
+        void merge(double[] amps) {
+            for (double amp : records) {
+                if (amp > amps[0])
+                    amps[0] = amp;
+                else if (amp < amps[1])
+                    amps[1] = amp;
+            }
+            if (minAmp < amps[1]) amps[1] = minAmp;
+        }
+    }
+
+    /**
+     * A method to apply FFT to a single window of the audio. The result
+     * is the amplitude (in dB, not normalized) of each frequency bin.
+     *
+     * @param audio the input array
+     * @param from the index of the first sample of the window
+     * @param inputImag an array of WINDOW_SIZE zeros (the imaginary part of the input)
+     * @return the amplitudes of the WINDOW_SIZE/2 frequency bins
+     */
+    static double[] fftWindow(double[] audio, int from, double[] inputImag) {
+        int nY = WINDOW_SIZE / 2;
+        double threshold = 1.0;
+        double amp_square;
+        double[] result = new double[nY];
+
+        double[] WS_array = FFT.fft(Arrays.copyOfRange(audio, from, from + WINDOW_SIZE), inputImag, true);
+        for (int j = 0; j < nY; j++) {
+            assert WS_array != null;
+            amp_square = (WS_array[2 * j] * WS_array[2 * j]) + (WS_array[2 * j + 1] * WS_array[2 * j + 1]);
+            if (amp_square == 0.0) {
+                result[j] = amp_square;
+            } else {
+                result[j] = 10 * Math.log10(Math.max(amp_square, threshold));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * A method to check if a window of audio is (almost) silent - its RMS
+     * is below SILENCE_RMS. It is much cheaper than applying FFT to it.
+     *
+     * @param audio the input array
+     * @param from the index of the first sample of the window
+     * @return true if the window is silent
+     */
+    static boolean isSilent(double[] audio, int from) {
+        double sum = 0;
+        for (int i = from; i < from + WINDOW_SIZE; i++) {
+            sum += audio[i] * audio[i];
+        }
+        return Math.sqrt(sum / WINDOW_SIZE) < SILENCE_RMS;
+    }
+
+    /**
+     * A method to check if a window is noise-like - the spectral flatness
+     * (geometric mean / arithmetic mean of the power spectrum) is above MAX_FLATNESS.
+     * Tonal audio (music) has a few strong frequencies and a low flatness, white noise
+     * has a flatness of ~0.56.
+     *
+     * Only the frequencies below the cut-off of the low-pass filter are taken into account.
+     *
+     * @param amplitudes the result of fftWindow for the window (dB, not normalized)
+     * @return true if the window is flat
+     */
+    static boolean isFlat(double[] amplitudes) {
+        int bins = (int) (FILTER_CUTOFF / (SAMPLE_RATE / WINDOW_SIZE));
+        double logSum = 0;
+        double sum = 0;
+        for (int i = 0; i < bins; i++) {
+            logSum += amplitudes[i];
+            sum += Math.pow(10, amplitudes[i] / 10);
+        }
+        double geometricMean = Math.pow(10, logSum / bins / 10);
+        double arithmeticMean = sum / bins;
+        return geometricMean / arithmeticMean > MAX_FLATNESS;
+    }
+
+    /**
+     * A method to normalize FFT results between 0 and 1 (in place).
+     * Null windows are skipped.
+     *
+     * @param results the FFT results
+     * @param minAmp the minimum amplitude
+     * @param maxAmp the maximum amplitude
+     */
+    static void normalize(double[][] results, double minAmp, double maxAmp) {
+        normalize(results, 0, results.length, minAmp, maxAmp);
+    }
+
+    /**
+     * Same as normalize(results, minAmp, maxAmp) for some of the windows only.
+     *
+     * @param results the FFT results
+     * @param from the first window
+     * @param to the window to stop at (exclusive)
+     * @param minAmp the minimum amplitude
+     * @param maxAmp the maximum amplitude
+     */
+    static void normalize(double[][] results, int from, int to, double minAmp, double maxAmp) {
+        double diff = maxAmp - minAmp;
+        for (int i = from; i < to; i++) {
+            double[] window = results[i];
+            if (window == null) continue;
+            for (int j = 0; j < window.length; j++) {
+                window[j] = (window[j] - minAmp) / diff;
+            }
+        }
+    }
+
+    /**
+     * A method to write a byte[] to a .wav file. Used for testing purposes
+     * Double-check parameters for audio format. They are not determined
+     * dynamically. They need to be adjusted based on what byte[] you're passing.
+     *
+     * @param audio byte[] to be converted to wav
+     */
+    @SuppressWarnings("unused")
+    public static void writeWavToSystem(byte[] audio, String filename) {
+        ByteArrayInputStream b = new ByteArrayInputStream(audio);
+        AudioFormat.Encoding encoding = AudioFormat.Encoding.PCM_SIGNED;
+        int sampleRate = 11025;
+        int sampleSizeInBits = 16;
+        int channels = 1;
+        int frameSize = 2;
+        int frameRate = 11025;
+        AudioFormat audioFormat = new AudioFormat(encoding, sampleRate, sampleSizeInBits, channels, frameSize,
+                                                  frameRate, false);
+        AudioInputStream out = new AudioInputStream(b, audioFormat, audio.length);
+        try {
+            AudioSystem.write(out, AudioFileFormat.Type.WAVE, new File(filename + ".wav"));
+            logger.log(Level.INFO, AudioSystem.getAudioInputStream(new File(filename + ".wav")).getFormat().toString());
+        }
+        catch (Exception e){
+            logger.log(Level.SEVERE, "Error trying to write wav file to disk." + e.getMessage());
+        }
+    }
+
+    /**
+     * Scans for audio in {music dir}/*.wav
+     *
+     * @return a string array with all the audio' names;
+     */
+    public static String[] scanForSongs() {
+        File dir = musicDir;
+        File[] directoryListing = dir.listFiles();
+        ArrayList<String> songs = new ArrayList<>();
+
+        logger.log(Level.INFO, "Looking for audio in folder " + dir.getAbsolutePath());
+
+        assert directoryListing != null;
+        for(File file : directoryListing) {
+            if(file.getName().endsWith(".wav")) {
+                songs.add(file.getName());
+            }
+        }
+
+        logger.log(Level.INFO, "Done. Found " + songs.size() + " audio in "+ dir.getAbsolutePath());
+
+        if(songs.size() > 0) {
+            return songs.toArray(new String[0]);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * @return the dir of the songs
+     */
+    public static File getMusicDir() {
+        return musicDir;
+    }
+
+    /**
+     * A method to change the dir of the songs (e.g. the dir given to the command line).
+     * It should be called before any song is read.
+     *
+     * @param dir the dir of the songs
+     */
+    public static void setMusicDir(File dir) {
+        musicDir = dir;
+    }
+}
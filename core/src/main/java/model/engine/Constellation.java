@@ -0,0 +1,198 @@
+package model.engine;
+
+import model.engine.datastructures.Fingerprint;
+import model.engine.datastructures.KeyPoint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class stores the constellation of a song (its key points) in a sidecar
+ * file next to the music dir, so the song can be hashed again (e.g. after the
+ * parameters of MyTargetZone changed) without reading, filtering and applying FFT
+ * to it again - which is almost all of the time taken to fingerprint a song.
+ *
+ * The files are written while songs are fingerprinted only if the app is started with
+ * -Dconstellations=true. The format of a file (big-endian):
+ * - MAGIC (int) and VERSION (short);
+ * - the number of key points (int);
+ * - each key point packed in an int - time (19 bits), band (3 bits) and frequency bin (10 bits),
+ * ordered by band and then as they were extracted.
+ * A file of another version is ignored (the song has to be decoded again).
+ *
+ * It has only static methods so it is thread-safe.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class Constellation {
+    // statics:
+    private static final Logger logger;
+    private static final int MAGIC, HEADER_SIZE, TIME_BITS, BAND_BITS, FREQ_BITS;
+    private static final short VERSION;
+    private static final File DIR;
+    private static final String EXTENSION;
+    private static final boolean ENABLED;
+    static {
+        logger = Logger.getLogger(Constellation.class.getName());
+        MAGIC = 0x43535431;     // "CST1"
+        VERSION = 1;            // the version of the format
+        HEADER_SIZE = 10;       // MAGIC, VERSION and the number of key points (bytes)
+        TIME_BITS = 19;         // ~13.5 hours of FFT windows
+        BAND_BITS = 3;          // the 7 bands
+        FREQ_BITS = 10;         // the 512 frequency bins
+        DIR = new File("constellations");
+        EXTENSION = ".cst";
+        ENABLED = Boolean.getBoolean("constellations");
+    }
+
+    /**
+     * A method to write the constellation of a song. The file is
+     * written to a temporary file first, so it is never half-written.
+     *
+     * @param songName the song (file in the music dir)
+     * @param points the key points of the song by band (see AudioFingerprint.extractKeyPoints)
+     */
+    public static void write(String songName, KeyPoint[][] points) {
+        long start = System.currentTimeMillis(); // used for logging speed of writing
+
+        int total = 0;
+        for(KeyPoint[] band : points) total += band.length;
+
+        File file = getFile(songName);
+        File temp = new File(DIR, songName + EXTENSION + ".tmp");
+        try {
+            if(!DIR.exists() && !DIR.mkdirs() && !DIR.exists()) {
+                throw new IOException("Cannot create dir " + DIR.getAbsolutePath());
+            }
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeInt(total);
+                for(int band = 0; band < points.length; band ++) {
+                    for(KeyPoint point : points[band]) {
+                        out.writeInt(pack(point.getTime(), band, point.getFrequency()));
+                    }
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+            long end = System.currentTimeMillis();
+            logger.log(Level.INFO, "Wrote constellation of " + songName + " (" + total + " key points) in " +
+                    (end-start) + "ms");
+        } catch (IOException | IllegalArgumentException e) {
+            logger.log(Level.SEVERE, "Exception thrown while writing constellation of " + songName + " " + e);
+            try { Files.deleteIfExists(temp.toPath()); } catch (Exception ex) { /* ignored */ }
+        }
+    }
+
+    /**
+     * A method to read the constellation of a song.
+     *
+     * @param songName the song (file in the music dir)
+     * @return the key points of the song by band, or null if it has no constellation of this version
+     * or the file is corrupt
+     */
+    public static KeyPoint[][] read(String songName) {
+        File file = getFile(songName);
+        if(!file.exists()) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if(in.readInt() != MAGIC) {
+                logger.log(Level.WARNING, file.getName() + " is not a constellation file.");
+                return null;
+            }
+            short version = in.readShort();
+            if(version != VERSION) {
+                logger.log(Level.WARNING, file.getName() + " is version " + version + " (expected " + VERSION + ").");
+                return null;
+            }
+
+            List<List<KeyPoint>> bands = new ArrayList<>();
+            for(int band = 0; band < AudioFingerprint.BANDS; band ++) bands.add(new ArrayList<>());
+
+            // the file has to hold exactly the key points it says it has
+            int total = in.readInt();
+            if(total < 0 || (long) total * Integer.BYTES != file.length() - HEADER_SIZE) {
+                logger.log(Level.WARNING, file.getName() + " is corrupt - " + total + " key points in " +
+                        file.length() + " bytes.");
+                return null;
+            }
+            for(int i = 0; i < total; i ++) {
+                int packed = in.readInt();
+                int time = packed >>> (BAND_BITS + FREQ_BITS);
+                int band = (packed >>> FREQ_BITS) & ((1 << BAND_BITS) - 1);
+                int frequency = packed & ((1 << FREQ_BITS) - 1);
+                if(band >= AudioFingerprint.BANDS || frequency >= AudioUtils.WINDOW_SIZE / 2) {
+                    logger.log(Level.WARNING, file.getName() + " is corrupt - key point in band " + band +
+                            " at bin " + frequency + ".");
+                    return null;
+                }
+                bands.get(band).add(new KeyPoint(time, frequency));
+            }
+
+            KeyPoint[][] points = new KeyPoint[AudioFingerprint.BANDS][];
+            for(int band = 0; band < points.length; band ++) {
+                points[band] = bands.get(band).toArray(new KeyPoint[0]);
+            }
+            return points;
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Exception thrown while reading constellation of " + songName + " " + e);
+            return null;
+        }
+    }
+
+    /**
+     * A method to hash a song again from its constellation, with the
+     * current hashing parameters. No audio is decoded.
+     *
+     * @param songName the song (file in the music dir)
+     * @return the fingerprint of the song, or null if it has no constellation
+     */
+    public static Fingerprint rehash(String songName) {
+        KeyPoint[][] points = read(songName);
+        if(points == null) return null;
+        return AudioFingerprint.hash(points, false);
+    }
+
+    /**
+     * A method to pack a key point in an int.
+     *
+     * @param time the time (FFT window) of the point
+     * @param band the band of the point
+     * @param frequency the frequency bin of the point
+     * @return the packed point
+     */
+    private static int pack(int time, int band, int frequency) {
+        if(time >= 1 << TIME_BITS) throw new IllegalArgumentException("Key point time too big: " + time);
+        return (time << (BAND_BITS + FREQ_BITS)) | (band << FREQ_BITS) | frequency;
+    }
+
+    /**
+     * @param songName the song (file in the music dir)
+     * @return the constellation file of the song
+     */
+    private static File getFile(String songName) {
+        return new File(DIR, songName + EXTENSION);
+    }
+
+    /**
+     * @return true if constellations are written while songs are fingerprinted
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+}
@@ -0,0 +1,180 @@
+package model.engine;
+
+import model.db.DBFingerprint;
+import model.db.DBIngest;
+import model.db.DBManifest;
+import model.db.DBUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class finds the songs in the music dir which have to be fingerprinted,
+ * using the manifest in the DB (see DBManifest) instead of the titles of the songs.
+ * A file whose size and modification time did not change since the last scan is
+ * not read at all, so a rescan of a big library only lists the dir. A new or changed
+ * file is read once to get the checksum of its content:
+ * - if a song with the same content is in the DB (the file was renamed or copied) it is
+ * linked to that song and is not fingerprinted again;
+ * - if several new files have the same content only one of them is fingerprinted - the
+ * others are linked to its song when it is inserted;
+ * - if the content of a fingerprinted file changed, its old song is deleted (unless other
+ * files still have that content) and it is fingerprinted again.
+ * The first scan of a library which was fingerprinted before the manifest existed links the
+ * files to the songs by title.
+ *
+ * It has only static methods, but scan should not run twice at the same time.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class LibraryScanner {
+    // logger
+    private final static Logger logger = Logger.getLogger(LibraryScanner.class.getName());
+
+    /**
+     * A method to scan the music dir and update the manifest.
+     *
+     * @return the files which have to be fingerprinted
+     */
+    public static synchronized List<String> scan() {
+        long start = System.currentTimeMillis(); // used for logging speed of the scan
+
+        HashMap<String, DBManifest.Entry> manifest = DBManifest.getAll();
+        HashMap<String, Integer> titles = DBUtils.getSongIds();
+
+        // the song of each content and the number of files of each song
+        HashMap<String, Integer> songsByChecksum = new HashMap<>();
+        HashMap<Integer, Integer> filesBySong = new HashMap<>();
+        for(DBManifest.Entry entry : manifest.values()) {
+            if(entry.getSongId() == null) continue;
+            songsByChecksum.put(entry.getChecksum(), entry.getSongId());
+            filesBySong.merge(entry.getSongId(), 1, Integer::sum);
+        }
+
+        List<String> toFingerprint = new ArrayList<>();
+        List<DBManifest.Entry> changed = new ArrayList<>();
+        HashSet<String> newContent = new HashSet<>(); // the content of the files to fingerprint
+        int read = 0;
+
+        File[] files = AudioUtils.getMusicDir().listFiles((dir, name) -> name.endsWith(".wav"));
+        if(files == null) files = new File[0];
+        Arrays.sort(files);
+
+        for(File file : files) {
+            String path = file.getName();
+            DBManifest.Entry old = manifest.remove(path);
+            DBManifest.Entry entry = old;
+
+            // read the file only if it is new or changed
+            if(old == null || old.getSize() != file.length() || old.getModified() != file.lastModified()) {
+                String checksum;
+                try {
+                    checksum = checksum(file);
+                    read ++;
+                } catch (IOException e) {
+                    logger.log(Level.SEVERE, "Exception thrown while reading " + path + " " + e);
+                    continue;
+                }
+
+                if(old != null && !old.getChecksum().equals(checksum)) {
+                    // the content changed - drop the old song if no other file has it
+                    logger.log(Level.INFO, path + " changed - it will be fingerprinted again");
+                    if(old.getSongId() != null && filesBySong.merge(old.getSongId(), -1, Integer::sum) == 0) {
+                        DBFingerprint.deleteSong(old.getSongId());
+                        songsByChecksum.remove(old.getChecksum());
+                    }
+                    DBIngest.setState(path, DBIngest.PENDING);
+                }
+
+                Integer songId = old != null && old.getChecksum().equals(checksum) ? old.getSongId() : null;
+                // fingerprinted before the manifest existed
+                if(songId == null && old == null) songId = titles.get(path);
+                entry = new DBManifest.Entry(path, file.length(), file.lastModified(), checksum, songId);
+                changed.add(entry);
+            }
+
+            // a file with the same content is in the DB
+            if(entry.getSongId() == null && songsByChecksum.containsKey(entry.getChecksum())) {
+                entry.setSongId(songsByChecksum.get(entry.getChecksum()));
+                if(entry == old) changed.add(entry);
+                logger.log(Level.INFO, path + " has the same content as song " + entry.getSongId());
+            }
+
+            if(entry.getSongId() != null) {
+                songsByChecksum.put(entry.getChecksum(), entry.getSongId());
+            } else if(newContent.add(entry.getChecksum())) {
+                toFingerprint.add(path);
+            } else {
+                logger.log(Level.INFO, path + " has the same content as another new file - it is not fingerprinted");
+            }
+        }
+
+        // the files which are not in the dir any more (their songs stay in the DB)
+        DBManifest.saveAll(changed);
+        DBManifest.removeAll(new ArrayList<>(manifest.keySet()));
+
+        // log time taken
+        long end = System.currentTimeMillis();
+        logger.log(Level.INFO, "Scanned " + files.length + " files in " + (end-start) + "ms (" + read + " read, " +
+                manifest.size() + " removed) - " + toFingerprint.size() + " to fingerprint");
+
+        return toFingerprint;
+    }
+
+    /**
+     * A method to get the checksum of the content of a file.
+     *
+     * @param file the file
+     * @return the SHA-256 of the file (hex)
+     * @throws IOException if the file cannot be read
+     */
+    static String checksum(File file) throws IOException {
+        MessageDigest digest = newDigest();
+
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while((n = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        }
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @return a new digest of the kind used for the checksums (e.g. to get the
+     * checksum of a file while it is read for something else)
+     */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has SHA-256
+        }
+    }
+
+    /**
+     * @param digest the bytes of a digest
+     * @return the checksum (hex)
+     */
+    static String toHex(byte[] digest) {
+        StringBuilder hex = new StringBuilder();
+        for(byte b : digest) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,232 @@
+package model.engine;
+
+import model.db.DBFingerprint;
+import model.engine.datastructures.Fingerprint;
+import model.engine.datastructures.MatchResult;
+import model.engine.datastructures.OffsetHistogram;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class matches an input whose hashes come a few at a time (the
+ * microphone, or a file which is decoded part by part). It matches in the same
+ * two stages as DBFingerprint.lookForMatches, but keeps the state of both for the
+ * whole session:
+ * - stage 1 - the hashes for the shortlist (see DBFingerprint.getStageOneHashes) are
+ * looked up in the whole DB as they come, and the best songs so far are the candidates.
+ * A song which joins the candidates later is looked up with the hashes submitted before it;
+ * - stage 2 - all hashes are looked up in the candidates only, and their hits are added to
+ * an offset histogram which is kept for the whole session - so the evidence from all of the
+ * input adds up (several parts which each almost match the same song make a match together).
+ * The hits in the candidates are kept by hash - the hashes from the end of the input so far may
+ * still change (provisional hashes) and the same hash can occur again, so a hash is looked up when
+ * it is first seen and its hits are reused from then on. A song which joins the candidates is looked
+ * up with all hashes seen before. So every hash is looked up in each candidate only once (stage 2 does
+ * not restrict them to where the input is in them, since that is not known when the first hashes come).
+ *
+ * It keeps state, so an instance should only be used by one thread at a time.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class MatchSession {
+    // logger
+    private final static Logger logger = Logger.getLogger(MatchSession.class.getName());
+    // the confidence needed to decide before the input is over
+    public final static double CONFIDENCE = 0.3;
+
+    // whether the input is from the mic
+    private boolean isMic;
+    // the hits of the hashes used for the shortlist (in the whole DB) and how many of them there were
+    private OffsetHistogram coarse;
+    private int coarseCount;
+    // the candidates - every song which was on the shortlist so far
+    private LinkedHashSet<Integer> candidates;
+    // the times of each hash submitted so far
+    private HashMap<Long, ArrayList<Integer>> submitted;
+    // the hits in the candidates of all hashes submitted so far
+    private OffsetHistogram histogram;
+    // the hits in the candidates of every hash looked up so far (submitted or provisional), by hash
+    private HashMap<Long, ArrayList<int[]>> hits;
+    // the titles of the songs in the histogram
+    private HashMap<Integer, String> titles;
+    // the number of hashes submitted so far
+    private int hashCount;
+    // the time spent looking up hashes (ms)
+    private long lookupTime;
+
+    /**
+     * Constructor
+     *
+     * @param isMic whether the input is from the mic or not
+     */
+    public MatchSession(boolean isMic) {
+        this.isMic = isMic;
+        this.coarse = new OffsetHistogram();
+        this.candidates = new LinkedHashSet<>();
+        this.submitted = new HashMap<>();
+        this.histogram = new OffsetHistogram();
+        this.hits = new HashMap<>();
+        this.titles = new HashMap<>();
+    }
+
+    /**
+     * A method to look up new hashes of the input and add their hits to
+     * the session. Hashes should be submitted only once.
+     *
+     * @param hashes the new hashes and their anchor times
+     * @throws InterruptedException if the thread is interrupted while waiting for the DB
+     */
+    public void submit(Fingerprint hashes) throws InterruptedException {
+        if(hashes.size() == 0) return;
+        long start = System.currentTimeMillis();
+
+        // Step 1: look up the hashes for the shortlist in the whole DB
+
+        Fingerprint stageOne = DBFingerprint.getStageOneHashes(hashes, coarseCount);
+        HashMap<Long, ArrayList<Integer>> stageOneTimes = getTimes(stageOne);
+        HashMap<Long, ArrayList<int[]>> coarseHits = new HashMap<>();
+        DBFingerprint.lookUpHits(stageOneTimes.keySet(), null, coarseHits, null);
+        addHits(coarse, stageOneTimes, coarseHits, true);
+        coarseCount += stageOne.size();
+
+        // Step 2: look up the hashes seen before in the songs which are new to the shortlist
+
+        ArrayList<Integer> added = new ArrayList<>();
+        for(int id : DBFingerprint.getShortlist(coarse)) {
+            if(candidates.add(id)) added.add(id);
+        }
+        if(!added.isEmpty()) {
+            HashMap<Long, ArrayList<int[]>> addedHits = new HashMap<>();
+            DBFingerprint.lookUpHits(hits.keySet(), toArray(added), addedHits, titles);
+            addHits(histogram, submitted, addedHits, true);
+            for(Map.Entry<Long, ArrayList<int[]>> entry : addedHits.entrySet()) {
+                hits.get(entry.getKey()).addAll(entry.getValue());
+            }
+        }
+
+        // Step 3: look up the new hashes in the candidates (unless they were seen before)
+
+        HashMap<Long, ArrayList<Integer>> times = getTimes(hashes);
+        lookUpNew(times);
+        addHits(histogram, times, hits, true);
+        for(Map.Entry<Long, ArrayList<Integer>> entry : times.entrySet()) {
+            submitted.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).addAll(entry.getValue());
+        }
+
+        hashCount += hashes.size();
+        lookupTime += System.currentTimeMillis() - start;
+    }
+
+    /**
+     * A method to get the result of the session so far.
+     *
+     * @param provisional hashes which may still change (e.g. the ones from the end of the input
+     *                    so far) - their hits are counted in the result but are not kept in the session
+     * @param duration the duration of the input so far (seconds)
+     * @return the match result
+     * @throws InterruptedException if the thread is interrupted while waiting for the DB
+     */
+    public MatchResult getResult(Fingerprint provisional, double duration) throws InterruptedException {
+        long start = System.currentTimeMillis();
+
+        // Step 1: get the hits of the provisional hashes (only the ones not seen before are looked up)
+
+        HashMap<Long, ArrayList<Integer>> times = getTimes(provisional);
+        lookUpNew(times);
+        lookupTime += System.currentTimeMillis() - start;
+
+        // Step 2: rank the candidates with the provisional hits counted (and then taken back)
+
+        addHits(histogram, times, hits, true);
+        MatchResult result = new MatchResult();
+        result.setDuration(duration);
+        DBFingerprint.rankCandidates(histogram, titles,
+                DBFingerprint.getMinimumMatches(hashCount + provisional.size(), isMic), result);
+        addHits(histogram, times, hits, false);
+        result.addTiming("lookup", lookupTime);
+
+        logger.log(Level.INFO, "Session after " + hashCount + " hashes (+" + provisional.size() +
+                " provisional, " + candidates.size() + " candidates): " + result);
+
+        return result;
+    }
+
+    /**
+     * A method to look up in the candidates the hashes which were not seen before.
+     *
+     * @param times the hashes and their times
+     * @throws InterruptedException if the thread is interrupted while waiting for the DB
+     */
+    private void lookUpNew(HashMap<Long, ArrayList<Integer>> times) throws InterruptedException {
+        ArrayList<Long> missing = new ArrayList<>();
+        for(long hash : times.keySet()) {
+            if(!hits.containsKey(hash)) missing.add(hash);
+        }
+        DBFingerprint.lookUpHits(missing, toArray(candidates), hits, titles);
+    }
+
+    /**
+     * A method to add (or take back) the hits of hashes to a histogram.
+     *
+     * @param to the histogram
+     * @param times the hashes and their times in the input
+     * @param hits the hits of the hashes - {song id, time in the song} (a hash which is not in it is skipped)
+     * @param add whether to add the hits or to take them back
+     */
+    private static void addHits(OffsetHistogram to, Map<Long, ArrayList<Integer>> times,
+                                Map<Long, ArrayList<int[]>> hits, boolean add) {
+        for(Map.Entry<Long, ArrayList<Integer>> entry : times.entrySet()) {
+            ArrayList<int[]> hashHits = hits.get(entry.getKey());
+            if(hashHits == null) continue;
+            for(int[] hit : hashHits) {
+                for(int time : entry.getValue()) {
+                    if(add) to.add(hit[0], hit[1] - time);
+                    else to.remove(hit[0], hit[1] - time);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param fingerprint some hashes
+     * @return the times of each hash (the same hash can occur more than once)
+     */
+    private static HashMap<Long, ArrayList<Integer>> getTimes(Fingerprint fingerprint) {
+        long[] hashes = fingerprint.getHashes();
+        int[] times = fingerprint.getTimes();
+        HashMap<Long, ArrayList<Integer>> result = new HashMap<>();
+        for(int i = 0; i < hashes.length; i ++) {
+            result.computeIfAbsent(hashes[i], k -> new ArrayList<>()).add(times[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @param ids some song ids
+     * @return the ids in an array
+     */
+    private static int[] toArray(Collection<Integer> ids) {
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @param result a result of the session
+     * @return true if the result is a match with at least CONFIDENCE confidence
+     */
+    public static boolean isConfident(MatchResult result) {
+        return result.isMatch() && result.getBest().getConfidence() >= CONFIDENCE;
+    }
+
+    /** Setters and Getters: */
+
+    public int getHashCount() {
+        return hashCount;
+    }
+}
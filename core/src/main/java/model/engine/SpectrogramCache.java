@@ -0,0 +1,368 @@
+package model.engine;
+
+import model.db.DBManifest;
+import model.engine.datastructures.KeyPoint;
+import model.engine.datastructures.SpectrogramData;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A cache of the spectrograms of songs (see SpectrogramData), so a spectrogram
+ * which was drawn before (or a song which was fingerprinted) does not have to be
+ * read, filtered and transformed again. It has two tiers:
+ * - memory - the spectrograms used last, up to MEMORY_LIMIT bytes (least recently used are evicted);
+ * - disk - a file per spectrogram in the cache dir, up to DISK_LIMIT bytes (-Dspectrogram.cache.mb,
+ * 256 MB by default). A file is touched when it is used, and the least recently used files are
+ * deleted when a new one takes the cache over the limit.
+ * A spectrogram is keyed by the checksum of the content of its song (so it survives renames and
+ * is never used for a changed file) and by PARAMS - the parameters of the decoding. VERSION has to be
+ * increased when the decoding changes in a way that PARAMS does not show (e.g. the filter).
+ * The cache never reads a song to get its checksum - it is taken from the manifest or from the
+ * last time the song was read for decoding (see setChecksum), so a song which is in neither is
+ * simply not in the cache until it is decoded.
+ *
+ * Fingerprinting a song puts its spectrogram in the cache too (unless -Dspectrogram.cache.ingest=false),
+ * so it opens without being decoded again - on disk only, so a big ingest does not evict the
+ * spectrograms which are being looked at from memory.
+ *
+ * It has only static methods and it is thread-safe.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class SpectrogramCache {
+    // statics:
+    private static final Logger logger;
+    private static final int MAGIC, VERSION, HEADER_SIZE, KEY_POINT_SIZE;
+    private static final long MEMORY_LIMIT, DISK_LIMIT;
+    private static final boolean ON_INGEST;
+    private static final String PARAMS;
+    private static final File DIR;
+    private static final LinkedHashMap<String, SpectrogramData> MEMORY;
+    private static final ConcurrentHashMap<String, DBManifest.Entry> CHECKSUMS;
+    private static long memoryUsed;
+    static {
+        logger = Logger.getLogger(SpectrogramCache.class.getName());
+        MAGIC = 0x53504331;                 // "SPC1"
+        VERSION = 1;                        // the version of the decoding and of the format
+        HEADER_SIZE = 3 * Integer.BYTES;    // the magic, the number of windows and of bins (bytes)
+        KEY_POINT_SIZE = Integer.BYTES + Short.BYTES; // a key point in a file - time and bin (bytes)
+        MEMORY_LIMIT = 64L * 1024 * 1024;   // the memory used by the memory tier (bytes)
+        DISK_LIMIT = Long.getLong("spectrogram.cache.mb", 256) * 1024 * 1024; // the disk tier (bytes)
+        ON_INGEST = !"false".equals(System.getProperty("spectrogram.cache.ingest")); // on by default
+        PARAMS = "w" + AudioUtils.WINDOW_SIZE + "r" + (int) AudioUtils.SAMPLE_RATE + "v" + VERSION;
+        DIR = new File("cache/spectrograms");
+        MEMORY = new LinkedHashMap<>(16, 0.75f, true); // ordered by access
+        CHECKSUMS = new ConcurrentHashMap<>();          // the checksums known so far by song
+        memoryUsed = 0;
+    }
+
+    /**
+     * A method to get the spectrogram of a song from the cache.
+     *
+     * @param songName the song (file in the music dir)
+     * @return the spectrogram, or null if it is not in the cache
+     */
+    public static SpectrogramData get(String songName) {
+        long start = System.currentTimeMillis(); // used for logging speed of the cache
+
+        String key = getKey(songName);
+        if(key == null) return null;
+
+        // Step 1: the memory tier
+
+        File file = new File(DIR, key);
+        SpectrogramData data;
+        synchronized (MEMORY) {
+            data = MEMORY.get(key);
+        }
+        if(data != null) {
+            touch(file);
+            logger.log(Level.INFO, "Spectrogram of " + songName + " found in memory (" +
+                    (System.currentTimeMillis() - start) + "ms)");
+            return data;
+        }
+
+        // Step 2: the disk tier
+
+        data = read(file);
+        if(data != null) {
+            touch(file);
+            putInMemory(key, data);
+            logger.log(Level.INFO, "Spectrogram of " + songName + " found on disk (" +
+                    (System.currentTimeMillis() - start) + "ms)");
+        }
+        return data;
+    }
+
+    /**
+     * A method to put the spectrogram of a song in the cache.
+     *
+     * @param songName the song (file in the music dir)
+     * @param FFTResults the FFT results of the song
+     * @param keyPoints the key points extracted from them
+     * @param inMemory whether to keep it in memory as well (it is only written to disk if false)
+     * @return the quantised spectrogram
+     */
+    public static SpectrogramData put(String songName, double[][] FFTResults, KeyPoint[][] keyPoints,
+                                      boolean inMemory) {
+        SpectrogramData data = SpectrogramData.quantise(FFTResults, keyPoints);
+
+        String key = getKey(songName);
+        if(key == null) return data;
+
+        File file = new File(DIR, key);
+        write(file, data);
+        trimDisk(file);
+        if(inMemory) putInMemory(key, data);
+        return data;
+    }
+
+    /**
+     * A method to keep the checksum of a song which was read for decoding, so
+     * its spectrogram can be found without reading it again.
+     *
+     * @param songName the song (file in the music dir)
+     * @param size the size of the file before it was read
+     * @param modified the time the file was last modified before it was read
+     * @param checksum the checksum of the content of the file (see LibraryScanner)
+     */
+    public static void setChecksum(String songName, long size, long modified, String checksum) {
+        CHECKSUMS.put(songName, new DBManifest.Entry(songName, size, modified, checksum, null));
+    }
+
+    /**
+     * @return true if the spectrograms of the songs which are fingerprinted are cached
+     */
+    public static boolean isEnabledOnIngest() {
+        return ON_INGEST;
+    }
+
+    /**
+     * A method to put a spectrogram in the memory tier and evict the least
+     * recently used ones if the memory tier is too big.
+     *
+     * @param key the key of the spectrogram
+     * @param data the spectrogram
+     */
+    private static void putInMemory(String key, SpectrogramData data) {
+        synchronized (MEMORY) {
+            SpectrogramData old = MEMORY.put(key, data);
+            if(old != null) memoryUsed -= old.getSize();
+            memoryUsed += data.getSize();
+
+            // the first entries are the least recently used - the last one is always kept
+            Iterator<Map.Entry<String, SpectrogramData>> iterator = MEMORY.entrySet().iterator();
+            while(memoryUsed > MEMORY_LIMIT && MEMORY.size() > 1) {
+                memoryUsed -= iterator.next().getValue().getSize();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * A method to mark a file of the disk tier as used just now, so it is
+     * the last to be deleted (see trimDisk).
+     *
+     * @param file the file of a spectrogram
+     */
+    private static void touch(File file) {
+        if(file.exists() && !file.setLastModified(System.currentTimeMillis())) {
+            logger.log(Level.FINE, "Unable to touch " + file.getName());
+        }
+    }
+
+    /**
+     * A method to delete the least recently used files of the disk tier until it
+     * is within DISK_LIMIT. The file which was just written is always kept.
+     *
+     * @param written the file which was just written
+     */
+    private static synchronized void trimDisk(File written) {
+        File[] files = DIR.listFiles((dir, name) -> name.endsWith(".spc"));
+        if(files == null) return;
+
+        long used = 0;
+        for(File file : files) {
+            used += file.length();
+        }
+        if(used <= DISK_LIMIT) return;
+
+        // the least recently used first
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        int deleted = 0;
+        for(int i = 0; i < files.length && used > DISK_LIMIT; i ++) {
+            if(files[i].equals(written)) continue;
+            long length = files[i].length();
+            if(files[i].delete()) {
+                used -= length;
+                deleted ++;
+            }
+        }
+        logger.log(Level.INFO, "Deleted " + deleted + " spectrograms from the disk cache (" +
+                used / 1024 + " KB left)");
+    }
+
+    /**
+     * A method to get the key of the spectrogram of a song - the checksum of its
+     * content and the parameters. The checksum is taken from the last time the song
+     * was read (see setChecksum) or from the manifest if the file did not change since then.
+     * The file itself is not read.
+     *
+     * @param songName the song (file in the music dir)
+     * @return the key, or null if the song does not exist or its checksum is not known
+     */
+    private static String getKey(String songName) {
+        File file = new File(AudioUtils.getMusicDir(), songName);
+        if(!file.exists()) return null;
+
+        DBManifest.Entry entry = CHECKSUMS.get(songName);
+        if(entry == null || entry.getSize() != file.length() || entry.getModified() != file.lastModified()) {
+            entry = DBManifest.get(songName);
+        }
+        if(entry == null || entry.getSize() != file.length() || entry.getModified() != file.lastModified()) {
+            return null;
+        }
+        CHECKSUMS.put(songName, entry);
+        return entry.getChecksum() + "-" + PARAMS + ".spc";
+    }
+
+    /**
+     * A method to write a spectrogram to a file. The file is
+     * written to a temporary file first, so it is never half-written.
+     * The format (big-endian): MAGIC (int); the number of windows and bins
+     * (int, int); the amplitudes window by window (a byte each); for each band the
+     * number of key points (int) and their time (int) and frequency bin (short).
+     *
+     * @param file the file
+     * @param data the spectrogram
+     */
+    private static void write(File file, SpectrogramData data) {
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            if(!DIR.exists() && !DIR.mkdirs() && !DIR.exists()) {
+                throw new IOException("Cannot create dir " + DIR.getAbsolutePath());
+            }
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(data.getWindows());
+                out.writeInt(data.getBins());
+                for(byte[] window : data.getAmplitudes()) {
+                    out.write(window);
+                }
+                out.writeInt(data.getKeyPoints().length);
+                for(KeyPoint[] band : data.getKeyPoints()) {
+                    out.writeInt(band.length);
+                    for(KeyPoint point : band) {
+                        out.writeInt(point.getTime());
+                        out.writeShort(point.getFrequency());
+                    }
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Exception thrown while writing " + file.getName() + " " + e);
+            try { Files.deleteIfExists(temp.toPath()); } catch (Exception ex) { /* ignored */ }
+        }
+    }
+
+    /**
+     * A method to read a spectrogram from a file (see write). The sizes in the
+     * file are checked against the bounds of the decoding and the length of the file
+     * before anything is allocated, and a file which fails the checks is deleted -
+     * it is written again the next time the spectrogram is decoded.
+     *
+     * @param file the file
+     * @return the spectrogram, or null if there is no such file or it cannot be read
+     */
+    private static SpectrogramData read(File file) {
+        if(!file.exists()) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if(in.readInt() != MAGIC) throw new StreamCorruptedException("it is not a spectrogram file");
+
+            // the amplitudes - they have to fit in the rest of the file
+            // (a window counts as a byte even without bins, so a huge number of empty windows is not allocated)
+            long left = file.length() - HEADER_SIZE;
+            int windows = in.readInt();
+            int bins = in.readInt();
+            if(windows < 0 || bins < 0 || bins > AudioUtils.WINDOW_SIZE / 2 ||
+                    (long) windows * Math.max(bins, 1) > left) {
+                throw new StreamCorruptedException(windows + " windows of " + bins + " bins in " + file.length() +
+                        " bytes");
+            }
+            left -= (long) windows * bins;
+            byte[][] amplitudes = new byte[windows][bins];
+            for(byte[] window : amplitudes) {
+                in.readFully(window);
+            }
+
+            // the key points - a band count, then for each band its count and the points
+            int bands = in.readInt();
+            if(bands != AudioFingerprint.BANDS) throw new StreamCorruptedException(bands + " bands");
+            left -= Integer.BYTES;
+            KeyPoint[][] keyPoints = new KeyPoint[bands][];
+            for(int band = 0; band < bands; band ++) {
+                int count = in.readInt();
+                left -= Integer.BYTES;
+                if(count < 0 || (long) count * KEY_POINT_SIZE > left) {
+                    throw new StreamCorruptedException(count + " key points in band " + band);
+                }
+                left -= (long) count * KEY_POINT_SIZE;
+                keyPoints[band] = new KeyPoint[count];
+                for(int i = 0; i < count; i ++) {
+                    int time = in.readInt();
+                    short frequency = in.readShort();
+                    if(time < 0 || time >= windows || frequency < 0 || frequency >= AudioUtils.WINDOW_SIZE / 2) {
+                        throw new StreamCorruptedException("key point at window " + time + ", bin " + frequency);
+                    }
+                    keyPoints[band][i] = new KeyPoint(time, frequency);
+                }
+            }
+            if(left != 0) throw new StreamCorruptedException(left + " bytes left over");
+
+            return new SpectrogramData(amplitudes, keyPoints);
+        } catch (StreamCorruptedException e) {
+            // (the file is closed by now, so it can be deleted)
+            return corrupt(file, e.getMessage());
+        } catch (EOFException e) {
+            return corrupt(file, "it is cut short");
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Exception thrown while reading " + file.getName() + " " + e);
+            return null;
+        }
+    }
+
+    /**
+     * A method to log and delete a file of the disk tier which is not a valid spectrogram.
+     *
+     * @param file the file
+     * @param reason what is wrong with it
+     * @return null (there is no spectrogram)
+     */
+    private static SpectrogramData corrupt(File file, String reason) {
+        logger.log(Level.WARNING, file.getName() + " is corrupt - " + reason + ". Deleting it.");
+        try { Files.deleteIfExists(file.toPath()); } catch (Exception e) { /* ignored */ }
+        return null;
+    }
+}
@@ -0,0 +1,276 @@
+package model.engine;
+
+import model.engine.datastructures.KeyPoint;
+import model.engine.datastructures.SpectrogramData;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * This class draws spectrograms (see SpectrogramData) and their key points into
+ * images of a given size. The spectrogram is scaled down before it is coloured -
+ * every pixel is the average of the points it covers - so a long song costs about
+ * as much as a short one once it is read. The colours come from a table of the 256
+ * quantised amplitudes and are written straight to the pixels of the image, and the
+ * rows of the image are drawn in bands in parallel.
+ *
+ * A spectrogram can also be drawn in parts (e.g. the tiles of a zoomed view) - each
+ * part is some of the columns of the spectrogram drawn at a given width, and the parts
+ * fit together exactly. An empty spectrogram (no windows or no bins, e.g. a song shorter
+ * than one window) is drawn as a blank image. It has only static methods so it is thread-safe.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class SpectrogramRenderer {
+    // statics:
+    private static final int[] PALETTE;
+    private static final int WHITE, RED, BLACK, ROWS_PER_BAND, SQUARE_WIDTH, SQUARE_HEIGHT;
+    static {
+        // the colour of each quantised amplitude - from red (strong) to green (weak)
+        PALETTE = new int[256];
+        for(int i = 0; i < PALETTE.length; i ++) {
+            double power = 1.0 - i / 255.0;
+            PALETTE[i] = Color.getHSBColor((float) (power * 0.3), 1f, 1f).getRGB();
+        }
+        WHITE = Color.WHITE.getRGB();
+        RED = Color.RED.getRGB();
+        BLACK = Color.BLACK.getRGB();
+        ROWS_PER_BAND = 16;     // the rows of the image drawn by one thread at a time
+        SQUARE_WIDTH = 8;       // the size of the square around a key point (in windows
+        SQUARE_HEIGHT = 4;      // and frequency bins)
+    }
+
+    /**
+     * A method to draw a whole spectrogram. The highest frequencies are at the top.
+     *
+     * @param data the spectrogram
+     * @param width the width of the image
+     * @param height the height of the image
+     * @return the image
+     */
+    public static BufferedImage renderSpectrogram(SpectrogramData data, int width, int height) {
+        return renderSpectrogram(data, width, 0, width, height);
+    }
+
+    /**
+     * A method to draw some of the columns of a spectrogram drawn totalWidth
+     * pixels wide. The highest frequencies are at the top.
+     *
+     * @param data the spectrogram
+     * @param totalWidth the width of the whole spectrogram
+     * @param x the first column to draw
+     * @param width the width of the image (the number of columns to draw)
+     * @param height the height of the image
+     * @return the image
+     */
+    public static BufferedImage renderSpectrogram(SpectrogramData data, int totalWidth, int x, int width,
+                                                 int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        byte[][] amplitudes = data.getAmplitudes();
+        int bins = data.getBins();
+
+        // nothing to draw
+        if(isEmpty(data, totalWidth)) {
+            Arrays.fill(pixels, WHITE);
+            return image;
+        }
+
+        // the windows of each column and the bins of each row
+        int[][] columns = split(data.getWindows(), totalWidth, x, width);
+        int[][] rows = split(bins, height, 0, height);
+
+        int rowBands = (height + ROWS_PER_BAND - 1) / ROWS_PER_BAND;
+        IntStream.range(0, rowBands).parallel().forEach(band -> {
+            int yTo = Math.min(height, (band + 1) * ROWS_PER_BAND);
+            for(int y = band * ROWS_PER_BAND; y < yTo; y ++) {
+                // the image has the y coordinate going down
+                int binFrom = bins - rows[1][y];
+                int binTo = bins - rows[0][y];
+                for(int i = 0; i < width; i ++) {
+                    // the average of the points covered by the pixel
+                    int sum = 0;
+                    for(int window = columns[0][i]; window < columns[1][i]; window ++) {
+                        byte[] column = amplitudes[window];
+                        for(int bin = binFrom; bin < binTo; bin ++) {
+                            sum += column[bin] & 0xff;
+                        }
+                    }
+                    int count = (columns[1][i] - columns[0][i]) * (binTo - binFrom);
+                    pixels[y * width + i] = PALETTE[count == 0 ? 0 : sum / count];
+                }
+            }
+        });
+
+        return image;
+    }
+
+    /**
+     * A method to draw one window of FFT results (normalized between 0 and 1) as a
+     * column of pixels, the same way renderSpectrogram draws a column - e.g. for a
+     * view of input which is still coming. The highest frequencies are at the top.
+     *
+     * @param window the FFT results of the window
+     * @param height the height of the column
+     * @return the colours (ARGB) of the pixels from the top
+     */
+    public static int[] renderColumn(double[] window, int height) {
+        int[] pixels = new int[height];
+        int bins = window.length;
+        if(bins == 0) {
+            Arrays.fill(pixels, WHITE);
+            return pixels;
+        }
+        int[][] rows = split(bins, height, 0, height);
+        for(int y = 0; y < height; y ++) {
+            int binFrom = bins - rows[1][y];
+            int binTo = bins - rows[0][y];
+            int sum = 0;
+            for(int bin = binFrom; bin < binTo; bin ++) {
+                sum += SpectrogramData.quantise(window[bin]);
+            }
+            pixels[y] = PALETTE[sum / (binTo - binFrom)];
+        }
+        return pixels;
+    }
+
+    /**
+     * @return the colour (ARGB) of a key point drawn on a spectrogram
+     */
+    public static int getKeyPointColor() {
+        return BLACK;
+    }
+
+    /**
+     * A method to draw the key points of a whole spectrogram - a black square around
+     * each key point on white, with red lines between the frequency bands.
+     *
+     * @param data the spectrogram
+     * @param width the width of the image
+     * @param height the height of the image
+     * @return the image
+     */
+    public static BufferedImage renderKeyPoints(SpectrogramData data, int width, int height) {
+        return renderKeyPoints(data, width, 0, width, height);
+    }
+
+    /**
+     * A method to draw the key points in some of the columns of a spectrogram drawn
+     * totalWidth pixels wide (see renderKeyPoints(data, width, height)).
+     *
+     * @param data the spectrogram
+     * @param totalWidth the width of the whole spectrogram
+     * @param x the first column to draw
+     * @param width the width of the image (the number of columns to draw)
+     * @param height the height of the image
+     * @return the image
+     */
+    public static BufferedImage renderKeyPoints(SpectrogramData data, int totalWidth, int x, int width,
+                                               int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int windows = data.getWindows();
+        int bins = data.getBins();
+
+        Arrays.fill(pixels, WHITE);
+
+        // nothing to draw
+        if(isEmpty(data, totalWidth)) return image;
+
+        // a red line at the floor of each band (but the lowest)
+        for(int band = 1; band < AudioFingerprint.BANDS; band ++) {
+            int y = Math.min(height - 1, (int) ((long) (bins - AudioFingerprint.BAND_FLOORS[band]) * height / bins));
+            Arrays.fill(pixels, y * width, (y + 1) * width, RED);
+        }
+
+        // the windows of the columns (and the squares which reach into them)
+        int windowFrom = (int) ((long) x * windows / totalWidth) - SQUARE_WIDTH / 2;
+        int windowTo = (int) (((long) (x + width) * windows + totalWidth - 1) / totalWidth) + SQUARE_WIDTH / 2;
+
+        // a square around each key point (at least one pixel)
+        for(KeyPoint[] band : data.getKeyPoints()) {
+            // the key points of a band are ordered by time
+            for(int i = firstAfter(band, windowFrom); i < band.length && band[i].getTime() < windowTo; i ++) {
+                KeyPoint kp = band[i];
+                int xFrom = (int) Math.floorDiv((long) (kp.getTime() - SQUARE_WIDTH / 2) * totalWidth, windows) - x;
+                int xTo = Math.max(xFrom + 1,
+                        (int) Math.floorDiv((long) (kp.getTime() + SQUARE_WIDTH / 2) * totalWidth, windows) - x);
+                xFrom = Math.max(0, xFrom);
+                xTo = Math.min(width, xTo);
+                if(xFrom >= xTo) continue;
+
+                int y = bins - 1 - kp.getFrequency();
+                int yFrom = scale(y - SQUARE_HEIGHT / 2, bins, height);
+                int yTo = Math.max(yFrom + 1, scale(y + SQUARE_HEIGHT / 2, bins, height));
+                for(int j = yFrom; j < Math.min(yTo, height); j ++) {
+                    Arrays.fill(pixels, j * width + xFrom, j * width + xTo, BLACK);
+                }
+            }
+        }
+
+        return image;
+    }
+
+    /**
+     * @param data the spectrogram
+     * @param totalWidth the width of the whole spectrogram
+     * @return true if there is nothing to draw (no windows, no bins or no width)
+     */
+    private static boolean isEmpty(SpectrogramData data, int totalWidth) {
+        return data.getWindows() == 0 || data.getBins() == 0 || totalWidth <= 0;
+    }
+
+    /**
+     * A method to split a number of points into a number of pixels and get the points
+     * of some of the pixels. Each pixel covers at least one point (points are repeated
+     * if there are less points than pixels), so there must be at least one point.
+     *
+     * @param points the number of points
+     * @param pixels the number of pixels
+     * @param first the first pixel
+     * @param count the number of pixels
+     * @return the first point of each pixel and the point to stop at (exclusive) of each pixel
+     */
+    private static int[][] split(int points, int pixels, int first, int count) {
+        int[][] result = new int[2][count];
+        for(int i = 0; i < count; i ++) {
+            int pixel = first + i;
+            result[0][i] = Math.min(points - 1, (int) ((long) pixel * points / pixels));
+            result[1][i] = Math.max(result[0][i] + 1, (int) ((long) (pixel + 1) * points / pixels));
+        }
+        return result;
+    }
+
+    /**
+     * A method to find the first key point at or after a time (binary search).
+     *
+     * @param band the key points of a band, ordered by time
+     * @param time the time
+     * @return the index of the first key point at or after the time
+     */
+    private static int firstAfter(KeyPoint[] band, int time) {
+        int low = 0, high = band.length;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(band[middle].getTime() < time) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * A method to scale a point to a pixel (clamped to the image).
+     *
+     * @param point the point
+     * @param points the number of points
+     * @param pixels the number of pixels
+     * @return the pixel
+     */
+    private static int scale(int point, int points, int pixels) {
+        return (int) Math.max(0, Math.min(pixels, (long) point * pixels / points));
+    }
+}
@@ -0,0 +1,550 @@
+package model.engine;
+
+import biz.source_code.dsp.filter.IirFilter;
+import biz.source_code.dsp.filter.IirFilterCoefficients;
+import biz.source_code.dsp.sound.AudioIo;
+import model.engine.datastructures.Fingerprint;
+import model.engine.datastructures.KeyPoint;
+import model.engine.datastructures.MyTargetZone;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class decodes audio which comes in chunks (for example a stream which is
+ * read a few seconds at a time) and keeps everything it has computed, so that when
+ * more audio comes only the new audio has to be filtered, down-sampled and FFT-ed and
+ * only the new key points have to be hashed. It applies the exact same algorithms as
+ * the AudioDecoder and AudioUtils classes.
+ *
+ * There are two differences to decoding the whole audio at once:
+ * - the FFT results are normalized with the maximum amplitude found so far (the
+ *   maximum of the whole audio is not known until the end)
+ * - the key points of the last, incomplete block of windows of each band are
+ *   recomputed each time the fingerprint is requested (they depend on the rest of
+ *   the block), so the hashes which use them are not kept either.
+ *
+ * When gating (for matching input), windows which cannot produce useful key points
+ * (silence, noise) are skipped the same way AudioUtils.applyFFT skips them.
+ *
+ * A Listener can be set to get every window as soon as it is normalized and every
+ * key point as soon as its block is complete (e.g. to draw the input live).
+ *
+ * Unlike the other engine classes it keeps state, so an instance should only be
+ * used by one thread at a time.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class StreamDecoder {
+    // the format of the input (44.1 kHz 16 bit, mono or stereo)
+    private AudioFormat format;
+    // the low-pass filter of each channel (they keep their state between chunks)
+    private IirFilter[] filters;
+    // the number of bytes of input which make up one down-sampled sample
+    private int groupSize;
+
+    // input bytes which are not enough for a down-sampled sample yet
+    private byte[] pending;
+    private int pendingLength;
+
+    // down-sampled audio which is not enough for a FFT window yet
+    private double[] samples;
+    private int sampleCount;
+    // the imaginary part of the FFT input (always 0)
+    private double[] inputImag;
+
+    // FFT windows which have not been normalized yet (null for silent windows when gating)
+    private ArrayList<double[]> rawWindows;
+    // whether to skip windows which cannot produce useful key points
+    private boolean gate;
+    // the number of windows skipped so far
+    private int skippedWindows;
+    // normalized FFT windows - only the ones still needed for key points are kept
+    private ArrayList<double[]> windows;
+    // the time of the first window in windows
+    private int windowsBase;
+    // the total number of windows
+    private int windowCount;
+    // the min and max amplitude so far (used for normalization)
+    private double minAmp, maxAmp;
+
+    // the key points of each band from complete blocks - only the ones still needed for hashing are kept
+    private ArrayList<ArrayList<KeyPoint>> keyPoints;
+    // the index (in the whole band) of the first key point in keyPoints of each band
+    private int[] keyPointsBase;
+    // the number of complete blocks of each band
+    private int[] blocksDone;
+    // the index of the next target zone to hash in each band
+    private int[] hashedUpTo;
+
+    // the hashes of complete target zones and their times
+    private long[] hashes;
+    private int[] times;
+    private int hashCount;
+    // the number of hashes returned by getNewHashes so far
+    private int returned;
+    // whether finish was called
+    private boolean finished;
+
+    // time spent decoding (filter, down-sample, FFT) and hashing in ms - for logging
+    private long decodeTime, hashTime;
+    // gets the new windows and key points - null if there is none
+    private Listener listener;
+
+    /**
+     * An interface for getting the windows and key points as they are computed.
+     * Its methods are called by the thread which updates the decoder, so they
+     * should return quickly, and they must not change what they are given (the
+     * list of key points is only valid during the call).
+     */
+    public interface Listener {
+        /**
+         * Called when new windows are normalized.
+         *
+         * @param first the time of the first of the windows
+         * @param windows the normalized windows (all 0 for gated windows)
+         */
+        void onWindows(int first, double[][] windows);
+
+        /**
+         * Called when the key points of complete blocks of a band are extracted.
+         *
+         * @param band the band
+         * @param points the new key points, ordered by time
+         */
+        void onKeyPoints(int band, List<KeyPoint> points);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param format the format of the input - 44.1 kHz 16 bit signed PCM, mono or stereo
+     * @param gate whether to skip windows which cannot produce useful key points (silence, noise)
+     */
+    public StreamDecoder(AudioFormat format, boolean gate) {
+        this.format = format;
+        this.gate = gate;
+
+        // one filter per channel
+        IirFilterCoefficients coefficients = AudioUtils.getLowPassCoefficients(format.getSampleRate());
+        filters = new IirFilter[format.getChannels()];
+        for(int i = 0; i < filters.length; i ++) {
+            filters[i] = new IirFilter(coefficients);
+        }
+
+        // 4 frames at 44.1 kHz make up one sample at 11025 Hz
+        groupSize = format.getFrameSize() * 4;
+
+        pending = new byte[groupSize];
+        pendingLength = 0;
+        samples = new double[AudioUtils.WINDOW_SIZE];
+        sampleCount = 0;
+        inputImag = new double[AudioUtils.WINDOW_SIZE];
+
+        rawWindows = new ArrayList<>();
+        windows = new ArrayList<>();
+        windowsBase = 0;
+        windowCount = 0;
+        maxAmp = Double.MIN_VALUE;
+        minAmp = Double.MAX_VALUE;
+
+        keyPoints = new ArrayList<>();
+        for(int band = 0; band < AudioFingerprint.BANDS; band ++) {
+            keyPoints.add(new ArrayList<>());
+        }
+        keyPointsBase = new int[AudioFingerprint.BANDS];
+        blocksDone = new int[AudioFingerprint.BANDS];
+        hashedUpTo = new int[AudioFingerprint.BANDS];
+
+        hashes = new long[1024];
+        times = new int[1024];
+        hashCount = 0;
+    }
+
+    /**
+     * A method to decode the next chunk of audio. It filters, converts to mono,
+     * down-samples and applies FFT to as many complete windows as there are. Whatever
+     * is left is kept until the next chunk.
+     *
+     * @param data the raw audio
+     * @param offset the index of the first byte of the chunk
+     * @param length the length of the chunk
+     */
+    public void feed(byte[] data, int offset, int length) {
+        long start = System.currentTimeMillis();
+
+        // complete the group which was left from the last chunk
+        if(pendingLength > 0) {
+            int toCopy = Math.min(groupSize - pendingLength, length);
+            System.arraycopy(data, offset, pending, pendingLength, toCopy);
+            pendingLength += toCopy;
+            offset += toCopy;
+            length -= toCopy;
+            if(pendingLength < groupSize) return;
+            decodeGroups(pending, 0, groupSize);
+            pendingLength = 0;
+        }
+
+        // decode all complete groups and keep the rest
+        int complete = length - length % groupSize;
+        if(complete > 0) decodeGroups(data, offset, complete);
+        System.arraycopy(data, offset + complete, pending, 0, length - complete);
+        pendingLength = length - complete;
+
+        decodeTime += System.currentTimeMillis() - start;
+    }
+
+    /**
+     * A method to get the fingerprint of all of the audio so far. The hashes
+     * of complete target zones are computed only once, the rest are computed
+     * each time.
+     *
+     * @return the fingerprint
+     */
+    public Fingerprint getFingerprint() {
+        return getFingerprint(0);
+    }
+
+    /**
+     * A method to get the fingerprint of the audio from a given window to now.
+     *
+     * @param fromWindow the time (window) of the first anchor point to include
+     * @return the fingerprint
+     */
+    public Fingerprint getFingerprint(int fromWindow) {
+        update();
+
+        // the hashes which will not change (they are in order of band, not time)
+        long[] resultHashes = new long[hashCount];
+        int[] resultTimes = new int[hashCount];
+        int count = 0;
+        for(int i = 0; i < hashCount; i ++) {
+            if(times[i] >= fromWindow) {
+                resultHashes[count] = hashes[i];
+                resultTimes[count] = times[i];
+                count ++;
+            }
+        }
+
+        // the hashes which use the key points of the incomplete blocks
+        Fingerprint tail = getProvisionalHashes(fromWindow);
+
+        long[] allHashes = Arrays.copyOf(resultHashes, count + tail.size());
+        int[] allTimes = Arrays.copyOf(resultTimes, count + tail.size());
+        System.arraycopy(tail.getHashes(), 0, allHashes, count, tail.size());
+        System.arraycopy(tail.getTimes(), 0, allTimes, count, tail.size());
+
+        return new Fingerprint(allHashes, allTimes);
+    }
+
+    /**
+     * A method to get the hashes which will not change (the ones whose target
+     * zones are made of key points from complete blocks only) and have not been
+     * returned by this method before. Used to look up every hash only once while
+     * the audio is still coming.
+     *
+     * @return the new hashes
+     */
+    public Fingerprint getNewHashes() {
+        update();
+        Fingerprint result = new Fingerprint(Arrays.copyOfRange(hashes, returned, hashCount),
+                Arrays.copyOfRange(times, returned, hashCount));
+        returned = hashCount;
+        return result;
+    }
+
+    /**
+     * A method to get the hashes which use the key points of the last, incomplete
+     * block of windows of each band. They are computed each time this method is called
+     * and can be different the next time (if there is more audio). There are none after
+     * finish is called.
+     *
+     * @param fromWindow the time (window) of the first anchor point to include
+     * @return the provisional hashes
+     */
+    public Fingerprint getProvisionalHashes(int fromWindow) {
+        update();
+        long start = System.currentTimeMillis();
+
+        ArrayList<Long> tailHashes = new ArrayList<>();
+        ArrayList<Integer> tailTimes = new ArrayList<>();
+        if(!finished) {
+            double[][] in = getWindowsArray();
+            for(int band = 0; band < AudioFingerprint.BANDS; band ++) {
+                ArrayList<KeyPoint> bandPoints = new ArrayList<>(keyPoints.get(band));
+                AudioFingerprint.findPeaks(in, blocksDone[band] * AudioFingerprint.BAND_SIZES[band] - windowsBase,
+                        windowCount - windowsBase, band, windowsBase, bandPoints);
+                hashZones(band, bandPoints, bandPoints.size() + keyPointsBase[band], tailHashes, tailTimes,
+                        fromWindow);
+            }
+        }
+
+        hashTime += System.currentTimeMillis() - start;
+        return new Fingerprint(tailHashes.stream().mapToLong(Long::longValue).toArray(),
+                tailTimes.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * A method to call when there is no more audio. The last, incomplete blocks
+     * are treated as complete so all hashes become final (and are returned by the next
+     * getNewHashes). Nothing should be fed after it.
+     */
+    public void finish() {
+        if(finished) return;
+        update();
+        long start = System.currentTimeMillis();
+
+        double[][] in = getWindowsArray();
+        for(int band = 0; band < AudioFingerprint.BANDS; band ++) {
+            ArrayList<KeyPoint> bandPoints = keyPoints.get(band);
+            AudioFingerprint.findPeaks(in, blocksDone[band] * AudioFingerprint.BAND_SIZES[band] - windowsBase,
+                    windowCount - windowsBase, band, windowsBase, bandPoints);
+
+            ArrayList<Long> newHashes = new ArrayList<>();
+            ArrayList<Integer> newTimes = new ArrayList<>();
+            hashedUpTo[band] = hashZones(band, bandPoints, bandPoints.size() + keyPointsBase[band], newHashes,
+                    newTimes, 0);
+            for(int i = 0; i < newHashes.size(); i ++) {
+                addHash(newHashes.get(i), newTimes.get(i));
+            }
+        }
+        finished = true;
+
+        hashTime += System.currentTimeMillis() - start;
+    }
+
+    /**
+     * A method to set what gets the windows and key points as they are computed.
+     *
+     * @param listener the listener, or null for none
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return the total number of FFT windows so far
+     */
+    public int getWindowCount() {
+        return windowCount + rawWindows.size();
+    }
+
+    /**
+     * @return the duration of the decoded audio in seconds
+     */
+    public double getDuration() {
+        return getWindowCount() * getWindowDuration();
+    }
+
+    /**
+     * @return the duration of one FFT window in seconds
+     */
+    public static double getWindowDuration() {
+        return AudioUtils.WINDOW_DURATION;
+    }
+
+    /**
+     * @return the number of windows skipped by the gate so far
+     */
+    public int getSkippedWindows() {
+        update();
+        return skippedWindows;
+    }
+
+    /**
+     * @return the time spent filtering, down-sampling and applying FFT so far (ms)
+     */
+    public long getDecodeTime() {
+        return decodeTime;
+    }
+
+    /**
+     * @return the time spent extracting key points and hashing so far (ms)
+     */
+    public long getHashTime() {
+        return hashTime;
+    }
+
+    /**
+     * A method to filter, convert to mono and down-sample complete groups of
+     * frames and apply FFT to the windows they complete.
+     *
+     * @param data the raw audio
+     * @param offset the index of the first byte
+     * @param length a multiple of groupSize
+     */
+    private void decodeGroups(byte[] data, int offset, int length) {
+        int frames = length / format.getFrameSize();
+
+        // Step 1: apply the low-pass filter (the same way the filtered audio input stream does)
+        float[][] channels = new float[filters.length][frames];
+        AudioIo.unpackAudioStreamBytes(format, data, offset, channels, 0, frames);
+        for(int c = 0; c < filters.length; c ++) {
+            for(int i = 0; i < frames; i ++) {
+                channels[c][i] = (float) filters[c].step(channels[c][i]);
+            }
+        }
+        byte[] filtered = new byte[length];
+        AudioIo.packAudioStreamBytes(format, channels, 0, filtered, 0, frames);
+
+        // Step 2: convert to mono if stereo
+        byte[] mono = filtered;
+        if(format.getChannels() == 2) mono = AudioUtils.doubleBitWiseCompression(filtered);
+
+        // Step 3: down-sample to 11025 Hz
+        byte[] downSampled = AudioUtils.doubleBitWiseCompression(AudioUtils.doubleBitWiseCompression(mono));
+
+        // Step 4: convert to double and apply FFT to every complete window
+        for(int i = 0; 2*i+1 < downSampled.length; i ++) {
+            samples[sampleCount++] = (short)((downSampled[2*i+1] & 0xff) << 8) | (downSampled[2*i] & 0xff);
+            if(sampleCount == samples.length) {
+                // silent windows are not FFT-ed at all when gating
+                if(gate && AudioUtils.isSilent(samples, 0)) rawWindows.add(null);
+                else rawWindows.add(AudioUtils.fftWindow(samples, 0, inputImag));
+                sampleCount = 0;
+            }
+        }
+    }
+
+    /**
+     * A method to normalize the new windows, extract the key points of the
+     * blocks they complete and hash the target zones those complete. It is called
+     * by getFingerprint, but calling it after every few chunks keeps the memory
+     * used low when the fingerprint is only needed at the end.
+     */
+    public void update() {
+        if(rawWindows.isEmpty() || finished) return;
+        long start = System.currentTimeMillis();
+
+        // Step 1: normalize the new windows with the max and min amplitude so far
+        boolean[] gated = new boolean[rawWindows.size()];
+        for(int i = 0; i < gated.length; i ++) {
+            double[] window = rawWindows.get(i);
+            if(window == null) {
+                gated[i] = true;
+                continue;
+            }
+            gated[i] = gate && AudioUtils.isFlat(window);
+            for(double amp : window) {
+                if (amp > maxAmp)
+                    maxAmp = amp;
+                else if (amp < minAmp)
+                    minAmp = amp;
+            }
+        }
+        double[][] newWindows = rawWindows.toArray(new double[0][]);
+        AudioUtils.normalize(newWindows, minAmp, maxAmp);
+
+        // the gated windows are all 0
+        for(int i = 0; i < gated.length; i ++) {
+            if(gated[i]) {
+                newWindows[i] = new double[AudioUtils.WINDOW_SIZE / 2];
+                skippedWindows ++;
+            }
+        }
+        windows.addAll(Arrays.asList(newWindows));
+        if(listener != null) listener.onWindows(windowCount, newWindows);
+        windowCount += newWindows.length;
+        rawWindows.clear();
+
+        // Step 2: extract the key points from the complete blocks and hash the complete zones
+        double[][] in = getWindowsArray();
+        int oldest = windowCount;
+        for(int band = 0; band < AudioFingerprint.BANDS; band ++) {
+            int size = AudioFingerprint.BAND_SIZES[band];
+            int from = blocksDone[band] * size;
+            int to = windowCount / size * size;
+            if(to > from) {
+                int found = keyPoints.get(band).size();
+                AudioFingerprint.findPeaks(in, from - windowsBase, to - windowsBase, band, windowsBase,
+                        keyPoints.get(band));
+                blocksDone[band] = to / size;
+                if(listener != null) {
+                    listener.onKeyPoints(band, keyPoints.get(band).subList(found, keyPoints.get(band).size()));
+                }
+            }
+            oldest = Math.min(oldest, blocksDone[band] * size);
+
+            // the zones which will not change are the ones with all of their points from complete blocks
+            ArrayList<Long> newHashes = new ArrayList<>();
+            ArrayList<Integer> newTimes = new ArrayList<>();
+            ArrayList<KeyPoint> bandPoints = keyPoints.get(band);
+            int total = bandPoints.size() + keyPointsBase[band];
+            hashedUpTo[band] = hashZones(band, bandPoints, total, newHashes, newTimes, 0);
+            for(int i = 0; i < newHashes.size(); i ++) {
+                addHash(newHashes.get(i), newTimes.get(i));
+            }
+
+            // forget the key points which will not be in a zone anymore
+            int toForget = Math.min(hashedUpTo[band] - keyPointsBase[band], bandPoints.size());
+            if(toForget > 0) {
+                bandPoints.subList(0, toForget).clear();
+                keyPointsBase[band] += toForget;
+            }
+        }
+
+        // forget the windows which are not part of an incomplete block anymore
+        if(oldest > windowsBase) {
+            windows.subList(0, oldest - windowsBase).clear();
+            windowsBase = oldest;
+        }
+
+        hashTime += System.currentTimeMillis() - start;
+    }
+
+    /**
+     * A method to hash all target zones of a band which have not been hashed yet and
+     * fit in the given key points. It uses the same zones as AudioFingerprint.hash when
+     * hashing all.
+     *
+     * @param band the band
+     * @param bandPoints the key points of the band starting at keyPointsBase[band]
+     * @param total the index of the last key point + 1 (in the whole band)
+     * @param outHashes where to put the hashes
+     * @param outTimes where to put the times of the hashes
+     * @param fromWindow zones anchored before this window are skipped
+     * @return the index of the next zone to be hashed
+     */
+    private int hashZones(int band, ArrayList<KeyPoint> bandPoints, int total, ArrayList<Long> outHashes,
+                          ArrayList<Integer> outTimes, int fromWindow) {
+        int zoneSize = MyTargetZone.ZONE_SIZE;
+        int base = keyPointsBase[band];
+        int i = hashedUpTo[band];
+        for(; i < total - (zoneSize + 1); i ++) {
+            KeyPoint[] zone = bandPoints.subList(i - base, i - base + zoneSize + 1).toArray(new KeyPoint[0]);
+            if(zone[0].getTime() < fromWindow) continue;
+            ArrayList<Long> zoneHashes = new MyTargetZone(zone).getHashes();
+            outHashes.addAll(zoneHashes);
+            for(int j = 0; j < zoneHashes.size(); j ++) {
+                outTimes.add(zone[0].getTime());
+            }
+        }
+        return i;
+    }
+
+    /**
+     * A method to add a hash to the hashes which will not change
+     *
+     * @param hash the hash
+     * @param time its anchor time
+     */
+    private void addHash(long hash, int time) {
+        if(hashCount == hashes.length) {
+            hashes = Arrays.copyOf(hashes, hashCount * 2);
+            times = Arrays.copyOf(times, hashCount * 2);
+        }
+        hashes[hashCount] = hash;
+        times[hashCount] = time;
+        hashCount ++;
+    }
+
+    /**
+     * @return the normalized windows which are kept, as an array
+     */
+    private double[][] getWindowsArray() {
+        return windows.toArray(new double[0][]);
+    }
+}
@@ -0,0 +1,124 @@
+package model.engine.datastructures;
+
+import java.util.Arrays;
+
+/**
+ * A simple data structure to store the fingerprint of a piece of audio.
+ * It stores the hashes and, for each hash, the time (the FFT window) of the
+ * anchor point of the target zone it was generated from. The times are what
+ * allows the matching to align the hashes of an input with the hashes of a song.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class Fingerprint {
+    // the hashes
+    private long[] hashes;
+    // the anchor time of each hash
+    private int[] times;
+
+    /**
+     * Constructor
+     *
+     * @param hashes the hashes
+     * @param times the anchor time of each of the hashes
+     */
+    public Fingerprint(long[] hashes, int[] times) {
+        this.hashes = hashes;
+        this.times = times;
+    }
+
+    /**
+     * A method to get only the hashes whose anchor point is in a given
+     * frequency range. It is used to get a smaller, cheaper to look up
+     * part of the fingerprint.
+     *
+     * @param frequencyFloor the lowest frequency bin (inclusive)
+     * @param frequencyCeil the highest frequency bin (exclusive)
+     * @return a new fingerprint containing only the hashes in the range
+     */
+    public Fingerprint subset(int frequencyFloor, int frequencyCeil) {
+        long[] subsetHashes = new long[hashes.length];
+        int[] subsetTimes = new int[times.length];
+        int count = 0;
+
+        for(int i = 0; i < hashes.length; i ++) {
+            int frequency = MyTargetZone.getAnchorFrequency(hashes[i]);
+            if(frequency >= frequencyFloor && frequency < frequencyCeil) {
+                subsetHashes[count] = hashes[i];
+                subsetTimes[count] = times[i];
+                count ++;
+            }
+        }
+
+        return new Fingerprint(Arrays.copyOf(subsetHashes, count), Arrays.copyOf(subsetTimes, count));
+    }
+
+    /**
+     * A method to get the same fingerprint with the hashes in order of
+     * their time. It is needed for range.
+     *
+     * @return a new fingerprint sorted by time
+     */
+    public Fingerprint sortByTime() {
+        // sort the time and index of each hash together (time in the high bits)
+        long[] keys = new long[hashes.length];
+        for(int i = 0; i < hashes.length; i ++) {
+            keys[i] = ((long) times[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        long[] sortedHashes = new long[hashes.length];
+        int[] sortedTimes = new int[times.length];
+        for(int i = 0; i < keys.length; i ++) {
+            int index = (int) keys[i];
+            sortedHashes[i] = hashes[index];
+            sortedTimes[i] = times[index];
+        }
+
+        return new Fingerprint(sortedHashes, sortedTimes);
+    }
+
+    /**
+     * A method to get only the hashes whose anchor point is in a given
+     * time range. The fingerprint must be sorted by time (see sortByTime).
+     * The times of the result are not changed.
+     *
+     * @param fromTime the first FFT window (inclusive)
+     * @param toTime the last FFT window (exclusive)
+     * @return a new fingerprint containing only the hashes in the range
+     */
+    public Fingerprint range(int fromTime, int toTime) {
+        int from = firstIndexOf(fromTime);
+        int to = firstIndexOf(toTime);
+        return new Fingerprint(Arrays.copyOfRange(hashes, from, to), Arrays.copyOfRange(times, from, to));
+    }
+
+    /**
+     * @param time a time (FFT window)
+     * @return the index of the first hash with a time >= the given one (times must be sorted)
+     */
+    private int firstIndexOf(int time) {
+        int low = 0, high = times.length;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(times[middle] < time) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /** Setters and Getters: */
+
+    public long[] getHashes() {
+        return hashes;
+    }
+
+    public int[] getTimes() {
+        return times;
+    }
+
+    public int size() {
+        return hashes.length;
+    }
+}
@@ -2,14 +2,15 @@ package model.engine.datastructures;
 
 /**
  * A simple class to store a keypoint from the spectrogram.
- * It stores its time (x) and frequency (y)
+ * It stores its time (x) and frequency (y). It is immutable, as
+ * key points are shared (e.g. by the SpectrogramCache).
  *
  * @version 1.0
  * @author Martin Todorov
  */
 public class KeyPoint {
-    private int time;
-    private int frequency;
+    private final int time;
+    private final int frequency;
 
     /**
      * Constructor
@@ -31,8 +32,4 @@ public class KeyPoint {
     public int getFrequency() {
         return frequency;
     }
-
-    public void setFrequency(int frequency) {
-        this.frequency = frequency;
-    }
 }
\ No newline at end of file
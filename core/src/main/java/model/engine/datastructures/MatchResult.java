@@ -0,0 +1,251 @@
+package model.engine.datastructures;
+
+import model.engine.AudioUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A data structure to store the result of matching an input against
+ * the DB. It stores the best candidate songs (best first), whether the
+ * best one had enough aligned hashes to be considered a match and how much
+ * time each step of the computation took.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class MatchResult {
+    // the duration of an FFT window in seconds (see AudioUtils)
+    public static final double WINDOW_DURATION = AudioUtils.WINDOW_DURATION;
+
+    // the candidates, best first
+    private ArrayList<Candidate> candidates;
+    // whether the best candidate is a match
+    private boolean isMatch;
+    // the duration of the input and where it begins in its recording (seconds) - the start is 0
+    // unless the input is a window of a longer recording whose hashes keep the times of the recording
+    private double duration, start;
+    // the number of FFT windows of the input skipped because of silence or noise
+    private int skippedWindows;
+    // step -> time taken (ms), in order of execution
+    private LinkedHashMap<String, Long> timings;
+
+    /**
+     * Constructor for an empty result (no match)
+     */
+    public MatchResult() {
+        candidates = new ArrayList<>();
+        isMatch = false;
+        timings = new LinkedHashMap<>();
+    }
+
+    /**
+     * A method to add a candidate. Candidates should be added best first.
+     *
+     * @param candidate the candidate
+     */
+    public void addCandidate(Candidate candidate) {
+        candidates.add(candidate);
+    }
+
+    /**
+     * A method to record how long a step of the computation took
+     *
+     * @param step the name of the step
+     * @param millis the time taken (ms)
+     */
+    public void addTiming(String step, long millis) {
+        timings.merge(step, millis, Long::sum);
+    }
+
+    /**
+     * @return the title of the matched song or null if there was no match
+     */
+    public String getBestMatch() {
+        return isMatch ? candidates.get(0).getTitle() : null;
+    }
+
+    /**
+     * @return the best candidate or null if there were no candidates
+     */
+    public Candidate getBest() {
+        return candidates.isEmpty() ? null : candidates.get(0);
+    }
+
+    /**
+     * @return the position in the matched song at the end of the input (seconds from the
+     * beginning of the song) i.e. how far the song has gone if the input is live. The offset of a
+     * candidate is relative to the time 0 of the recording, so the end of the input is start + duration.
+     */
+    public double getSongPosition() {
+        return candidates.isEmpty() ? 0 : candidates.get(0).getOffset() + start + duration;
+    }
+
+    /**
+     * @return a short human readable summary of the result
+     */
+    @Override
+    public String toString() {
+        if(!isMatch) return "No match";
+        Candidate best = candidates.get(0);
+        int position = (int) getSongPosition();
+        return best.getTitle() + " (" + Math.round(best.getConfidence() * 100) + "% confidence, at " +
+                position / 60 + ":" + String.format("%02d", position % 60) + ")";
+    }
+
+    /**
+     * @return the result as a JSON object - whether it is a match, the duration and
+     * skipped windows of the input, the candidates (best first) and the timings (ms)
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"match\":").append(isMatch)
+                .append(",\"duration\":").append(jsonNumber(duration))
+                .append(",\"skippedWindows\":").append(skippedWindows)
+                .append(",\"candidates\":[");
+        for(int i = 0; i < candidates.size(); i ++) {
+            Candidate candidate = candidates.get(i);
+            if(i > 0) json.append(",");
+            json.append("{\"songId\":").append(candidate.songId)
+                    .append(",\"title\":").append(jsonString(candidate.title))
+                    .append(",\"score\":").append(candidate.score)
+                    .append(",\"hits\":").append(candidate.hits)
+                    .append(",\"confidence\":").append(jsonNumber(candidate.confidence))
+                    .append(",\"offset\":").append(jsonNumber(candidate.offset)).append("}");
+        }
+        json.append("],\"timings\":{");
+        boolean first = true;
+        for(Map.Entry<String, Long> timing : timings.entrySet()) {
+            if(!first) json.append(",");
+            json.append(jsonString(timing.getKey())).append(":").append(timing.getValue());
+            first = false;
+        }
+        return json.append("}}").toString();
+    }
+
+    /**
+     * @param value a string (or null)
+     * @return the string as a JSON string
+     */
+    public static String jsonString(String value) {
+        if(value == null) return "null";
+        StringBuilder json = new StringBuilder("\"");
+        for(char c : value.toCharArray()) {
+            if(c == '"' || c == '\\') json.append('\\').append(c);
+            else if(c < 0x20) json.append(String.format("\\u%04x", (int) c));
+            else json.append(c);
+        }
+        return json.append("\"").toString();
+    }
+
+    /**
+     * @param value a number
+     * @return the number as a JSON number (3 decimals)
+     */
+    public static String jsonNumber(double value) {
+        if(Double.isNaN(value) || Double.isInfinite(value)) return "null";
+        return String.valueOf(Math.round(value * 1000) / 1000.0);
+    }
+
+    /** Setters and Getters: */
+
+    public List<Candidate> getCandidates() {
+        return candidates;
+    }
+
+    public boolean isMatch() {
+        return isMatch;
+    }
+
+    public void setMatch(boolean match) {
+        isMatch = match;
+    }
+
+    public double getDuration() {
+        return duration;
+    }
+
+    public void setDuration(double duration) {
+        this.duration = duration;
+    }
+
+    public double getStart() {
+        return start;
+    }
+
+    public void setStart(double start) {
+        this.start = start;
+    }
+
+    public int getSkippedWindows() {
+        return skippedWindows;
+    }
+
+    public void setSkippedWindows(int skippedWindows) {
+        this.skippedWindows = skippedWindows;
+    }
+
+    public Map<String, Long> getTimings() {
+        return timings;
+    }
+
+    /**
+     * A candidate song for a match
+     */
+    public static class Candidate {
+        private int songId;
+        private String title;
+        private int score;
+        private int hits;
+        private double confidence;
+        private double offset;
+
+        /**
+         * Constructor
+         *
+         * @param songId the id of the song in the DB
+         * @param title the title of the song
+         * @param score the number of hashes aligned at the best offset
+         * @param hits the number of hashes found in the song (aligned or not)
+         * @param confidence between 0 and 1 - how much better it is than the other candidates
+         * @param offset the time in the song minus the time in the recording of the aligned hashes (seconds) -
+         *               where in the song the recording would begin. It is where the input begins in the song
+         *               only if the input begins at 0 of the recording (see getStart)
+         */
+        public Candidate(int songId, String title, int score, int hits, double confidence, double offset) {
+            this.songId = songId;
+            this.title = title;
+            this.score = score;
+            this.hits = hits;
+            this.confidence = confidence;
+            this.offset = offset;
+        }
+
+        /** Setters and Getters: */
+
+        public int getSongId() {
+            return songId;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        public int getHits() {
+            return hits;
+        }
+
+        public double getConfidence() {
+            return confidence;
+        }
+
+        public double getOffset() {
+            return offset;
+        }
+    }
+}
@@ -81,4 +81,15 @@ public class MyTargetZone implements TargetZone {
 
         return resultList;
     }
+
+    /**
+     * A method to get the frequency of the anchor point back from a hash.
+     * The anchor frequency is stored in the most significant digits.
+     *
+     * @param hash a hash generated by this class
+     * @return the frequency bin of the anchor point
+     */
+    public static int getAnchorFrequency(long hash) {
+        return (int) (hash / 10000000000000000L);
+    }
 }
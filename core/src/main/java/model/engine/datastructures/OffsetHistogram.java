@@ -0,0 +1,157 @@
+package model.engine.datastructures;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A data structure used when matching. For every song that had a hash
+ * in common with the input it counts how many times each time offset
+ * (the time of the hash in the song minus the time of the hash in the input)
+ * occurred. Hashes which really come from the song all share (almost) the same
+ * offset, while random collisions are spread around - so the score of a song
+ * is the size of its biggest group of aligned hashes rather than its raw hit count.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class OffsetHistogram {
+    // how many FFT windows an offset can drift and still count as aligned
+    public static final int TOLERANCE = 1;
+
+    // song id -> (offset -> count)
+    private HashMap<Integer, HashMap<Integer, Integer>> histograms;
+    // song id -> total number of hits (aligned or not)
+    private HashMap<Integer, Integer> hits;
+
+    /**
+     * Constructor
+     */
+    public OffsetHistogram() {
+        histograms = new HashMap<>();
+        hits = new HashMap<>();
+    }
+
+    /**
+     * A method to record a hit - a hash of the input which was found
+     * in a song.
+     *
+     * @param songId the id of the song
+     * @param offset the time of the hash in the song minus its time in the input
+     */
+    public void add(int songId, int offset) {
+        histograms.computeIfAbsent(songId, k -> new HashMap<>()).merge(offset, 1, Integer::sum);
+        hits.merge(songId, 1, Integer::sum);
+    }
+
+    /**
+     * A method to take back a hit recorded with add - used to count hits
+     * which may still change in one result only, without copying the histogram.
+     *
+     * @param songId the id of the song
+     * @param offset the offset the hit was recorded with
+     */
+    public void remove(int songId, int offset) {
+        HashMap<Integer, Integer> histogram = histograms.get(songId);
+        if(histogram == null || !histogram.containsKey(offset)) return;
+
+        int count = histogram.get(offset) - 1;
+        if(count > 0) histogram.put(offset, count);
+        else histogram.remove(offset);
+        if(histogram.isEmpty()) histograms.remove(songId);
+
+        int total = hits.get(songId) - 1;
+        if(total > 0) hits.put(songId, total);
+        else hits.remove(songId);
+    }
+
+    /**
+     * A method to get the score of a song - the number of hits in the
+     * most popular offset (including its neighbours within TOLERANCE).
+     *
+     * @param songId the id of the song
+     * @return the score or 0 if the song had no hits
+     */
+    public int getScore(int songId) {
+        return getBestBin(songId)[1];
+    }
+
+    /**
+     * A method to get the most popular offset of a song. That is
+     * where in the song the input begins (in FFT windows).
+     *
+     * @param songId the id of the song
+     * @return the offset or 0 if the song had no hits
+     */
+    public int getOffset(int songId) {
+        return getBestBin(songId)[0];
+    }
+
+    /**
+     * @param songId the id of the song
+     * @return the total number of hits for the song, aligned or not
+     */
+    public int getHits(int songId) {
+        return hits.getOrDefault(songId, 0);
+    }
+
+    /**
+     * A method to get the songs with the highest scores
+     *
+     * @param n the maximum number of songs to return
+     * @return the ids of the songs, best first
+     */
+    public int[] getTopSongs(int n) {
+        ArrayList<int[]> scores = new ArrayList<>();
+        for(int songId : histograms.keySet()) {
+            scores.add(new int[] {songId, getScore(songId)});
+        }
+        scores.sort((a, b) -> b[1] != a[1] ? Integer.compare(b[1], a[1]) : Integer.compare(a[0], b[0]));
+
+        int[] result = new int[Math.min(n, scores.size())];
+        for(int i = 0; i < result.length; i ++) {
+            result[i] = scores.get(i)[0];
+        }
+        return result;
+    }
+
+    /**
+     * @return the id of the song with the highest score or 0 if there were no hits
+     */
+    public int getBestSong() {
+        int[] top = getTopSongs(1);
+        return top.length == 0 ? 0 : top[0];
+    }
+
+    /**
+     * @return true if no hits have been recorded
+     */
+    public boolean isEmpty() {
+        return histograms.isEmpty();
+    }
+
+    /**
+     * Finds the offset with the most hits, counting the hits of the
+     * offsets within TOLERANCE of it as well.
+     *
+     * @param songId the id of the song
+     * @return {offset, count}
+     */
+    private int[] getBestBin(int songId) {
+        HashMap<Integer, Integer> histogram = histograms.get(songId);
+        int[] best = {0, 0};
+        if(histogram == null) return best;
+
+        for(Map.Entry<Integer, Integer> entry : histogram.entrySet()) {
+            int count = 0;
+            for(int d = -TOLERANCE; d <= TOLERANCE; d ++) {
+                count += histogram.getOrDefault(entry.getKey() + d, 0);
+            }
+            if(count > best[1] || (count == best[1] && entry.getKey() < best[0])) {
+                best[0] = entry.getKey();
+                best[1] = count;
+            }
+        }
+        return best;
+    }
+}
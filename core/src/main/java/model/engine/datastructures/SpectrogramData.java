@@ -0,0 +1,96 @@
+package model.engine.datastructures;
+
+/**
+ * A class to store what is needed to draw the spectrogram of a song -
+ * its FFT results quantised to a byte per point (0 - 255 for 0 - 1) and
+ * its key points by band. A quantised spectrogram is 8 times smaller than
+ * the FFT results, which is plenty for drawing.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class SpectrogramData {
+    // the quantised amplitudes - the first dimension is the window, the second the frequency bin
+    private byte[][] amplitudes;
+    // the key points by band
+    private KeyPoint[][] keyPoints;
+
+    /**
+     * Constructor
+     *
+     * @param amplitudes the quantised amplitudes by window and frequency bin
+     * @param keyPoints the key points by band
+     */
+    public SpectrogramData(byte[][] amplitudes, KeyPoint[][] keyPoints) {
+        this.amplitudes = amplitudes;
+        this.keyPoints = keyPoints;
+    }
+
+    /**
+     * A method to quantise FFT results (normalized between 0 and 1).
+     *
+     * @param FFTResults the FFT results
+     * @param keyPoints the key points extracted from them
+     * @return the spectrogram data
+     */
+    public static SpectrogramData quantise(double[][] FFTResults, KeyPoint[][] keyPoints) {
+        int bins = 0;
+        for(double[] window : FFTResults) {
+            if(window != null) bins = Math.max(bins, window.length);
+        }
+
+        byte[][] amplitudes = new byte[FFTResults.length][bins];
+        for(int i = 0; i < FFTResults.length; i ++) {
+            if(FFTResults[i] == null) continue; // a silent window
+            for(int j = 0; j < FFTResults[i].length; j ++) {
+                amplitudes[i][j] = (byte) quantise(FFTResults[i][j]);
+            }
+        }
+        return new SpectrogramData(amplitudes, keyPoints);
+    }
+
+    /**
+     * @param amplitude an amplitude (normalized between 0 and 1)
+     * @return the quantised amplitude (0 - 255)
+     */
+    public static int quantise(double amplitude) {
+        return (int) Math.round(Math.max(0, Math.min(1, amplitude)) * 255);
+    }
+
+    /**
+     * @param window the window (time)
+     * @param bin the frequency bin
+     * @return the quantised amplitude of the point (0 - 255)
+     */
+    public int getAmplitude(int window, int bin) {
+        return amplitudes[window][bin] & 0xff;
+    }
+
+    /**
+     * @return the approximate size of the data in memory in bytes
+     */
+    public long getSize() {
+        long size = 0;
+        for(byte[] window : amplitudes) size += window.length + 16;
+        for(KeyPoint[] band : keyPoints) size += band.length * 24L;
+        return size;
+    }
+
+    /** Setters and Getters: */
+
+    public byte[][] getAmplitudes() {
+        return amplitudes;
+    }
+
+    public KeyPoint[][] getKeyPoints() {
+        return keyPoints;
+    }
+
+    public int getWindows() {
+        return amplitudes.length;
+    }
+
+    public int getBins() {
+        return amplitudes.length == 0 ? 0 : amplitudes[0].length;
+    }
+}
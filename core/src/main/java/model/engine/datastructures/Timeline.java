@@ -0,0 +1,168 @@
+package model.engine.datastructures;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A data structure to store the songs found in a long recording (a DJ set,
+ * a radio broadcast etc.) and when each of them plays. It is built from the
+ * match results of consecutive (possibly overlapping) windows of the recording -
+ * consecutive windows matched to the same song are merged into one segment.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class Timeline {
+    // the segments in order of time
+    private ArrayList<Segment> segments;
+    // windows further apart than this (seconds) are never merged
+    private double maxGap;
+
+    /**
+     * Constructor
+     *
+     * @param maxGap the longest gap (seconds) between two windows matched to the same
+     *               song for them to still be merged in one segment
+     */
+    public Timeline(double maxGap) {
+        this.segments = new ArrayList<>();
+        this.maxGap = maxGap;
+    }
+
+    /**
+     * A method to add the result of a window of the recording. Windows must
+     * be added in order of their start. If the window is matched to the same song
+     * as the last segment (and close enough to it) the segment is extended, if it
+     * is matched to another song a new segment begins. Unmatched windows are ignored.
+     *
+     * @param result the match result of the window
+     * @param start the start of the window in the recording (seconds)
+     * @param end the end of the window in the recording (seconds)
+     */
+    public void add(MatchResult result, double start, double end) {
+        if(!result.isMatch()) return;
+        MatchResult.Candidate best = result.getBest();
+
+        Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if(last != null && last.songId == best.getSongId() && start - last.end <= maxGap) {
+            last.end = Math.max(last.end, end);
+            last.windows ++;
+            last.confidence = Math.max(last.confidence, best.getConfidence());
+        } else {
+            // the offset is relative to the start of the recording - the segment begins start seconds later
+            segments.add(new Segment(best.getSongId(), best.getTitle(), start, end, best.getOffset() + start,
+                    best.getConfidence()));
+        }
+    }
+
+    /**
+     * @return the timeline as one line per segment - "start - end  title"
+     */
+    @Override
+    public String toString() {
+        if(segments.isEmpty()) return "No songs found.";
+        StringBuilder result = new StringBuilder();
+        for(Segment segment : segments) {
+            result.append(formatTime(segment.start)).append(" - ").append(formatTime(segment.end))
+                    .append("  ").append(segment.title).append("\n");
+        }
+        return result.toString().trim();
+    }
+
+    /**
+     * @return the timeline as a JSON array of the segments in order of time
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("[");
+        for(int i = 0; i < segments.size(); i ++) {
+            Segment segment = segments.get(i);
+            if(i > 0) json.append(",");
+            json.append("{\"songId\":").append(segment.songId)
+                    .append(",\"title\":").append(MatchResult.jsonString(segment.title))
+                    .append(",\"start\":").append(MatchResult.jsonNumber(segment.start))
+                    .append(",\"end\":").append(MatchResult.jsonNumber(segment.end))
+                    .append(",\"songOffset\":").append(MatchResult.jsonNumber(segment.songOffset))
+                    .append(",\"confidence\":").append(MatchResult.jsonNumber(segment.confidence))
+                    .append(",\"windows\":").append(segment.windows).append("}");
+        }
+        return json.append("]").toString();
+    }
+
+    /**
+     * @param seconds a time in seconds
+     * @return the time as h:mm:ss
+     */
+    private static String formatTime(double seconds) {
+        int time = (int) seconds;
+        return time / 3600 + ":" + String.format("%02d", time / 60 % 60) + ":" + String.format("%02d", time % 60);
+    }
+
+    /** Setters and Getters: */
+
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * A song playing for a period of the recording
+     */
+    public static class Segment {
+        private int songId;
+        private String title;
+        private double start;
+        private double end;
+        private double songOffset;
+        private double confidence;
+        private int windows;
+
+        /**
+         * Constructor
+         *
+         * @param songId the id of the song in the DB
+         * @param title the title of the song
+         * @param start the start of the segment in the recording (seconds)
+         * @param end the end of the segment in the recording (seconds)
+         * @param songOffset where in the song the segment begins (seconds from the beginning of the song)
+         * @param confidence the confidence of the match
+         */
+        public Segment(int songId, String title, double start, double end, double songOffset, double confidence) {
+            this.songId = songId;
+            this.title = title;
+            this.start = start;
+            this.end = end;
+            this.songOffset = songOffset;
+            this.confidence = confidence;
+            this.windows = 1;
+        }
+
+        /** Setters and Getters: */
+
+        public int getSongId() {
+            return songId;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public double getStart() {
+            return start;
+        }
+
+        public double getEnd() {
+            return end;
+        }
+
+        public double getSongOffset() {
+            return songOffset;
+        }
+
+        public double getConfidence() {
+            return confidence;
+        }
+
+        public int getWindows() {
+            return windows;
+        }
+    }
+}
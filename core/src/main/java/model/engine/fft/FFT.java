@@ -1,5 +1,8 @@
 package model.engine.fft;
 
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 /**
  * DISCLAIMER: This code is not mine, the author is
  * mentioned below. The source of this file is:
@@ -9,6 +12,9 @@ package model.engine.fft;
  *
  */
 public class FFT {
+    // logger
+    private final static Logger logger = Logger.getLogger(FFT.class.getName());
+
     /**
      * The Fast Fourier Transform (generic version, with NO optimizations).
      *
@@ -32,7 +38,7 @@ public class FFT {
         // Here I check if n is a power of 2. If exist decimals in ld, I quit
         // from the function returning null.
         if (((int) ld) - ld != 0) {
-            System.out.println("The number of elements is not a power of 2.");
+            logger.log(Level.WARNING, "The number of elements is not a power of 2.");
             return null;
         }
 
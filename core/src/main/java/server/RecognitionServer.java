@@ -0,0 +1,411 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import model.audio.AudioSource;
+import model.audio.PcmSource;
+import model.audio.StreamSource;
+import model.concurrent.ExecutionMode;
+import model.db.DBFingerprint;
+import model.engine.AudioDecoder;
+import model.engine.datastructures.Fingerprint;
+import model.engine.datastructures.MatchResult;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A local HTTP service which recognises songs - the server side of the client-server
+ * design, on the HTTP server of the JDK. It has three endpoints:
+ * - POST /match - the body is a WAV file, or raw 16 bit signed little-endian PCM at 44.1 kHz with the
+ * number of channels in the query (?channels=1 or 2, 2 by default). At most MAX_SECONDS of it are matched
+ * adaptively (the first 5 seconds first, then 10, then all - see AudioDecoder.decodeStreamAndMatchAdaptive);
+ * - POST /match/hashes - the body is a pre-computed fingerprint - (hash, time) pairs, each a long and an int
+ * (big-endian, like the files of the app). Only the DB is looked up;
+ * - GET /stats - the counters of the service.
+ * ?mic=true treats the input as a recording from a microphone (more tolerant matching).
+ *
+ * A match answers with the result as JSON (see MatchResult.toJson) and the latency of the request split into
+ * the time it waited for a worker (queue), the time its body took to read (read), the time it took to match
+ * (match) and the total - also in the Server-Timing header, so load tools can show it.
+ *
+ * The requests are matched by a fixed pool of workers and wait for one in a queue of a given depth. A request
+ * which comes when all workers are busy and the queue is full is shed at once with 503 (and Retry-After) instead
+ * of waiting, so the latency of the accepted requests stays bounded when the service is overloaded. The HTTP
+ * thread only admits the requests - the body is read by the worker.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class RecognitionServer {
+    // statics:
+    private static final Logger logger;
+    private static final int MAX_SECONDS, MAX_BODY, RETRY_AFTER;
+    private static final int[] ATTEMPTS;
+    static {
+        logger = Logger.getLogger(RecognitionServer.class.getName());
+        MAX_SECONDS = 30;                           // the most audio matched per request (seconds)
+        ATTEMPTS = new int[] {5, 10, MAX_SECONDS};  // seconds matched before going further
+        MAX_BODY = 16 * 1024 * 1024;                // the largest body accepted (bytes)
+        RETRY_AFTER = 1;                            // seconds a shed client is told to wait
+    }
+
+    // the HTTP server and the workers
+    private HttpServer server;
+    private ThreadPoolExecutor workers;
+    // the size of the pool and the depth of the queue
+    private int threads, queueDepth;
+    // the counters - requests admitted, shed, answered (any status) and failed (500)
+    private AtomicLong accepted, rejected, completed, failed;
+    // the total and the highest latency of the answered requests (ms)
+    private AtomicLong totalLatency, maxLatency;
+
+    /**
+     * Constructor - the service does not listen until start is called
+     *
+     * @param host the address to listen on (e.g. localhost)
+     * @param port the port to listen on
+     * @param threads the number of workers
+     * @param queueDepth the number of requests which can wait for a worker (0 - none)
+     * @throws IOException if the address cannot be used
+     */
+    public RecognitionServer(String host, int port, int threads, int queueDepth) throws IOException {
+        this.threads = threads;
+        this.queueDepth = queueDepth;
+        accepted = new AtomicLong();
+        rejected = new AtomicLong();
+        completed = new AtomicLong();
+        failed = new AtomicLong();
+        totalLatency = new AtomicLong();
+        maxLatency = new AtomicLong();
+
+        AtomicInteger count = new AtomicInteger();
+        BlockingQueue<Runnable> queue = queueDepth > 0 ? new ArrayBlockingQueue<>(queueDepth) : new SynchronousQueue<>();
+        workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, queue, runnable -> {
+            Thread thread = ExecutionMode.newWorker(runnable, "recognition-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.createContext("/match", exchange -> admit(exchange, false));
+        server.createContext("/match/hashes", exchange -> admit(exchange, true));
+        server.createContext("/stats", this::stats);
+        server.createContext("/", exchange -> send(exchange, 404, error("Not found")));
+    }
+
+    /**
+     * A method to start listening.
+     */
+    public void start() {
+        server.start();
+        logger.log(Level.INFO, "Recognition service listening on " + server.getAddress() + " with " + threads +
+                " workers and a queue of " + queueDepth);
+    }
+
+    /**
+     * A method to stop listening. The requests which are being matched are answered
+     * (for at most a second), the ones which are waiting are dropped.
+     */
+    public void stop() {
+        server.stop(1);
+        workers.shutdownNow();
+        logger.log(Level.INFO, "Recognition service stopped " + getStats());
+    }
+
+    /**
+     * A method to admit a match request (on the HTTP thread) - it is queued for a
+     * worker or shed if there is no room.
+     *
+     * @param exchange the request
+     * @param hashes whether the body is a fingerprint (or audio)
+     */
+    private void admit(HttpExchange exchange, boolean hashes) {
+        long arrival = System.currentTimeMillis(); // used for the latency of the request
+
+        if(!isExactPath(exchange)) {
+            send(exchange, 404, error("Not found"));
+            return;
+        }
+        if(!exchange.getRequestMethod().equals("POST")) {
+            exchange.getResponseHeaders().set("Allow", "POST");
+            send(exchange, 405, error("Use POST"));
+            return;
+        }
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        if(length != null && length.matches("\\d+") && Long.parseLong(length) > MAX_BODY) {
+            send(exchange, 413, error("The body is larger than " + MAX_BODY + " bytes"));
+            return;
+        }
+
+        try {
+            workers.execute(() -> match(exchange, hashes, arrival));
+            accepted.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            // all workers are busy and the queue is full - shed it
+            rejected.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf(RETRY_AFTER));
+            send(exchange, 503, error("Overloaded - try again later"));
+        }
+    }
+
+    /**
+     * A method to match a request (on a worker) and answer it.
+     *
+     * @param exchange the request
+     * @param hashes whether the body is a fingerprint (or audio)
+     * @param arrival the time the request came (ms)
+     */
+    private void match(HttpExchange exchange, boolean hashes, long arrival) {
+        long start = System.currentTimeMillis(); // used for the latency of the request
+        long queue = start - arrival;
+
+        try {
+            Map<String, String> query = getQuery(exchange);
+            boolean isMic = Boolean.parseBoolean(query.get("mic"));
+
+            // Step 1: read the body
+
+            byte[] body = readBody(exchange.getRequestBody());
+            if(body == null) {
+                send(exchange, 413, error("The body is larger than " + MAX_BODY + " bytes"));
+                return;
+            }
+            if(body.length == 0) {
+                send(exchange, 400, error("The body is empty"));
+                return;
+            }
+            long read = System.currentTimeMillis() - start;
+
+            // Step 2: match it
+
+            long matchStart = System.currentTimeMillis();
+            MatchResult result;
+            if(hashes) {
+                Fingerprint fingerprint = readFingerprint(body);
+                if(fingerprint == null) {
+                    send(exchange, 400, error("The body is not (long hash, int time) pairs"));
+                    return;
+                }
+                result = new MatchResult();
+                int last = 0;
+                for(int time : fingerprint.getTimes()) last = Math.max(last, time);
+                result.setDuration((last + 1) * MatchResult.WINDOW_DURATION);
+                DBFingerprint.lookForMatches(fingerprint, isMic, result);
+            } else {
+                AudioSource source;
+                try {
+                    source = getSource(body, query);
+                } catch (UnsupportedAudioFileException | IllegalArgumentException e) {
+                    send(exchange, 415, error(e.getMessage() + " - send 16 bit PCM at 44.1 kHz, mono or stereo"));
+                    return;
+                }
+                result = AudioDecoder.decodeStreamAndMatchAdaptive(source, isMic, ATTEMPTS);
+            }
+            long match = System.currentTimeMillis() - matchStart;
+
+            // Step 3: answer with the result and the latency
+
+            long total = System.currentTimeMillis() - arrival;
+            exchange.getResponseHeaders().set("Server-Timing", "queue;dur=" + queue + ", read;dur=" + read +
+                    ", match;dur=" + match + ", total;dur=" + total);
+            send(exchange, 200, "{\"result\":" + result.toJson() + ",\"latency\":{\"queue\":" + queue +
+                    ",\"read\":" + read + ",\"match\":" + match + ",\"total\":" + total + "}}");
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Exception thrown while matching a request " + e);
+            failed.incrementAndGet();
+            send(exchange, 500, error(e.toString()));
+        } finally {
+            long latency = System.currentTimeMillis() - arrival;
+            completed.incrementAndGet();
+            totalLatency.addAndGet(latency);
+            maxLatency.accumulateAndGet(latency, Math::max);
+        }
+    }
+
+    /**
+     * A method to answer GET /stats with the counters of the service.
+     *
+     * @param exchange the request
+     */
+    private void stats(HttpExchange exchange) {
+        if(isExactPath(exchange)) send(exchange, 200, getStats());
+        else send(exchange, 404, error("Not found"));
+    }
+
+    /**
+     * A method to check that a request is for the path of its context itself - the
+     * contexts match by prefix, so e.g. /matchx and /match/other would reach /match.
+     *
+     * @param exchange the request
+     * @return true if the path of the request is the path of its context
+     */
+    private static boolean isExactPath(HttpExchange exchange) {
+        return exchange.getRequestURI().getPath().equals(exchange.getHttpContext().getPath());
+    }
+
+    /**
+     * @return the counters of the service as JSON
+     */
+    public String getStats() {
+        long done = completed.get();
+        return "{\"threads\":" + threads + ",\"queueDepth\":" + queueDepth + ",\"active\":" +
+                workers.getActiveCount() + ",\"queued\":" + workers.getQueue().size() + ",\"accepted\":" +
+                accepted.get() + ",\"rejected\":" + rejected.get() + ",\"completed\":" + done + ",\"failed\":" +
+                failed.get() + ",\"meanLatency\":" + (done == 0 ? 0 : totalLatency.get() / done) +
+                ",\"maxLatency\":" + maxLatency.get() + "}";
+    }
+
+    /**
+     * A method to read the body of a request, up to MAX_BODY bytes.
+     *
+     * @param in the body
+     * @return the body, or null if it is larger than MAX_BODY
+     * @throws IOException if it cannot be read
+     */
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        int n;
+        try {
+            while((n = in.read(buffer)) != -1) {
+                body.write(buffer, 0, n);
+                if(body.size() > MAX_BODY) return null;
+            }
+        } finally {
+            try { in.close(); } catch (Exception e) { /* ignored */ }
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * A method to get the audio of a request - a WAV file (it begins with RIFF)
+     * or raw PCM at 44.1 kHz.
+     *
+     * @param body the body of the request
+     * @param query the query of the request (channels - for raw PCM)
+     * @return the audio
+     * @throws UnsupportedAudioFileException if it is a WAV file which cannot be read
+     * @throws IllegalArgumentException if the format is not supported
+     * @throws IOException if it cannot be read
+     */
+    private static AudioSource getSource(byte[] body, Map<String, String> query) throws
+            UnsupportedAudioFileException, IOException {
+        boolean isWav = body.length >= 4 && body[0] == 'R' && body[1] == 'I' && body[2] == 'F' && body[3] == 'F';
+        if(!isWav) {
+            int channels;
+            try {
+                channels = Integer.parseInt(query.getOrDefault("channels", "2"));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("channels is not a number");
+            }
+            if(channels != 1 && channels != 2) throw new IllegalArgumentException(channels + " channels");
+            return new PcmSource(body, new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, 44100, 16, channels,
+                    2 * channels, 44100, false));
+        }
+
+        AudioInputStream ais = AudioSystem.getAudioInputStream(new ByteArrayInputStream(body));
+        AudioFormat format = ais.getFormat();
+        if(!format.getEncoding().equals(AudioFormat.Encoding.PCM_SIGNED) || format.getSampleSizeInBits() != 16 ||
+                format.getSampleRate() != 44100 || format.getChannels() > 2 || format.isBigEndian()) {
+            throw new IllegalArgumentException("Unsupported format " + format);
+        }
+        return new StreamSource(ais);
+    }
+
+    /**
+     * A method to read a fingerprint - (hash, time) pairs, each a long and an int (big-endian).
+     *
+     * @param body the body of the request
+     * @return the fingerprint, or null if the body is not pairs
+     * @throws IOException if it cannot be read
+     */
+    private static Fingerprint readFingerprint(byte[] body) throws IOException {
+        int pairSize = Long.BYTES + Integer.BYTES;
+        if(body.length % pairSize != 0) return null;
+
+        int count = body.length / pairSize;
+        long[] hashes = new long[count];
+        int[] times = new int[count];
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        for(int i = 0; i < count; i ++) {
+            hashes[i] = in.readLong();
+            times[i] = in.readInt();
+            if(times[i] < 0) return null;
+        }
+        return new Fingerprint(hashes, times);
+    }
+
+    /**
+     * @param exchange the request
+     * @return the parameters of the query of the request
+     */
+    private static Map<String, String> getQuery(HttpExchange exchange) {
+        Map<String, String> query = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if(raw == null) return query;
+        for(String parameter : raw.split("&")) {
+            int equals = parameter.indexOf('=');
+            if(equals > 0) query.put(parameter.substring(0, equals), parameter.substring(equals + 1));
+        }
+        return query;
+    }
+
+    /**
+     * @param message the error
+     * @return the error as JSON
+     */
+    private static String error(String message) {
+        return "{\"error\":" + MatchResult.jsonString(message) + "}";
+    }
+
+    /**
+     * A method to answer a request with JSON and close it.
+     *
+     * @param exchange the request
+     * @param status the HTTP status
+     * @param json the body of the answer
+     */
+    private static void send(HttpExchange exchange, int status, String json) {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not answer a request " + e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /** Setters and Getters: */
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+}
@@ -0,0 +1,58 @@
+package model.concurrent;
+
+import model.audio.PacedSource;
+import model.audio.SyntheticSource;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the live path (see LiveRecognition) without sound hardware - generated
+ * audio is paced in real time, the way a microphone delivers it. They do not use
+ * the DB: the tests point it at an address where nothing listens (db.url in the test
+ * task of build.gradle), so every lookup fails at once and nothing is matched whether
+ * MySQL runs on the machine or not, but the capture, the decoding and the hops run as
+ * they do when listening.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class LiveRecognitionTest {
+    // statics:
+    private static final long SEED;
+    private static final double SECONDS;
+    static {
+        SEED = 7;       // the generated audio
+        SECONDS = 4;    // the length of the generated audio
+    }
+
+    @Test
+    public void listensToPacedInputAtTheRateOfTheHops() throws InterruptedException {
+        LiveRecognition recognition = new LiveRecognition(new PacedSource(new SyntheticSource(SEED, SECONDS, 0.05)));
+        recognition.listen(() -> false);
+        int hop = LiveRecognition.getHop();
+
+        // the input comes no faster than real time, and listening ends when it is over
+        assertTrue("listened for " + recognition.getListeningTime() + "ms",
+                recognition.getListeningTime() >= SECONDS * 1000 - hop);
+        assertTrue("listened for " + recognition.getListeningTime() + "ms",
+                recognition.getListeningTime() < SECONDS * 1000 + 10 * hop);
+
+        // a hop every HOP ms, and most of them keep up with the input
+        assertTrue("only " + recognition.getHops() + " hops", recognition.getHops() >= SECONDS * 1000 / hop - 2);
+        assertTrue(recognition.getLateHops() + " of " + recognition.getHops() + " hops were late (longest " +
+                recognition.getLongestHop() + "ms)", recognition.getLateHops() * 2 < recognition.getHops());
+    }
+
+    @Test
+    public void stopsWhenAsked() throws InterruptedException {
+        LiveRecognition recognition = new LiveRecognition(new PacedSource(new SyntheticSource(SEED, SECONDS, 0.05)));
+
+        assertNull(recognition.listen(() -> true));
+        assertEquals(0, recognition.getHops());
+        assertEquals(-1, recognition.getTimeToMatch());
+        assertTrue(recognition.toJson(null).contains("\"timeToMatchMs\":-1"));
+    }
+}
@@ -0,0 +1,148 @@
+package model.engine;
+
+import model.audio.SyntheticSource;
+import model.concurrent.ExecutionMode;
+import model.engine.datastructures.Fingerprint;
+import model.engine.datastructures.KeyPoint;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the decoding split in chunks (see AudioUtils.forEachChunk) gives exactly
+ * the same results as doing it serially - in parallel on the common pool and one chunk
+ * at a time on a thread of a bounded pool. The generated audio is long enough for several
+ * chunks of every step (FFT windows, peak search and hashing).
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class ChunkedDecodingTest {
+    // statics:
+    private static final long SEED;
+    private static final double SECONDS;
+    static {
+        SEED = 11;      // the generated audio
+        SECONDS = 125;  // the length of the generated audio - its samples are used as if at
+                        // SAMPLE_RATE, so it is ~5300 windows (more than a PEAK_CHUNK)
+    }
+
+    @Test
+    public void chunkedFFTIsTheSameAsSerial() throws Exception {
+        double[] audio = generate();
+
+        double[][] parallel = AudioUtils.applyFFT(audio);
+        double[][] onWorker = onWorker(() -> AudioUtils.applyFFT(audio));
+        double[][] serial = serialFFT(audio);
+
+        assertTrue(serial.length + " windows", serial.length > 2 * 512);
+        assertEquals(serial.length, parallel.length);
+        for(int i = 0; i < serial.length; i ++) {
+            assertArrayEquals(serial[i], parallel[i], 0);
+            assertArrayEquals(serial[i], onWorker[i], 0);
+        }
+    }
+
+    @Test
+    public void chunkedKeyPointsAndHashesAreTheSameAsSerial() throws Exception {
+        double[][] FFTResults = AudioUtils.applyFFT(generate());
+
+        KeyPoint[][] parallel = AudioFingerprint.extractKeyPoints(FFTResults);
+        KeyPoint[][] onWorker = onWorker(() -> AudioFingerprint.extractKeyPoints(FFTResults));
+        assertEquals(AudioFingerprint.BANDS, parallel.length);
+        for(int band = 0; band < AudioFingerprint.BANDS; band ++) {
+            List<KeyPoint> serial = new ArrayList<>();
+            AudioFingerprint.findPeaks(FFTResults, 0, FFTResults.length, band, 0, serial);
+            assertSamePoints(serial, parallel[band]);
+            assertSamePoints(serial, onWorker[band]);
+        }
+
+        for(boolean hashAll : new boolean[] {false, true}) {
+            Fingerprint hashed = AudioFingerprint.hash(parallel, hashAll);
+            Fingerprint serial = onWorker(() -> AudioFingerprint.hash(parallel, hashAll));
+            assertTrue(hashed.size() + " hashes", hashed.size() > 2048);
+            assertArrayEquals(serial.getHashes(), hashed.getHashes());
+            assertArrayEquals(serial.getTimes(), hashed.getTimes());
+        }
+    }
+
+    /**
+     * @return the samples of the generated audio
+     */
+    private static double[] generate() {
+        SyntheticSource source = new SyntheticSource(SEED, SECONDS, 0.05);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[65536];
+        int n;
+        source.start();
+        while((n = source.read(buffer, 0, buffer.length)) > 0) {
+            bytes.write(buffer, 0, n);
+        }
+        source.close();
+        return AudioUtils.byteToDoubleArr(bytes.toByteArray());
+    }
+
+    /**
+     * The FFT of all windows one by one, with the amplitudes found the way they always were.
+     *
+     * @param audio the samples
+     * @return the normalized FFT results
+     */
+    private static double[][] serialFFT(double[] audio) {
+        int windows = (audio.length - AudioUtils.WINDOW_SIZE) / AudioUtils.WINDOW_SIZE;
+        double[][] results = new double[windows][];
+        double[] inputImag = new double[AudioUtils.WINDOW_SIZE];
+        double maxAmp = Double.MIN_VALUE, minAmp = Double.MAX_VALUE;
+        for(int i = 0; i < windows; i ++) {
+            results[i] = AudioUtils.fftWindow(audio, i * AudioUtils.WINDOW_SIZE, inputImag);
+            for(double amp : results[i]) {
+                if(amp > maxAmp) {
+                    maxAmp = amp;
+                } else if(amp < minAmp) {
+                    minAmp = amp;
+                }
+            }
+        }
+        AudioUtils.normalize(results, minAmp, maxAmp);
+        return results;
+    }
+
+    /**
+     * A method to run some work on a thread of a bounded pool, where it is not split over the processors.
+     *
+     * @param work the work
+     * @param <T> the type of its result
+     * @return the result of the work
+     * @throws InterruptedException if the test is interrupted
+     */
+    private static <T> T onWorker(Supplier<T> work) throws InterruptedException {
+        List<T> result = new ArrayList<>();
+        Thread thread = ExecutionMode.newWorker(() -> {
+            assertTrue(ExecutionMode.isWorker());
+            result.add(work.get());
+        }, "test-worker");
+        thread.start();
+        thread.join();
+        assertEquals(1, result.size());
+        return result.get(0);
+    }
+
+    /**
+     * @param expected the key points found serially
+     * @param actual the key points found in chunks
+     */
+    private static void assertSamePoints(List<KeyPoint> expected, KeyPoint[] actual) {
+        assertEquals(expected.size(), actual.length);
+        for(int i = 0; i < actual.length; i ++) {
+            assertEquals(expected.get(i).getTime(), actual[i].getTime());
+            assertEquals(expected.get(i).getFrequency(), actual[i].getFrequency());
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package model.concurrent;
+
+import model.concurrent.task.DecodeTask;
+import model.db.DBFingerprint;
+import model.db.DBUtils;
+import model.engine.Constellation;
+import model.engine.datastructures.Fingerprint;
+
+import javafx.concurrent.Task;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class runs all song decoding (fingerprinting songs and drawing
+ * spectrograms) in one bounded thread pool instead of a new thread per song -
+ * a pool of as many threads as there are processors and a queue of at most
+ * QUEUE_SIZE waiting songs. A single song (e.g. a click in the GUI) is rejected
+ * if the queue is full. A batch of songs (e.g. all songs which are not in the DB)
+ * goes through the IngestPipeline instead, whose bounded queues make it wait for the
+ * slowest stage, so a folder of thousands of songs never has more than a few songs
+ * in memory at once. A song which is already running or waiting is not submitted again.
+ *
+ * There is only one instance of the service.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class IngestionService {
+    // statics:
+    private static final Logger logger;
+    private static final int THREADS, QUEUE_SIZE;
+    private static IngestionService instance;
+    static {
+        logger = Logger.getLogger(IngestionService.class.getName());
+        THREADS = Runtime.getRuntime().availableProcessors(); // songs decoded at the same time
+        QUEUE_SIZE = 2 * THREADS;                             // songs waiting to be decoded
+    }
+
+    // the pool which decodes the songs
+    private ThreadPoolExecutor executor;
+    // a permit for each song which can be running or waiting
+    private Semaphore permits;
+    // runs the batches - one at a time
+    private ExecutorService batchExecutor;
+    // the songs which are running or waiting
+    private Set<String> inFlight;
+
+    /**
+     * Constructor - use getInstance
+     */
+    private IngestionService() {
+        executor = new ThreadPoolExecutor(THREADS, THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_SIZE), runnable -> {
+                    Thread thread = ExecutionMode.newWorker(runnable, "ingestion");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        permits = new Semaphore(THREADS + QUEUE_SIZE);
+        inFlight = ConcurrentHashMap.newKeySet();
+        batchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ingestion-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the service
+     */
+    public static synchronized IngestionService getInstance() {
+        if(instance == null) instance = new IngestionService();
+        return instance;
+    }
+
+    /**
+     * A method to submit a single song. It does not wait - if there
+     * is no room in the queue (or the song is already queued) the song is rejected.
+     * The task can be used to follow its progress and to cancel it.
+     *
+     * @param task the task decoding the song
+     * @return true if it was accepted and false if the queue is full
+     */
+    public boolean submit(DecodeTask task) {
+        if(!inFlight.add(task.getSong())) {
+            logger.log(Level.WARNING, task.getSong() + " is already queued");
+            return false;
+        }
+        if(!permits.tryAcquire()) {
+            inFlight.remove(task.getSong());
+            logger.log(Level.WARNING, "Ingestion queue is full - rejected " + task.getSong());
+            return false;
+        }
+        execute(task);
+        return true;
+    }
+
+    /**
+     * A method to fingerprint all songs in the music dir which are not
+     * in the DB yet, in the background, through the ingest pipeline. Only one batch
+     * runs at a time. Cancelling the returned task stops the pipeline.
+     *
+     * The batch is resumable - every song gets an ingest state (see DBIngest) and is committed
+     * together with its hashes, so if a batch is cancelled or the app crashes, the next batch
+     * only decodes the songs which were not committed (the ones which failed are skipped).
+     * The songs to fingerprint are found by the LibraryScanner, so a song whose file was renamed
+     * or copied is not fingerprinted again and a song whose file changed is.
+     *
+     * @param onFingerprinted called (from a worker thread) with the name of each song which is done
+     * @return the task running the batch - its value is the number of songs fingerprinted
+     */
+    public Task<Integer> fingerprintUnindexed(Consumer<String> onFingerprinted) {
+        Task<Integer> batch = new Task<Integer>() {
+            @Override
+            protected Integer call() throws Exception {
+                // the songs in the dir which are new or changed and not failed before
+                List<String> songs = IngestPipeline.getPendingSongs();
+
+                // the songs which were clicked in the meantime are left to the pool
+                songs.removeIf(song -> !inFlight.add(song));
+
+                logger.log(Level.INFO, "Fingerprinting " + songs.size() + " un-indexed songs...");
+
+                // run them through the pipeline - the counter is updated as they are stored
+                int[] done = {0};
+                IngestPipeline pipeline = new IngestPipeline(name -> {
+                    done[0] ++;
+                    updateProgress(done[0], songs.size());
+                    if(onFingerprinted != null) onFingerprinted.accept(name);
+                });
+                try {
+                    pipeline.run(songs);
+                } catch (InterruptedException e) {
+                    // the batch was cancelled - the pipeline is stopped
+                    logger.log(Level.INFO, "Fingerprinting un-indexed songs cancelled.");
+                } finally {
+                    inFlight.removeAll(songs);
+                }
+
+                logger.log(Level.INFO, "Done fingerprinting un-indexed songs! (" + done[0] + " of " +
+                        songs.size() + ")");
+                return done[0];
+            }
+        };
+        batchExecutor.execute(batch);
+        return batch;
+    }
+
+    /**
+     * A method to hash all songs in the DB again from their constellation files (see
+     * Constellation), e.g. after the hashing parameters changed. No audio is decoded -
+     * the songs without a constellation keep their hashes. It runs in the background like
+     * a batch of songs (one batch at a time). Cancelling the returned task stops it after
+     * the current song.
+     *
+     * @return the task re-hashing the songs - its value is the number of songs re-hashed
+     */
+    public Task<Integer> rehashAll() {
+        Task<Integer> rehash = new Task<Integer>() {
+            @Override
+            protected Integer call() {
+                long start = System.currentTimeMillis(); // used for logging speed of re-hashing
+
+                HashMap<String, Integer> songs = DBUtils.getSongIds();
+                logger.log(Level.INFO, "Re-hashing " + songs.size() + " songs from their constellations...");
+
+                int done = 0, skipped = 0;
+                for(Map.Entry<String, Integer> song : songs.entrySet()) {
+                    if(isCancelled()) break;
+
+                    Fingerprint fingerprint = Constellation.rehash(song.getKey());
+                    if(fingerprint != null && DBFingerprint.replaceHashes(song.getValue(), fingerprint)) {
+                        done ++;
+                    } else {
+                        skipped ++;
+                    }
+                    updateProgress(done + skipped, songs.size());
+                }
+
+                // log time taken
+                long end = System.currentTimeMillis();
+                logger.log(Level.INFO, "Done re-hashing " + done + " songs in " + (end-start) + "ms (" +
+                        skipped + " without a constellation)");
+                return done;
+            }
+        };
+        batchExecutor.execute(rehash);
+        return rehash;
+    }
+
+    /**
+     * @return the number of songs which are waiting to be decoded
+     */
+    public int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return the number of songs which are being decoded
+     */
+    public int getActive() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * A method to run a task in the pool. A permit must be acquired and the song must be
+     * added to the songs in flight before calling it - both are released when the task is
+     * done (or cancelled).
+     *
+     * @param task the task
+     */
+    private void execute(DecodeTask task) {
+        executor.execute(() -> {
+            try {
+                task.run();
+                // get throws if the task failed or was cancelled
+                task.get();
+            } catch (CancellationException e) {
+                logger.log(Level.INFO, "Cancelled decoding " + task.getSong());
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "Exception thrown while decoding " + task.getSong() + " " + e);
+            } finally {
+                inFlight.remove(task.getSong());
+                permits.release();
+            }
+        });
+    }
+}
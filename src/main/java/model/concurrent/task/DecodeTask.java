@@ -6,7 +6,9 @@ import model.engine.AudioDecoder;
 /**
  * A task class which is used to invoke the main computation method
  * for decoding a song and populating the DB with its fingerprints
- * to make it recognizable.
+ * to make it recognizable. It reports its progress and it can be cancelled
+ * (nothing is inserted in the DB if it is cancelled before the hashes are ready).
+ * It should be run by the IngestionService rather than in a new thread.
  */
 public class DecodeTask extends Task<Void> {
     // the name of the song
@@ -33,7 +35,13 @@ public class DecodeTask extends Task<Void> {
      */
     @Override
     protected Void call() {
-        AudioDecoder.decodeWav(song, isInDB);
+        AudioDecoder.decodeWav(song, isInDB, progress -> updateProgress(progress, 1));
         return null;
     }
+
+    /** Setters and Getters: */
+
+    public String getSong() {
+        return song;
+    }
 }
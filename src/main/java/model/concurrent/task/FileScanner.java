@@ -0,0 +1,80 @@
+package model.concurrent.task;
+
+import model.concurrent.FileRecognition;
+import model.engine.datastructures.Timeline;
+
+import javafx.concurrent.Task;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class is used for finding all songs in a long recording
+ * (a DJ set, a radio broadcast etc.) and when each of them plays, in the
+ * background of the GUI. Unlike the FileMatcher it does not stop at the first
+ * match - the file is decoded and hashed once and a window slides over the hashes
+ * (see FileRecognition.scan). The progress and the songs found so far are shown
+ * as it goes.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class FileScanner extends Task<String> {
+    // statics:
+    private static final Logger logger;
+    private static final String UNREADABLE;
+    static {
+        logger = Logger.getLogger(FileScanner.class.getName());
+        UNREADABLE = "File could not be read.";
+    }
+
+    // the file
+    private File input;
+    // the songs found so far
+    private Timeline timeline;
+
+    /**
+     * Constructor
+     *
+     * @param input the audio file which is to be scanned
+     * @throws IOException if the file cannot be read
+     * @throws UnsupportedAudioFileException if the file is not audio
+     */
+    public FileScanner(File input) throws IOException, UnsupportedAudioFileException {
+        this.input = input;
+        // fail straight away if it is not audio
+        AudioSystem.getAudioFileFormat(input);
+    }
+
+    /**
+     * The main method of the class. It scans the file, updating the progress
+     * of the task as it goes.
+     *
+     * @return the timeline of the songs found in the file
+     */
+    @Override
+    public String call() {
+        updateMessage("Decoding...");
+        try {
+            timeline = FileRecognition.scan(input, (found, done, total) -> {
+                updateProgress(done, total);
+                updateMessage(found.toString());
+                return !isCancelled();
+            });
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Exception thrown while decoding " + input.getName() + ": " + e);
+            return UNREADABLE;
+        }
+
+        return timeline.toString();
+    }
+
+    /** Setters and Getters: */
+
+    public Timeline getTimeline() {
+        return timeline;
+    }
+}
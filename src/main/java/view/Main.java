@@ -1,7 +1,10 @@
 package view;
 
+import model.concurrent.ExecutionMode;
+import model.concurrent.Startup;
 import model.concurrent.task.MicListener;
 import model.concurrent.task.FileMatcher;
+import model.concurrent.task.FileScanner;
 import model.db.DBUtils;
 import model.engine.AudioDecoder;
 
@@ -23,11 +26,12 @@ import javafx.event.ActionEvent;
 // material design controls
 import com.jfoenix.controls.JFXButton;
 import com.jfoenix.controls.JFXToggleButton;
+import view.audio.LiveSpectrogram;
 import view.audio.SongCatalogue;
 
 import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioSystem;
 import java.io.File;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -47,9 +51,10 @@ public class Main extends Application {
     private final static Logger logger;
     // Strings used for the GUI
     private static final String WIN_TITLE,  BTN_GO,
-                                LISTENING, USE_INPUT_STREAM, CHOOSE_FILE,
+                                LISTENING, USE_INPUT_STREAM, CHOOSE_FILE, SCAN_FILE,
                                 ALERT_ERROR, ALERT_NO_FILE, ALERT_UNSUPPORTED,
-                                COMPARING, INFO_LBL;
+                                COMPARING, SCANNING, INFO_LBL,
+                                DATABASE, CATALOGUE, MUSIC_DIR, WARM_UP;
     static {
         logger = Logger.getLogger(Main.class.getName());
         WIN_TITLE = "Shazam PoC";
@@ -57,11 +62,17 @@ public class Main extends Application {
         LISTENING = "Listening...";
         USE_INPUT_STREAM = "Use microphone instead.";
         CHOOSE_FILE = "Choose File";
+        SCAN_FILE = "Scan Recording";
         ALERT_ERROR = "Error!";
         ALERT_NO_FILE = "No file was selected. Try again.";
         ALERT_UNSUPPORTED = "The selected file's audio format is not supported. Supported format:";
         COMPARING = "Looking for a match...";
+        SCANNING = "Looking for all songs in the recording...";
         INFO_LBL = "Song Catalogue: ";
+        DATABASE = "database";          // the steps of starting (for logging)
+        CATALOGUE = "catalogue";
+        MUSIC_DIR = "music folder";
+        WARM_UP = "warm-up";
     }
 
     // toggle button to switch between mic and input stream
@@ -70,8 +81,12 @@ public class Main extends Application {
     private Button goBtn;
     // prompts the user the select input file to match
     private Button chooseFile;
+    // prompts the user to select a long recording to find all songs in
+    private Button scanFile;
     // logs match status of input
     private Label matchLbl;
+    // shows the microphone input while listening (and after, until the next listening)
+    private LiveSpectrogram liveSpectrogram;
 
     // keep the root so children can be added/removed
     private VBox root;
@@ -88,64 +103,89 @@ public class Main extends Application {
     public void start(Stage stage) {
         logger.log(Level.INFO, "Launching application...");
 
-        // check database connection
-        if(DBUtils.checkConnection()) {
-
-            // get the stage for resizing
-            this.stage = stage;
-
-            // check if the schema exists and create it if not
-            if (!DBUtils.existsDB()) DBUtils.initDB();
-
-            // title label
-            Label infoLbl = new Label(INFO_LBL);
-            infoLbl.setWrapText(true);
-            infoLbl.getStyleClass().add("info-label");
-            infoLbl.setTextAlignment(TextAlignment.CENTER);
-
-            // the song catalogue
-            SongCatalogue songCatalogue = new SongCatalogue();
-
-            // toggle between input stream and microphone
-            useInputStream = new JFXToggleButton();
-            useInputStream.setText(USE_INPUT_STREAM);
-            useInputStream.setOnAction(this::toggleInput);
-            useInputStream.getStyleClass().add("toggle-btn");
-
-            // 'Go' button - for mic
-            goBtn = new JFXButton(BTN_GO);
-            goBtn.setOnAction(this::go);
-            goBtn.getStyleClass().add("go-btn");
-
-            // 'Choose File' button - for input stream
-            chooseFile = new JFXButton(CHOOSE_FILE);
-            chooseFile.setOnAction(this::chooseFile);
-            chooseFile.getStyleClass().add("btn");
-
-            // label to display match status
-            matchLbl = new Label();
-            matchLbl.setWrapText(true);
-            matchLbl.getStyleClass().add("match-label");
-
-            // root pane
-            root = new VBox();
-            root.getChildren().addAll(infoLbl, songCatalogue, useInputStream, chooseFile);
-            root.setAlignment(Pos.CENTER);
-            root.getStyleClass().add("root-pane");
-
-            // scene & stage:
-            Scene scene = new Scene(root);
-            scene.getStylesheets().add(getClass().getResource("style/style.css").toExternalForm());
-
-            stage.setTitle(WIN_TITLE);
-            stage.setScene(scene);
-            stage.show();
-            stage.setMinWidth(600);
-            stage.getIcons().add(new Image(getClass().getResource("./img/icon.ico").toExternalForm()));
-            stage.setOnCloseRequest(e -> Platform.exit());
-
-            logger.log(Level.INFO, "Successfully launched application!");
-        }
+        // the slow parts of starting run in the background, all at once - the window is shown straight away
+        Startup startup = new Startup(DATABASE, CATALOGUE);
+
+        // check the database connection and create the schema if it does not exist (or upgrade it if it is outdated)
+        CompletableFuture<Boolean> database = startup.run(DATABASE, DBUtils::prepareDB);
+        // read the music folder
+        CompletableFuture<String[]> songsInDir = startup.run(MUSIC_DIR, SongCatalogue::scanDir);
+        // compile the code which decodes input before the first input comes
+        startup.run(WARM_UP, Startup::warmUp);
+
+        // get the stage for resizing
+        this.stage = stage;
+
+        // title label
+        Label infoLbl = new Label(INFO_LBL);
+        infoLbl.setWrapText(true);
+        infoLbl.getStyleClass().add("info-label");
+        infoLbl.setTextAlignment(TextAlignment.CENTER);
+
+        // the song catalogue - its songs are loaded once the database is ready
+        SongCatalogue songCatalogue = new SongCatalogue();
+        songCatalogue.setOnLoaded(() -> startup.ready(CATALOGUE));
+
+        // toggle between input stream and microphone
+        useInputStream = new JFXToggleButton();
+        useInputStream.setText(USE_INPUT_STREAM);
+        useInputStream.setOnAction(this::toggleInput);
+        useInputStream.getStyleClass().add("toggle-btn");
+
+        // 'Go' button - for mic
+        goBtn = new JFXButton(BTN_GO);
+        goBtn.setOnAction(this::go);
+        goBtn.getStyleClass().add("go-btn");
+
+        // 'Choose File' button - for input stream
+        chooseFile = new JFXButton(CHOOSE_FILE);
+        chooseFile.setOnAction(this::chooseFile);
+        chooseFile.getStyleClass().add("btn");
+
+        // 'Scan Recording' button - for long input streams
+        scanFile = new JFXButton(SCAN_FILE);
+        scanFile.setOnAction(this::scanFile);
+        scanFile.getStyleClass().add("btn");
+
+        // label to display match status
+        matchLbl = new Label();
+        matchLbl.setWrapText(true);
+        matchLbl.getStyleClass().add("match-label");
+
+        // root pane
+        root = new VBox();
+        root.getChildren().addAll(infoLbl, songCatalogue, useInputStream, chooseFile, scanFile);
+        root.setAlignment(Pos.CENTER);
+        root.getStyleClass().add("root-pane");
+
+        // scene & stage:
+        Scene scene = new Scene(root);
+        scene.getStylesheets().add(getClass().getResource("style/style.css").toExternalForm());
+
+        stage.setTitle(WIN_TITLE);
+        stage.setScene(scene);
+        stage.show();
+        stage.setMinWidth(600);
+        stage.getIcons().add(new Image(getClass().getResource("./img/icon.ico").toExternalForm()));
+        stage.setOnCloseRequest(e -> Platform.exit());
+        startup.shown();
+
+        // matching is enabled when the database is ready
+        enableMatching(false);
+        database.thenAccept(connected -> Platform.runLater(() -> {
+            if(!connected) {
+                logger.log(Level.SEVERE, "Unable to connect to the database or to prepare its schema! Exiting...");
+                System.exit(-1);
+            }
+            enableMatching(true);
+            startup.ready(DATABASE);
+        }));
+        // the catalogue is loaded when the music folder is read too
+        database.thenAcceptBoth(songsInDir, (connected, songs) -> {
+            if(connected) Platform.runLater(() -> songCatalogue.load(songs));
+        });
+
+        logger.log(Level.INFO, "Successfully launched application!");
     }
 
     /**
@@ -169,6 +209,13 @@ public class Main extends Application {
         // disable matching
         enableMatching(false);
 
+        // show the input above the match label
+        removeLiveSpectrogram();
+        root.getChildren().remove(matchLbl);
+        LiveSpectrogram live = new LiveSpectrogram();
+        liveSpectrogram = live;
+        root.getChildren().add(live.getCanvas());
+
         // add the match label if it isn't added already
         addMatchLabel();
 
@@ -178,14 +225,17 @@ public class Main extends Application {
 
             // create the task
             MicListener micListener = new MicListener();
+            micListener.setDecoderListener(live);
             // when its done listening - update label and re-enable matching
             micListener.setOnSucceeded(event -> {
                 enableMatching(true);
+                live.stop();
                 matchLbl.setText(micListener.getValue());
             });
+            live.start();
 
             // begin
-            new Thread(micListener).start();
+            ExecutionMode.start(micListener, "mic-listener");
         }
         catch(Exception exc) {
             logger.log(Level.SEVERE, "Exception thrown while listening: " + exc)  ;
@@ -202,6 +252,77 @@ public class Main extends Application {
      */
     @SuppressWarnings("unused")
     private void chooseFile(ActionEvent e) {
+        File input = chooseInput();
+
+        // input is null if cancel was clicked or the format is not supported
+        if(input != null) {
+            // add a match status label & disable matching until done
+            addMatchLabel();
+            enableMatching(false);
+            matchLbl.setText(COMPARING);
+
+            try {
+                // create the task and start it, passing the input file
+                FileMatcher fileMatcher = new FileMatcher(input);
+                // when done, enable matching and show result on status label
+                fileMatcher.setOnSucceeded(event -> {
+                    enableMatching(true);
+                    matchLbl.setText(fileMatcher.getValue());
+                });
+
+                // begin
+                ExecutionMode.start(fileMatcher, "file-matcher");
+            } catch (Exception exc) {
+                logger.log(Level.SEVERE, "Exception thrown while matching stream " + exc);
+            }
+        }
+    }
+
+    /**
+     * This method is invoked from the scan recording button. It prompts
+     * the user to select an audio file of appropriate format and starts a
+     * Task which finds all songs in it. The songs found so far are displayed
+     * on a label while it runs.
+     *
+     * @param e the scan recording button
+     */
+    @SuppressWarnings("unused")
+    private void scanFile(ActionEvent e) {
+        File input = chooseInput();
+
+        // input is null if cancel was clicked or the format is not supported
+        if(input != null) {
+            // add a match status label & disable matching until done
+            addMatchLabel();
+            enableMatching(false);
+            matchLbl.setText(SCANNING);
+
+            try {
+                // create the task and show the songs found so far on the status label
+                FileScanner fileScanner = new FileScanner(input);
+                fileScanner.messageProperty().addListener((obs, old, message) -> matchLbl.setText(message));
+                // when done, enable matching and show the timeline on status label
+                fileScanner.setOnSucceeded(event -> {
+                    enableMatching(true);
+                    matchLbl.setText(fileScanner.getValue());
+                    stage.sizeToScene();
+                });
+
+                // begin
+                ExecutionMode.start(fileScanner, "file-scanner");
+            } catch (Exception exc) {
+                logger.log(Level.SEVERE, "Exception thrown while scanning stream " + exc);
+            }
+        }
+    }
+
+    /**
+     * A method to prompt the user to select a wav file. If no file was
+     * selected or its format is not supported an alert is shown.
+     *
+     * @return the selected file or null if there is no file of supported format
+     */
+    private File chooseInput() {
         // file chooser for wav files only
         FileChooser.ExtensionFilter wavFilter = new FileChooser.ExtensionFilter("WAV Files", "*.wav");
         FileChooser wavChooser = new FileChooser();
@@ -212,35 +333,15 @@ public class Main extends Application {
         // input is null if cancel was clicked
         if(input != null) {
             // check if the format is supported
-            boolean isFormatSupported = AudioDecoder.checkFormat(input);
-            if(isFormatSupported) {
-                // add a match status label & disable matching until done
-                addMatchLabel();
-                enableMatching(false);
-                matchLbl.setText(COMPARING);
-
-                try {
-                    // create the task and start it, passing the input file
-                    FileMatcher fileMatcher = new FileMatcher(AudioSystem.getAudioInputStream(input));
-                    // when done, enable matching and show result on status label
-                    fileMatcher.setOnSucceeded(event -> {
-                        enableMatching(true);
-                        matchLbl.setText(fileMatcher.getValue());
-                    });
-
-                    // begin
-                    new Thread(fileMatcher).start();
-                } catch (Exception exc) {
-                    logger.log(Level.SEVERE, "Exception thrown while matching stream " + exc);
-                }
-            } else { // audio file of unsupported format - alert
-                AudioFormat format = AudioDecoder.getSupportedFormat();
-                Alert alertUnsupported = new Alert(Alert.AlertType.ERROR);
-                alertUnsupported.setTitle(ALERT_ERROR);
-                alertUnsupported.setHeaderText(null);
-                alertUnsupported.setContentText(ALERT_UNSUPPORTED + format.toString());
-                alertUnsupported.show();
-            }
+            if(AudioDecoder.checkFormat(input)) return input;
+
+            // audio file of unsupported format - alert
+            AudioFormat format = AudioDecoder.getSupportedFormat();
+            Alert alertUnsupported = new Alert(Alert.AlertType.ERROR);
+            alertUnsupported.setTitle(ALERT_ERROR);
+            alertUnsupported.setHeaderText(null);
+            alertUnsupported.setContentText(ALERT_UNSUPPORTED + format.toString());
+            alertUnsupported.show();
         } else { // cancel was click - alert
             Alert alertNoFile = new Alert(Alert.AlertType.ERROR);
             alertNoFile.setTitle(ALERT_ERROR);
@@ -248,6 +349,7 @@ public class Main extends Application {
             alertNoFile.setContentText(ALERT_NO_FILE);
             alertNoFile.show();
         }
+        return null;
     }
 
     /**
@@ -261,6 +363,7 @@ public class Main extends Application {
         useInputStream.setDisable(!enable);
         goBtn.setDisable(!enable);
         chooseFile.setDisable(!enable);
+        scanFile.setDisable(!enable);
     }
 
     /**
@@ -275,12 +378,13 @@ public class Main extends Application {
         boolean isSelected = btn.selectedProperty().get();
 
         root.getChildren().remove(matchLbl);
+        removeLiveSpectrogram();
 
         if(!isSelected) {
             root.getChildren().remove(goBtn);
-            root.getChildren().add(chooseFile);
+            root.getChildren().addAll(chooseFile, scanFile);
         } else {
-            root.getChildren().remove(chooseFile);
+            root.getChildren().removeAll(chooseFile, scanFile);
             root.getChildren().add(goBtn);
         }
 
@@ -290,6 +394,17 @@ public class Main extends Application {
         stage.sizeToScene();
     }
 
+    /**
+     * A method to remove the view of the microphone input if it is shown.
+     */
+    private void removeLiveSpectrogram() {
+        if(liveSpectrogram != null) {
+            liveSpectrogram.stop();
+            root.getChildren().remove(liveSpectrogram.getCanvas());
+            liveSpectrogram = null;
+        }
+    }
+
     /**
      * A method to add the match status label if it isn't added already.
      */
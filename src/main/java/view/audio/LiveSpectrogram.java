@@ -0,0 +1,219 @@
+package view.audio;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import model.engine.SpectrogramRenderer;
+import model.engine.StreamDecoder;
+import model.engine.datastructures.KeyPoint;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A class which shows the spectrogram of input which is still coming (e.g. the
+ * microphone) scrolling from right to left, with its key points marked as they are
+ * found. It listens to the StreamDecoder of the input (see StreamDecoder.Listener).
+ *
+ * The decoder only colours each new window into a column of pixels and queues it, so
+ * it is never held up by the view. Once per frame (AnimationTimer) the queued columns are
+ * written into an image used as a ring buffer - only the new columns are written, the
+ * oldest ones are overwritten - and the image is drawn in two parts so the newest column
+ * is on the right. The windows come in bursts (every time the input is decoded), so they
+ * are shown at the rate of the input rather than as soon as they come, unless more than
+ * MAX_BACKLOG of them are waiting - then the view catches up. If the view cannot keep up at
+ * all (e.g. the window is minimised) the oldest queued columns are dropped.
+ *
+ * Key points come later than their windows (when their block is complete) and are marked
+ * straight into the image, if their column is still in it.
+ *
+ * start and stop should be called from the JavaFX thread.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+public class LiveSpectrogram implements StreamDecoder.Listener {
+    // statics:
+    private static final Logger logger;
+    private static final int WIDTH, HEIGHT, COLUMN_WIDTH, MAX_BACKLOG, MAX_QUEUED, MARK_SIZE;
+    static {
+        logger = Logger.getLogger(LiveSpectrogram.class.getName());
+        WIDTH = 600;            // the size of the view (about 19 seconds of input)
+        HEIGHT = 256;
+        COLUMN_WIDTH = 3;       // the pixels per window
+        MAX_BACKLOG = 8;        // the windows which can wait before the view catches up
+        MAX_QUEUED = 256;       // the windows which can wait before the oldest are dropped
+        MARK_SIZE = 3;          // the size of the mark of a key point (pixels)
+    }
+
+    // the canvas and the image used as a ring buffer
+    private Canvas canvas;
+    private WritableImage image;
+    private PixelWriter writer;
+    // the column of the image the next window is written to
+    private int writeX;
+    // the time of the next window to be written and the number of frequency bins of the windows
+    private int nextWindow, bins;
+    // the coloured windows waiting to be shown - {time, colours...} - and the key points - {time, y}
+    private ConcurrentLinkedQueue<int[]> columns, marks;
+    // the number of windows in columns (the size of the queue is not constant time)
+    private AtomicInteger queued;
+    // the windows due to be shown (they are shown at the rate of the input)
+    private double due;
+    // the time of the last frame (ns) or 0 before the first one
+    private long lastFrame;
+    // the number of columns dropped because the view could not keep up (counted on the decoder thread)
+    private AtomicInteger dropped;
+    // draws a frame every time the screen is refreshed
+    private AnimationTimer timer;
+
+    /**
+     * Constructor
+     */
+    public LiveSpectrogram() {
+        canvas = new Canvas(WIDTH, HEIGHT);
+        image = new WritableImage(WIDTH, HEIGHT);
+        writer = image.getPixelWriter();
+        columns = new ConcurrentLinkedQueue<>();
+        marks = new ConcurrentLinkedQueue<>();
+        queued = new AtomicInteger();
+        dropped = new AtomicInteger();
+        timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                frame(now);
+            }
+        };
+    }
+
+    /**
+     * A method to colour the new windows and queue them (on the thread of the decoder).
+     *
+     * @param first the time of the first of the windows
+     * @param windows the normalized windows (all 0 for gated windows)
+     */
+    @Override
+    public void onWindows(int first, double[][] windows) {
+        for(int i = 0; i < windows.length; i ++) {
+            bins = windows[i].length;
+            int[] colours = SpectrogramRenderer.renderColumn(windows[i], HEIGHT);
+            int[] column = new int[HEIGHT + 1];
+            column[0] = first + i;
+            System.arraycopy(colours, 0, column, 1, HEIGHT);
+            columns.add(column);
+
+            // the view cannot keep up - the oldest are dropped
+            if(queued.incrementAndGet() > MAX_QUEUED && columns.poll() != null) {
+                queued.decrementAndGet();
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * A method to queue the new key points (on the thread of the decoder).
+     *
+     * @param band the band
+     * @param points the new key points, ordered by time
+     */
+    @Override
+    public void onKeyPoints(int band, List<KeyPoint> points) {
+        for(KeyPoint point : points) {
+            int y = (int) ((long) (bins - 1 - point.getFrequency()) * HEIGHT / bins);
+            marks.add(new int[] {point.getTime(), y});
+        }
+    }
+
+    /**
+     * A method to draw a frame - it writes the columns which are due into the
+     * image, marks the new key points and draws the image.
+     *
+     * @param now the time of the frame (ns)
+     */
+    private void frame(long now) {
+        // Step 1: work out how many windows are due since the last frame
+
+        double elapsed = lastFrame == 0 ? 0 : (now - lastFrame) / 1e9;
+        lastFrame = now;
+        int waiting = queued.get();
+        // nothing is saved up while there is nothing to show
+        due = Math.min(due + elapsed / StreamDecoder.getWindowDuration(), waiting);
+        // too far behind the input - catch up
+        if(waiting - due > MAX_BACKLOG) due = waiting - MAX_BACKLOG;
+
+        // Step 2: write them into the ring buffer
+
+        int count = (int) due;
+        due -= count;
+        for(int i = 0; i < count; i ++) {
+            int[] column = columns.poll();
+            if(column == null) break;
+            queued.decrementAndGet();
+            for(int x = 0; x < COLUMN_WIDTH; x ++) {
+                writer.setPixels(writeX + x, 0, 1, HEIGHT, PixelFormat.getIntArgbInstance(), column, 1, 1);
+            }
+            nextWindow = column[0] + 1;
+            writeX = (writeX + COLUMN_WIDTH) % WIDTH;
+        }
+
+        // Step 3: mark the key points of the windows which are shown (the rest wait)
+
+        boolean changed = count > 0;
+        int shown = WIDTH / COLUMN_WIDTH;
+        int size = marks.size();
+        for(int i = 0; i < size; i ++) {
+            int[] mark = marks.poll();
+            if(mark == null) break;
+            if(mark[0] >= nextWindow) {
+                marks.add(mark);
+            } else if(mark[0] >= nextWindow - shown) {
+                // the column of the window - writeX is the column of nextWindow
+                int x = Math.floorMod(writeX - (nextWindow - mark[0]) * COLUMN_WIDTH, WIDTH);
+                int y = Math.max(0, Math.min(HEIGHT - MARK_SIZE, mark[1] - MARK_SIZE / 2));
+                changed = true;
+                for(int j = 0; j < MARK_SIZE; j ++) {
+                    for(int k = 0; k < Math.min(MARK_SIZE, WIDTH - x); k ++) {
+                        writer.setArgb(x + k, y + j, SpectrogramRenderer.getKeyPointColor());
+                    }
+                }
+            }
+        }
+
+        // Step 4: draw the image - the oldest columns (from writeX) first
+
+        if(!changed) return;
+        GraphicsContext context = canvas.getGraphicsContext2D();
+        context.drawImage(image, writeX, 0, WIDTH - writeX, HEIGHT, 0, 0, WIDTH - writeX, HEIGHT);
+        if(writeX > 0) context.drawImage(image, 0, 0, writeX, HEIGHT, WIDTH - writeX, 0, writeX, HEIGHT);
+    }
+
+    /**
+     * A method to start showing the input.
+     */
+    public void start() {
+        timer.start();
+    }
+
+    /**
+     * A method to stop showing the input. What is shown stays.
+     */
+    public void stop() {
+        timer.stop();
+        int lost = dropped.getAndSet(0);
+        if(lost > 0) {
+            logger.log(Level.WARNING, lost + " windows were not shown because the view could not keep up.");
+        }
+    }
+
+    /** Setters and Getters: */
+
+    public Canvas getCanvas() {
+        return canvas;
+    }
+}
@@ -2,45 +2,104 @@ package view.audio;
 
 import com.jfoenix.controls.JFXButton;
 import javafx.animation.ScaleTransition;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.geometry.Pos;
 import javafx.scene.control.Label;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.util.Duration;
+import model.concurrent.IngestionService;
+import model.concurrent.thread.LibraryWatcher;
+import model.db.DBIngest;
 import model.db.DBUtils;
+import model.engine.Constellation;
 import model.engine.AudioUtils;
+import model.concurrent.task.DecodeTask;
 import model.engine.datastructures.Song;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /** A BorderPane class which is used to display all songs
  *  both from the music folder and those who are only in the DB
- *  in the GUI. It supports paging.
+ *  in the GUI. It supports paging and fingerprinting all songs
+ *  which are not in the DB yet at once. It watches the music folder
+ *  and fingerprints the songs which are added or changed.
+ *
+ *  Only the page which is shown is loaded: the songs in the music folder come first (by
+ *  name), each page of them is looked up in the DB with one query, followed by the songs
+ *  which are only in the DB - read from the DB a chunk at a time after the last one shown
+ *  (keyset pagination) and checked against the names in the music folder with a hash lookup.
+ *  The start of each page visited is kept to go back. The rows of the page are made once and
+ *  show the songs of whichever page is shown, so the time and memory used do not grow with the
+ *  number of songs in the DB.
  *
  * @version 1.0
  * @author Martin Todorov
  */
 public class SongCatalogue extends BorderPane {
+    private static final Logger logger;
     // the number of songs to be displayed per page
     private static int MAX_SONGS_PER_PAGE;
+    // the number of songs read from the DB at a time when looking for the songs only in the DB
+    private static final int DB_CHUNK;
+    private static final String FINGERPRINT_ALL, REHASH, LOADING;
     static {
+        logger = Logger.getLogger(SongCatalogue.class.getName());
         MAX_SONGS_PER_PAGE = 5;
+        DB_CHUNK = 500;
+        FINGERPRINT_ALL = "Fingerprint All";
+        REHASH = "Re-hash";
+        LOADING = "Loading songs...";
     }
 
-    // all of the pages
-    private ArrayList<VBox> pages;
+    // the songs in the music dir (sorted) and the same as a set
+    private String[] songsInDir;
+    private HashSet<String> dirSet;
+    // the start of each page visited so far - {index in songsInDir, ID of the last song only in the DB before it}
+    private ArrayList<int[]> pageStarts;
     // current page index
     private int currentIndex;
+    // whether there is a page after the current one
+    private boolean hasNext;
+    // the page and its rows
+    private VBox page;
+    private SongWrap[] rows;
+    // the tasks computing songs by song name (they outlive the rows which started them)
+    private HashMap<String, DecodeTask> tasks;
     // the label that shows which page it is
     private Label pageLabel;
     // prev and next buttons
     private JFXButton prev, next;
+    // the button which fingerprints all songs which are not in the DB
+    private JFXButton fingerprintAll;
+    // the button which hashes all songs again from their constellations
+    private JFXButton rehash;
+    // the task fingerprinting (or re-hashing) all songs (null if it is not running)
+    private Task<Integer> batch;
+    // watches the music folder
+    private LibraryWatcher watcher;
+    // loads the pages in the background
+    private ExecutorService pageLoader;
+    // whether the first page was shown and what to run then
+    private boolean loaded;
+    private Runnable onLoaded;
 
     /**
      * Constructor
@@ -50,90 +109,296 @@ public class SongCatalogue extends BorderPane {
         setPrefWidth(500);
         setMaxWidth(500);
 
-        // get a list of all audio from DB and from Dir
-        LinkedList<Song> listSongs = new LinkedList<>();
+        // the page - its rows are used for every page
+        page = new VBox();
+        page.setSpacing(10);
+        page.setMinHeight(260);
+        page.setAlignment(Pos.CENTER);
+        page.getStyleClass().add("song-grid");
+        tasks = new HashMap<>();
+        rows = new SongWrap[MAX_SONGS_PER_PAGE];
+        for(int i = 0; i < rows.length; i ++) {
+            rows[i] = new SongWrap(tasks);
+            page.getChildren().add(rows[i]);
+        }
+        setCenter(page);
 
-        // get all songs from song dir
-        String[] songsInDir = AudioUtils.scanForSongs();
-        assert songsInDir != null;
-        for(String song : songsInDir) {
-            listSongs.addLast(new Song(song, false, true));
+        // add a page label, to display which page we are at, as a bottom node
+        pageLabel = new Label();
+        pageLabel.getStyleClass().add("page-lbl");
+        setBottom(pageLabel);
+        setAlignment(getBottom(), Pos.CENTER);
+
+        pageLabel.setText(LOADING);
+
+        // add the fingerprint all button as a top node (disabled until the songs are loaded)
+        fingerprintAll = new JFXButton(FINGERPRINT_ALL);
+        fingerprintAll.setOnAction(this::fingerprintAll);
+        fingerprintAll.getStyleClass().add("song-status-btn");
+        fingerprintAll.setDisable(true);
+        HBox top = new HBox(fingerprintAll);
+        top.setSpacing(10);
+        top.setAlignment(Pos.CENTER);
+
+        // songs can only be re-hashed if their constellations were kept
+        if(Constellation.isEnabled()) {
+            rehash = new JFXButton(REHASH);
+            rehash.setOnAction(this::rehash);
+            rehash.getStyleClass().add("song-status-btn");
+            rehash.setDisable(true);
+            top.getChildren().add(rehash);
         }
+        setTop(top);
+        setAlignment(getTop(), Pos.CENTER);
 
-        // get all songs from DB
-        String[] songsInDB = DBUtils.getSongsInDB();
-        if(songsInDB != null) {
-            for (String song : songsInDB) {
-                boolean added = false;
-
-                // if the song is already in the list, only change boolean value
-                for (Song songInList : listSongs) {
-                    if (songInList.getName().equals(song)) {
-                        songInList.setInDB();
-                        added = true;
-                    }
-                }
+        // loads the pages in the background, one at a time
+        pageLoader = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "catalogue-pages");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // style class for the border pane
+        getStyleClass().add("song-catalogue");
+    }
+
+    /**
+     * A method to show the songs once the DB is ready. It loads the first page in
+     * the background, then resumes fingerprinting all songs if it was interrupted and
+     * starts watching the music folder.
+     *
+     * @param songsInDir the songs in the music dir (see scanDir)
+     */
+    public void load(String[] songsInDir) {
+        loadPage(0, () -> songsInDir);
+    }
+
+    /**
+     * A method to list the songs in the music dir by name. It can be
+     * called from any thread.
+     *
+     * @return the songs in the music dir
+     */
+    public static String[] scanDir() {
+        String[] songs = AudioUtils.scanForSongs();
+        if(songs == null) songs = new String[0];
+        Arrays.sort(songs);
+        return songs;
+    }
+
+    /**
+     * A method to load a page in the background and show it when it is loaded.
+     *
+     * @param index the index of the page
+     * @param scan lists the songs in the music dir (e.g. scanDir) if they have to be read
+     *             again (the pages start again from the first) - null to use the ones read before
+     */
+    private void loadPage(int index, Supplier<String[]> scan) {
+        if(prev != null) {
+            prev.setDisable(true);
+            next.setDisable(true);
+        }
+
+        String[] dir = songsInDir;
+        HashSet<String> set = dirSet;
+        int[] pageStart = scan == null ? pageStarts.get(index) : new int[] {0, 0};
+        boolean first = !loaded;
+        Task<LoadedPage> task = new Task<LoadedPage>() {
+            @Override
+            protected LoadedPage call() {
+                long start = System.currentTimeMillis(); // used for logging speed of paging
 
-                // if its not already in the list, add it
-                if (!added) {
-                    listSongs.addLast(new Song(song, true, false));
+                LoadedPage loadedPage = new LoadedPage();
+                loadedPage.songsInDir = scan == null ? dir : scan.get();
+                loadedPage.dirSet = scan == null ? set : new HashSet<>(Arrays.asList(loadedPage.songsInDir));
+                readPage(loadedPage, pageStart);
+
+                // fingerprinting all songs is resumed if it was interrupted (e.g. the app was closed)
+                if(first) {
+                    loadedPage.resume = !DBIngest.getFiles(DBIngest.IN_PROGRESS).isEmpty() ||
+                            !DBIngest.getFiles(DBIngest.PENDING).isEmpty();
                 }
+
+                logger.log(Level.INFO, "Loaded page " + (index + 1) + " in " +
+                        (System.currentTimeMillis() - start) + "ms");
+                return loadedPage;
+            }
+        };
+        task.setOnSucceeded(e -> showPage(index, scan != null, task.getValue()));
+        task.setOnFailed(e -> {
+            logger.log(Level.SEVERE, "Exception thrown while loading page " + (index + 1) + " " + task.getException());
+            if(prev != null) {
+                prev.setDisable(currentIndex == 0);
+                next.setDisable(!hasNext);
             }
+        });
+        pageLoader.execute(task);
+    }
 
-        }
+    /**
+     * A method to read the songs of a page (on the thread loading the page).
+     *
+     * @param loadedPage the page - its songs and the start of the next page are set
+     * @param pageStart the start of the page
+     */
+    private static void readPage(LoadedPage loadedPage, int[] pageStart) {
+        String[] songsInDir = loadedPage.songsInDir;
+        ArrayList<Song> songs = new ArrayList<>();
 
-        // convert to array
-        Song[] songs = listSongs.toArray(new Song[0]);
+        // Step 1: the songs in the music dir - looked up in the DB all at once
 
-        // add prev and next buttons if necessary
-        if(songs.length > MAX_SONGS_PER_PAGE) {
-            addArrowButtons();
+        int dirTo = Math.min(songsInDir.length, pageStart[0] + MAX_SONGS_PER_PAGE + 1);
+        List<String> names = Arrays.asList(songsInDir).subList(pageStart[0], dirTo);
+        HashSet<String> inDB = DBUtils.getSongsInDB(names);
+        for(String name : names) {
+            songs.add(new Song(name, inDB.contains(name), true));
         }
 
-        // init the pages array list
-        pages = new ArrayList<>();
-        currentIndex = 0;
-
-        // loop & create all the pages required
-        for(int i = 0; i < songs.length; i += MAX_SONGS_PER_PAGE) {
-            VBox page = new VBox();
-            page.setSpacing(10);
-            page.setMinHeight(260);
-            page.setAlignment(Pos.CENTER);
-            page.getStyleClass().add("song-grid");
-
-            int lastSongOfPage = MAX_SONGS_PER_PAGE + i;
-            if(lastSongOfPage > songs.length) lastSongOfPage = songs.length;
-            Song[] songsInPage = Arrays.copyOfRange(songs, i, lastSongOfPage);
-
-            // add all of the songs to the page
-            for(Song song : songsInPage) {
-                page.getChildren().add(new SongWrap(song));
+        // Step 2: the songs which are only in the DB, after the last one shown (one more to know if there is a next page)
+
+        int lastId = pageStart[1];
+        int afterId = pageStart[1];
+        while(songs.size() <= MAX_SONGS_PER_PAGE) {
+            LinkedHashMap<Integer, String> chunk = DBUtils.getSongsAfter(afterId, DB_CHUNK);
+            for(Map.Entry<Integer, String> entry : chunk.entrySet()) {
+                afterId = entry.getKey();
+                if(loadedPage.dirSet.contains(entry.getValue())) continue;
+                songs.add(new Song(entry.getValue(), true, false));
+                if(songs.size() > MAX_SONGS_PER_PAGE) break;
+                lastId = afterId;
             }
+            if(chunk.size() < DB_CHUNK) break;
+        }
 
-            // add the page to the list
-            pages.add(page);
+        loadedPage.songs = songs;
+        loadedPage.nextStart = new int[] {Math.min(songsInDir.length, pageStart[0] + MAX_SONGS_PER_PAGE), lastId};
+    }
+
+    /**
+     * A method to show a page which was loaded in the rows.
+     *
+     * @param index the index of the page
+     * @param scanned whether the songs in the music dir were read again
+     * @param loadedPage the page
+     */
+    private void showPage(int index, boolean scanned, LoadedPage loadedPage) {
+        if(scanned) {
+            songsInDir = loadedPage.songsInDir;
+            dirSet = loadedPage.dirSet;
+            pageStarts = new ArrayList<>();
+            pageStarts.add(new int[] {0, 0});
         }
+        currentIndex = index;
 
-        // set the current page (0) to be the center node
-        setCenter(pages.get(currentIndex));
+        // show the songs and remember where the next page starts
+        List<Song> songs = loadedPage.songs;
+        hasNext = songs.size() > MAX_SONGS_PER_PAGE;
+        for(int i = 0; i < rows.length; i ++) {
+            rows[i].setSong(i < songs.size() && i < MAX_SONGS_PER_PAGE ? songs.get(i) : null);
+        }
+        if(hasNext && pageStarts.size() == currentIndex + 1) {
+            pageStarts.add(loadedPage.nextStart);
+        }
 
-        // add a page label, to display which page we are at, as a bottom node
-        pageLabel = new Label();
-        pageLabel.getStyleClass().add("page-lbl");
-        setBottom(pageLabel);
+        // add prev and next buttons if necessary
+        if(prev == null && hasNext) addArrowButtons();
+        if(prev != null) {
+            prev.setDisable(currentIndex == 0);
+            next.setDisable(!hasNext);
+        }
         updatePageLabel();
-        setAlignment(getBottom(), Pos.CENTER);
 
-        // style class for the border pane
-        getStyleClass().add("song-catalogue");
+        // the first page - the rest of the catalogue can be used now
+        if(!loaded) {
+            loaded = true;
+            endFingerprintAll();
+            if(loadedPage.resume) fingerprintAll(null);
+
+            // show and fingerprint the songs which are added to (or changed in) the music folder
+            watcher = new LibraryWatcher(() -> Platform.runLater(() -> {
+                loadPage(0, SongCatalogue::scanDir);
+                if(batch == null) fingerprintAll(null);
+            }));
+            watcher.start();
+
+            if(onLoaded != null) onLoaded.run();
+        }
+    }
+
+    /**
+     * A method which fingerprints all songs in the music dir which are not
+     * in the DB yet, or cancels it if it is running.
+     * @param e the fingerprint all button
+     */
+    @SuppressWarnings("unused")
+    private void fingerprintAll(ActionEvent e) {
+        if(batch != null) {
+            batch.cancel();
+            return;
+        }
+
+        // update the status of each song as soon as it is done
+        batch = IngestionService.getInstance().fingerprintUnindexed(name -> Platform.runLater(() -> {
+            // only the songs shown need to be updated - the rest are read again when their page is shown
+            for(SongWrap row : rows) {
+                if(row.getSong() != null && row.getSong().getName().equals(name)) row.setFingerprinted();
+            }
+        }));
+        batch.progressProperty().addListener((observable, oldValue, newValue) -> {
+            if(newValue.doubleValue() >= 0) {
+                fingerprintAll.setText("Cancel (" + (int) (newValue.doubleValue() * 100) + "%)");
+            }
+        });
+        batch.setOnSucceeded(event -> endFingerprintAll());
+        batch.setOnCancelled(event -> endFingerprintAll());
+        batch.setOnFailed(event -> endFingerprintAll());
+        fingerprintAll.setText("Cancel");
+        if(rehash != null) rehash.setDisable(true);
+    }
+
+    /**
+     * A method which hashes all songs in the DB again from their
+     * constellations, or cancels it if it is running.
+     * @param e the re-hash button
+     */
+    @SuppressWarnings("unused")
+    private void rehash(ActionEvent e) {
+        if(batch != null) {
+            batch.cancel();
+            return;
+        }
+
+        batch = IngestionService.getInstance().rehashAll();
+        batch.progressProperty().addListener((observable, oldValue, newValue) -> {
+            if(newValue.doubleValue() >= 0) {
+                rehash.setText("Cancel (" + (int) (newValue.doubleValue() * 100) + "%)");
+            }
+        });
+        batch.setOnSucceeded(event -> endFingerprintAll());
+        batch.setOnCancelled(event -> endFingerprintAll());
+        batch.setOnFailed(event -> endFingerprintAll());
+        rehash.setText("Cancel");
+        fingerprintAll.setDisable(true);
+    }
+
+    /**
+     * A method to reset the fingerprint all (and re-hash) buttons
+     */
+    private void endFingerprintAll() {
+        batch = null;
+        fingerprintAll.setText(FINGERPRINT_ALL);
+        fingerprintAll.setDisable(false);
+        if(rehash != null) {
+            rehash.setText(REHASH);
+            rehash.setDisable(false);
+        }
     }
 
     /**
      * A method to display which is the current page
      */
     private void updatePageLabel() {
-        pageLabel.setText("Page " + (currentIndex + 1) + "/" + pages.size());
+        pageLabel.setText("Page " + (currentIndex + 1) + (hasNext ? "" : "/" + (currentIndex + 1)));
     }
 
     /**
@@ -176,12 +441,8 @@ public class SongCatalogue extends BorderPane {
      */
     @SuppressWarnings("unused")
     private void previous(ActionEvent e) {
-        next.setDisable(false);
-        currentIndex --;
-        setCenter(pages.get(currentIndex)); // display the next page
+        loadPage(currentIndex - 1, null); // display the previous page
         transitionCenter(); // transition
-        if(currentIndex == 0) prev.setDisable(true);
-        updatePageLabel();
     }
 
     /**
@@ -190,12 +451,8 @@ public class SongCatalogue extends BorderPane {
      */
     @SuppressWarnings("unused")
     private void next(ActionEvent e) {
-        prev.setDisable(false);
-        currentIndex++;
-        setCenter(pages.get(currentIndex)); // display the next page
+        loadPage(currentIndex + 1, null); // display the next page
         transitionCenter(); // transition
-        if(currentIndex == pages.size() - 1) next.setDisable(true);
-        updatePageLabel();
     }
 
     /**
@@ -208,4 +465,25 @@ public class SongCatalogue extends BorderPane {
         st.setByX(1f);
         st.play();
     }
+
+    /** Setters and Getters: */
+
+    public void setOnLoaded(Runnable onLoaded) {
+        this.onLoaded = onLoaded;
+    }
+
+    /**
+     * A page of songs loaded in the background.
+     */
+    private static class LoadedPage {
+        // the songs in the music dir the page was read with (sorted) and the same as a set
+        private String[] songsInDir;
+        private HashSet<String> dirSet;
+        // the songs of the page and one more if there is a next page
+        private List<Song> songs;
+        // the start of the next page
+        private int[] nextStart;
+        // whether fingerprinting all songs has to be resumed
+        private boolean resume;
+    }
 }
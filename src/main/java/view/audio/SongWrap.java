@@ -10,72 +10,107 @@ import javafx.scene.image.ImageView;
 import javafx.scene.layout.ColumnConstraints;
 import javafx.scene.layout.GridPane;
 import javafx.stage.Stage;
+import model.concurrent.IngestionService;
 import model.concurrent.task.DecodeTask;
 import model.engine.datastructures.Song;
 
+import java.util.Map;
+
 /**
  * A grid class which displays the song name and the
  * status of the song. The song name is a clickable button
  * if the song is in the music dir. When clicked, the spectrogram
  * will be visualized. The status of the song can be - recognizable
  * (hashed in the DB); fingerprint (on click begins hashing in the DB)
- * and loading (currently computing and hashing).
+ * and loading (currently computing and hashing - on click it is cancelled).
+ *
+ * A wrap is a row of the catalogue which is used again for another song when
+ * the page changes (see setSong), so the tasks computing songs are kept by the
+ * catalogue rather than by the wraps - a song which is still loading when its page is
+ * left is shown as loading when it comes back.
  *
  * @version 1.0
  * @author Martin Todorov
  */
 class SongWrap extends GridPane {
-    private static final String RECOGNIZABLE, LOADING, FINGERPRINT;
+    private static final String RECOGNIZABLE, LOADING, FINGERPRINT, QUEUE_FULL, CANCEL;
     static {
         RECOGNIZABLE = "Recognizable";
         LOADING = "Loading";
         FINGERPRINT = "Fingerprint";
+        QUEUE_FULL = "Too many songs are being fingerprinted - try again later";
+        CANCEL = "Click to cancel";
     }
 
-    // the status of the song
-    private JFXButton songStatusBtn;
-    // the name of the song
+    // the name of the song and the status of the song
+    private JFXButton songNameBtn, songStatusBtn;
+    // the song (null if the row is empty)
     private Song song;
+    // the task computing the song (null if it is not being computed)
+    private DecodeTask decodeTask;
+    // the tasks computing songs by song name (shared by all of the rows)
+    private Map<String, DecodeTask> tasks;
 
     /**
-     * Constructor
+     * Constructor - an empty row
      *
-     * @param song the name of the song
+     * @param tasks the tasks computing songs by song name (shared by all of the rows)
      */
-     SongWrap(Song song) {
-        this.song = song;
+     SongWrap(Map<String, DecodeTask> tasks) {
+        this.tasks = tasks;
         // add column dimensions
         getColumnConstraints().add(new ColumnConstraints(300));
         getColumnConstraints().add(new ColumnConstraints(150));
 
         setHgap(10);
 
-        // display only the song name on the button (trim the .wav)
-        String buttonText = song.getName().substring(0, song.getName().length()-4);
         // the song btn
-        JFXButton songName = new JFXButton(buttonText);
-        songName.setTooltip(new Tooltip(buttonText));
-        songName.setOnAction(this::showSpectrogram);
-        songName.getStyleClass().add("song-btn");
-        // disable the button if the song is not in the music dir,
-        // because in order to show the spectrogram we need to apply FFT to the raw file
-        if(!song.isInDir()) {
-            songName.setDisable(true);
-        }
+        songNameBtn = new JFXButton();
+        songNameBtn.setOnAction(this::showSpectrogram);
+        songNameBtn.getStyleClass().add("song-btn");
 
         // the status btn
         songStatusBtn = new JFXButton();
         songStatusBtn.setOnAction(this::compute);
         songStatusBtn.getStyleClass().add("song-status-btn");
-        updateStatus();
 
         // add the two buttons to the grid
-        add(songName, 0, 0);
+        add(songNameBtn, 0, 0);
         add(songStatusBtn, 1, 0);
 
         // alignment
-        setHalignment(songName, HPos.CENTER);
+        setHalignment(songNameBtn, HPos.CENTER);
         setHalignment(songStatusBtn, HPos.CENTER);
+
+        setSong(null);
+    }
+
+    /**
+     * A method to show another song in the row.
+     *
+     * @param song the song, or null to leave the row empty
+     */
+    void setSong(Song song) {
+        this.song = song;
+        setVisible(song != null);
+        setManaged(song != null);
+        if(song == null) {
+            decodeTask = null;
+            return;
+        }
+
+        // display only the song name on the button (trim the .wav)
+        String buttonText = song.getName().substring(0, song.getName().length()-4);
+        songNameBtn.setText(buttonText);
+        songNameBtn.setTooltip(new Tooltip(buttonText));
+        // disable the button if the song is not in the music dir,
+        // because in order to show the spectrogram we need to apply FFT to the raw file
+        songNameBtn.setDisable(!song.isInDir());
+
+        // the song may still be computing from when its page was shown before
+        decodeTask = tasks.get(song.getName());
+        if(decodeTask != null) setLoading();
+        else updateStatus();
     }
 
     /**
@@ -84,23 +119,66 @@ class SongWrap extends GridPane {
      */
     @SuppressWarnings("unused")
     private void compute(ActionEvent e) {
-        compute(); // begin computation
+        if(decodeTask != null) {
+            decodeTask.cancel(); // it is loading - cancel it
+        } else {
+            compute(); // begin computation
+        }
     }
 
     /**
-     * A method which begins the computation of the song in a new thread.
+     * A method which submits the computation of the song to the ingestion service.
      */
     private void compute() {
+        // init a new task - it updates this row only if it still shows the song when it is done
+        Song computed = song;
+        DecodeTask task = new DecodeTask(computed.getName(), computed.isInDB());
+        task.setOnSucceeded(e -> {
+            tasks.remove(computed.getName());
+            computed.setInDB();
+            if(song == computed) setFingerprinted();
+        });
+        task.setOnCancelled(e -> endCompute(computed));
+        task.setOnFailed(e -> endCompute(computed));
+        task.progressProperty().addListener((observable, oldValue, newValue) -> {
+            if(newValue.doubleValue() > 0 && song == computed) {
+                songStatusBtn.setText(LOADING + " " + (int) (newValue.doubleValue() * 100) + "%");
+            }
+        });
+
+        // submit it - it is rejected if too many songs are waiting
+        if(!IngestionService.getInstance().submit(task)) {
+            songStatusBtn.setTooltip(new Tooltip(QUEUE_FULL));
+            return;
+        }
+
         // indicate that it is loading
+        tasks.put(computed.getName(), task);
+        decodeTask = task;
         setLoading();
-        // init a new task
-        DecodeTask decodeTask = new DecodeTask(song.getName(), song.isInDB());
-        decodeTask.setOnSucceeded(e -> {
-            song.setInDB(); // when done, indicate that the song is in the DB
-            updateStatus(); // update the status btn
-        });
-        // start the task in a new thread
-        new Thread(decodeTask).start();
+    }
+
+    /**
+     * A method to forget the task of a song which was cancelled or failed.
+     *
+     * @param computed the song
+     */
+    private void endCompute(Song computed) {
+        tasks.remove(computed.getName());
+        if(song == computed) {
+            decodeTask = null;
+            updateStatus();
+        }
+    }
+
+    /**
+     * A method to indicate that the song has been fingerprinted
+     * (here or by fingerprinting all songs)
+     */
+    void setFingerprinted() {
+        decodeTask = null;
+        song.setInDB(); // indicate that the song is in the DB
+        updateStatus(); // update the status btn
     }
 
     /**
@@ -131,7 +209,9 @@ class SongWrap extends GridPane {
         songStatusBtn.setText(LOADING);
         Image loading = new Image(getClass().getResourceAsStream("./../img/loading.gif"), 30, 30, true, true);
         songStatusBtn.setGraphic(new ImageView(loading));
-        songStatusBtn.setDisable(true);
+        songStatusBtn.setTooltip(new Tooltip(CANCEL));
+        songStatusBtn.setDisable(false);
+        songStatusBtn.getStyleClass().removeAll("loading-btn", "recognizable-status-btn");
         songStatusBtn.getStyleClass().add("loading-btn");
     }
 
@@ -139,7 +219,9 @@ class SongWrap extends GridPane {
      * A method to update the status of the song
      */
     private void updateStatus() {
-        songStatusBtn.getStyleClass().remove("loading-btn");
+        // the row may have shown another song before
+        songStatusBtn.getStyleClass().removeAll("loading-btn", "recognizable-status-btn");
+        songStatusBtn.setTooltip(null);
         if(song.isInDB()) {
             songStatusBtn.setText(RECOGNIZABLE);
             Image tick = new Image(getClass().getResourceAsStream("./../img/tick.png"));
@@ -153,4 +235,10 @@ class SongWrap extends GridPane {
             songStatusBtn.setGraphic(new ImageView(fingerprint));
         }
     }
+
+    /** Setters and Getters: */
+
+    Song getSong() {
+        return song;
+    }
 }
@@ -4,27 +4,35 @@ import javafx.application.Platform;
 import javafx.geometry.Pos;
 import javafx.scene.control.Label;
 import javafx.scene.image.ImageView;
-import javafx.scene.image.Image;
 import javafx.scene.layout.VBox;
 import model.concurrent.thread.SpectrogramDrawer;
+import model.engine.datastructures.SpectrogramData;
 
 /**
  * A class used to visualize the results from an FFT algorithm
  * on a song as well as determination of key points. It is not
- * necessary but it is useful for testing purposes.
+ * necessary but it is useful for testing purposes. Both can be
+ * zoomed and scrolled, which makes long recordings readable.
  *
  * @version 1.0
  * @author Martin Todorov
  */
 public class Spectrogram extends VBox {
-    // Strings used for the GUI
-    private static final String SPECTROGRAM_LBL, KEYPTS_LBL;
+    // Strings used for the GUI and the size of the spectrograms
+    private static final String SPECTROGRAM_LBL, KEYPTS_LBL, UNREADABLE, EMPTY;
+    private static final int MAX_WIDTH, HEIGHT;
     static {
         SPECTROGRAM_LBL = " Spectrogram for ";
-        KEYPTS_LBL = "Key points extracted from the spectrogram:";
+        KEYPTS_LBL = "Key points extracted from the spectrogram (scroll to zoom, drag to move):";
+        UNREADABLE = "The song could not be read.";
+        EMPTY = "The song is too short to have a spectrogram.";
+        MAX_WIDTH = 800;
+        HEIGHT = 300;
     }
 
     private Label loadingLabel1, loadingLabel2;
+    // the spectrogram and key points (null until they are computed)
+    private TiledSpectrogram tiledSpectrogram;
 
     /**
      * Constructor for class Spectrogram
@@ -66,28 +74,30 @@ public class Spectrogram extends VBox {
 
     /**
      * A method which gets called when the drawing thread computes the
-     * FFT results and passes the img to be displayed in the GUI
-     * @param spectrogram the spectrogram image
+     * FFT results and the key points - the parts of them which are on screen
+     * are drawn as tiles (see TiledSpectrogram).
+     * Nothing is drawn if the song could not be read or has no windows.
+     * @param spectrogram the spectrogram and key points (null if the song could not be read)
      */
-    public void setSpectrogram(Image spectrogram) {
+    public void setSpectrogram(SpectrogramData spectrogram) {
         Platform.runLater(() -> {
+            // the tiles would be 0 pixels wide
+            if(spectrogram == null || spectrogram.getWindows() == 0) {
+                loadingLabel1.setGraphic(null);
+                loadingLabel1.setText(spectrogram == null ? UNREADABLE : EMPTY);
+                getChildren().remove(loadingLabel2);
+                return;
+            }
+
+            tiledSpectrogram = new TiledSpectrogram(spectrogram, MAX_WIDTH, HEIGHT);
             getChildren().remove(loadingLabel1);
-            getChildren().add(1, new ImageView(spectrogram));
-            getScene().getWindow().sizeToScene();
-            getScene().getWindow().centerOnScreen();
-        });
-
-    }
-
-    /**
-     * A method which gets called when the drawing thread computes the key points
-     * and passes the image to be displayed on the GUI
-     * @param keyPoints the key points image
-     */
-    public void setKeyPoints(Image keyPoints) {
-        Platform.runLater(() -> {
+            getChildren().add(1, tiledSpectrogram.getSpectrogram());
             getChildren().remove(loadingLabel2);
-            getChildren().add(3, new ImageView(keyPoints));
+            getChildren().add(3, tiledSpectrogram.getKeyPoints());
+            getChildren().add(tiledSpectrogram.getScrollBar());
+
+            // stop drawing when the window is closed
+            getScene().getWindow().setOnHidden(event -> tiledSpectrogram.dispose());
             getScene().getWindow().sizeToScene();
             getScene().getWindow().centerOnScreen();
         });
@@ -0,0 +1,341 @@
+package view.audio;
+
+import javafx.application.Platform;
+import javafx.embed.swing.SwingFXUtils;
+import javafx.geometry.Orientation;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.image.Image;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.paint.Color;
+import model.engine.SpectrogramRenderer;
+import model.engine.datastructures.SpectrogramData;
+
+import java.awt.image.BufferedImage;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A class which shows a spectrogram and its key points in two canvases which
+ * can be zoomed (mouse wheel, around the mouse) and scrolled (dragging or the scroll bar)
+ * in time. At zoom level 0 the whole song fits the canvas; each level doubles the width
+ * of the song, up to MAX_PIXELS_PER_WINDOW pixels per FFT window.
+ *
+ * The song is drawn in tiles of TILE_WIDTH columns (the full height of the canvas - all
+ * frequencies fit it at every zoom level), rendered from the spectrogram data in the background
+ * only when they are visible or next to the visible ones (PREFETCH tiles on each side), so the
+ * time and memory used depend on what is on screen rather than on the length of the song. The last
+ * MAX_TILES tiles are kept. Tiles which are not needed any more by the time their turn comes are
+ * not rendered.
+ *
+ * All methods should be called from the JavaFX thread.
+ *
+ * @version 1.0
+ * @author Martin Todorov
+ */
+class TiledSpectrogram {
+    // statics:
+    private static final Logger logger;
+    private static final int TILE_WIDTH, PREFETCH, MAX_TILES, MAX_PIXELS_PER_WINDOW, SPECTROGRAM, KEY_POINTS;
+    static {
+        logger = Logger.getLogger(TiledSpectrogram.class.getName());
+        TILE_WIDTH = 256;           // the width of a tile in pixels
+        PREFETCH = 2;               // the tiles rendered on each side of the visible ones
+        MAX_TILES = 64;             // the tiles kept (both kinds)
+        MAX_PIXELS_PER_WINDOW = 4;  // the most zoomed in
+        SPECTROGRAM = 0;            // the kinds of tiles
+        KEY_POINTS = 1;
+    }
+
+    // the spectrogram
+    private SpectrogramData data;
+    // the canvases and the scroll bar
+    private Canvas spectrogram, keyPoints;
+    private ScrollBar scrollBar;
+    // the size of the canvases
+    private int width, height;
+    // the zoom level, the most zoomed in level and the first visible column (at the zoom level)
+    private int level, maxLevel;
+    private long offset;
+    // the tiles by key (see key) - the least recently used first
+    private LinkedHashMap<Long, Image> tiles;
+    // the tiles waiting to be rendered
+    private HashSet<Long> pending;
+    // the tiles needed now - {level, first column, last column (exclusive)}, read by the render thread
+    private volatile long[] needed;
+    // renders the tiles
+    private ExecutorService renderer;
+    // the x of the mouse when dragging started and the offset at that time
+    private double dragX;
+    private long dragOffset;
+    // set while the scroll bar is updated from here
+    private boolean updatingScrollBar;
+
+    /**
+     * Constructor
+     *
+     * @param data the spectrogram
+     * @param maxWidth the maximum width of the canvases (narrower if the song is short)
+     * @param height the height of the canvases
+     */
+    TiledSpectrogram(SpectrogramData data, int maxWidth, int height) {
+        this.data = data;
+        this.width = Math.min(maxWidth, data.getWindows());
+        this.height = height;
+        this.tiles = new LinkedHashMap<>(16, 0.75f, true);
+        this.pending = new HashSet<>();
+        this.renderer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "spectrogram-tiles");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // the most zoomed in level - the song is at most MAX_PIXELS_PER_WINDOW wide per window
+        maxLevel = 0;
+        while((long) width << maxLevel < (long) data.getWindows() * MAX_PIXELS_PER_WINDOW) maxLevel ++;
+
+        spectrogram = new Canvas(width, height);
+        keyPoints = new Canvas(width, height);
+        for(Canvas canvas : new Canvas[] {spectrogram, keyPoints}) {
+            canvas.setOnScroll(this::zoom);
+            canvas.setOnMousePressed(this::startDrag);
+            canvas.setOnMouseDragged(this::drag);
+        }
+
+        scrollBar = new ScrollBar();
+        scrollBar.setOrientation(Orientation.HORIZONTAL);
+        scrollBar.valueProperty().addListener((observable, oldValue, newValue) -> {
+            if(updatingScrollBar) return;
+            offset = newValue.longValue();
+            update();
+        });
+
+        update();
+    }
+
+    /**
+     * A method to zoom in or out around the mouse.
+     *
+     * @param e the scroll event
+     */
+    private void zoom(ScrollEvent e) {
+        // horizontal scrolling (e.g. a touch pad) scrolls
+        if(e.getDeltaY() == 0) {
+            offset -= (long) e.getDeltaX();
+            update();
+            return;
+        }
+
+        int newLevel = Math.max(0, Math.min(maxLevel, level + (e.getDeltaY() > 0 ? 1 : -1)));
+        if(newLevel == level) return;
+
+        // keep the column under the mouse where it is
+        long column = offset + (long) e.getX();
+        column = newLevel > level ? column << (newLevel - level) : column >> (level - newLevel);
+        offset = column - (long) e.getX();
+        level = newLevel;
+        update();
+    }
+
+    /**
+     * A method to start dragging.
+     *
+     * @param e the mouse event
+     */
+    private void startDrag(MouseEvent e) {
+        dragX = e.getX();
+        dragOffset = offset;
+    }
+
+    /**
+     * A method to scroll by dragging.
+     *
+     * @param e the mouse event
+     */
+    private void drag(MouseEvent e) {
+        offset = dragOffset - (long) (e.getX() - dragX);
+        update();
+    }
+
+    /**
+     * A method to update the view after the zoom level or the offset changed - it
+     * draws the tiles which are ready and renders the ones which are needed.
+     */
+    private void update() {
+        long totalWidth = getTotalWidth();
+        offset = Math.max(0, Math.min(totalWidth - width, offset));
+
+        // the scroll bar
+        updatingScrollBar = true;
+        scrollBar.setMin(0);
+        scrollBar.setMax(totalWidth - width);
+        scrollBar.setVisibleAmount((double) (totalWidth - width) * width / totalWidth);
+        scrollBar.setUnitIncrement(TILE_WIDTH / 4.0);
+        scrollBar.setBlockIncrement(width);
+        scrollBar.setValue(offset);
+        updatingScrollBar = false;
+
+        // the visible tiles and the tiles next to them
+        long first = offset / TILE_WIDTH;
+        long last = (offset + width - 1) / TILE_WIDTH + 1;
+        long columns = (totalWidth + TILE_WIDTH - 1) / TILE_WIDTH;
+        needed = new long[] {level, Math.max(0, first - PREFETCH), Math.min(columns, last + PREFETCH)};
+
+        // the visible ones first, then the ones around them
+        for(long column = first; column < last; column ++) request(column);
+        for(int i = 1; i <= PREFETCH; i ++) {
+            if(last - 1 + i < columns) request(last - 1 + i);
+            if(first - i >= 0) request(first - i);
+        }
+
+        draw();
+    }
+
+    /**
+     * A method to draw the visible tiles which are ready. The ones which are
+     * not ready are drawn from the tile of the level below stretched (e.g. right
+     * after zooming in) or gray until they are.
+     */
+    private void draw() {
+        GraphicsContext[] contexts = {spectrogram.getGraphicsContext2D(), keyPoints.getGraphicsContext2D()};
+        long first = offset / TILE_WIDTH;
+        long last = (offset + width - 1) / TILE_WIDTH + 1;
+        for(int kind = SPECTROGRAM; kind <= KEY_POINTS; kind ++) {
+            GraphicsContext context = contexts[kind];
+            for(long column = first; column < last; column ++) {
+                double x = column * TILE_WIDTH - offset;
+                Image tile = tiles.get(key(kind, level, column));
+                Image parent = level == 0 ? null : tiles.get(key(kind, level - 1, column / 2));
+                if(tile != null) {
+                    context.drawImage(tile, x, 0);
+                } else if(parent != null) {
+                    // the half of the parent tile which has this column
+                    double half = TILE_WIDTH / 2.0;
+                    double sourceWidth = Math.min(half, parent.getWidth() - (column % 2) * half);
+                    context.drawImage(parent, (column % 2) * half, 0, sourceWidth, height,
+                            x, 0, sourceWidth * 2, height);
+                } else {
+                    context.setFill(Color.LIGHTGRAY);
+                    context.fillRect(x, 0, TILE_WIDTH, height);
+                }
+            }
+        }
+    }
+
+    /**
+     * A method to render both tiles of a column at the current zoom level in
+     * the background, if they are not ready or waiting already.
+     *
+     * @param column the column of tiles
+     */
+    private void request(long column) {
+        for(int kind = SPECTROGRAM; kind <= KEY_POINTS; kind ++) {
+            long key = key(kind, level, column);
+            if(tiles.containsKey(key) || !pending.add(key)) continue;
+
+            int tileLevel = level, tileKind = kind;
+            long totalWidth = getTotalWidth();
+            renderer.execute(() -> {
+                // the view moved on - it is not needed any more
+                long[] now = needed;
+                if(now[0] != tileLevel || column < now[1] || column >= now[2]) {
+                    Platform.runLater(() -> pending.remove(key));
+                    return;
+                }
+
+                Image tile = render(tileKind, totalWidth, column);
+                Platform.runLater(() -> {
+                    pending.remove(key);
+                    addTile(key, tile);
+                    draw();
+                });
+            });
+        }
+    }
+
+    /**
+     * A method to render a tile (on the render thread).
+     *
+     * @param kind SPECTROGRAM or KEY_POINTS
+     * @param totalWidth the width of the song at the zoom level of the tile
+     * @param column the column of the tile
+     * @return the tile
+     */
+    private Image render(int kind, long totalWidth, long column) {
+        long start = System.currentTimeMillis(); // used for logging speed of rendering
+
+        int x = (int) (column * TILE_WIDTH);
+        int tileWidth = (int) Math.min(TILE_WIDTH, totalWidth - x);
+        BufferedImage image = kind == SPECTROGRAM ?
+                SpectrogramRenderer.renderSpectrogram(data, (int) totalWidth, x, tileWidth, height) :
+                SpectrogramRenderer.renderKeyPoints(data, (int) totalWidth, x, tileWidth, height);
+
+        logger.log(Level.FINE, "Rendered tile " + column + " (" + (kind == SPECTROGRAM ? "spectrogram" :
+                "key points") + ") at width " + totalWidth + " in " + (System.currentTimeMillis() - start) + "ms");
+        return SwingFXUtils.toFXImage(image, null);
+    }
+
+    /**
+     * A method to keep a tile and drop the least recently used ones.
+     *
+     * @param key the key of the tile
+     * @param tile the tile
+     */
+    private void addTile(long key, Image tile) {
+        tiles.put(key, tile);
+
+        // the first entries are the least recently used
+        Iterator<Map.Entry<Long, Image>> iterator = tiles.entrySet().iterator();
+        while(tiles.size() > MAX_TILES) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * @return the width of the whole song at the current zoom level
+     */
+    private long getTotalWidth() {
+        return (long) width << level;
+    }
+
+    /**
+     * @param kind SPECTROGRAM or KEY_POINTS
+     * @param level the zoom level
+     * @param column the column of tiles
+     * @return the key of the tile
+     */
+    private static long key(int kind, int level, long column) {
+        return ((long) kind << 62) | ((long) level << 48) | column;
+    }
+
+    /**
+     * A method to stop rendering (e.g. the window was closed).
+     */
+    void dispose() {
+        renderer.shutdownNow();
+        tiles.clear();
+    }
+
+    /** Setters and Getters: */
+
+    Canvas getSpectrogram() {
+        return spectrogram;
+    }
+
+    Canvas getKeyPoints() {
+        return keyPoints;
+    }
+
+    ScrollBar getScrollBar() {
+        return scrollBar;
+    }
+}